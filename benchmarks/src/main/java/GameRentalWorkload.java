@@ -0,0 +1,167 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gamerental.bench.Workload;
+
+/**
+ * Drives the GameRental menu handlers for the benchmarks.  Every call
+ * binds a terminal whose keyboard input is the scripted answers to the
+ * menu's prompts and whose screen output is discarded.  Listings are
+ * read to the end: after its scripted answers the terminal keeps pressing
+ * Enter at every page prompt.
+ *
+ */
+public class GameRentalWorkload implements Workload {
+
+  private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+  private final AtomicLong _errors = new AtomicLong();
+
+  // counts every error message a menu prints.
+  private final PrintStream _errorSink = new PrintStream(new OutputStream() {
+    @Override
+    public void write(int b) {
+      if (b == '\n')
+        _errors.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      for (int i = off; i < off + len; ++i)
+        write(b[i]);
+    }
+  }, true);
+
+  private GameRental _esql = null;
+
+  // the session of every user that logged in, for the menus that need one.
+  private final Map < String, Session > _sessions = new ConcurrentHashMap < String, Session > ();
+
+  @Override
+  public void open(String dbname, int port, String user, String password) throws Exception {
+    script();
+    try {
+      this._esql = new GameRental(dbname, String.valueOf(port), user, password);
+    } finally {
+      Terminal.unbind();
+    }
+  }
+
+  // binds a terminal that answers the menu prompts with the given lines.
+  private void script(String... lines) {
+    Terminal.bind(new Terminal(new StringReader(String.join("\n", lines) + "\n"), DISCARD, this._errorSink));
+  }
+
+  // like script, but every line after the given ones is blank.
+  private void scriptPaged(String... lines) {
+    Reader head = new StringReader(String.join("\n", lines) + (lines.length == 0 ? "" : "\n"));
+    Terminal.bind(new Terminal(new Reader() {
+      private boolean _headDone = false;
+
+      @Override
+      public int read(char[] buf, int off, int len) throws IOException {
+        if (!this._headDone) {
+          int n = head.read(buf, off, len);
+          if (n > 0)
+            return n;
+          this._headDone = true;
+        } //end if
+        if (len == 0)
+          return 0;
+        buf[off] = '\n';
+        return 1;
+      }
+
+      @Override
+      public void close() {}
+    }, DISCARD, this._errorSink));
+  } //end scriptPaged
+
+  @Override
+  public boolean login(String login, String password, String phoneNum) {
+    script(login, password, phoneNum);
+    Session session = GameRental.LogIn(this._esql);
+    if (session == null)
+      return false;
+    this._sessions.put(login, session);
+    return true;
+  }
+
+  @Override
+  public void viewProfile(String login) {
+    script("");
+    GameRental.viewProfile(this._esql, this._sessions.get(login));
+  }
+
+  @Override
+  public void searchByGenre(String login, String genre) {
+    scriptPaged(genre);
+    GameRental.searchByGenre(this._esql, login);
+  }
+
+  @Override
+  public void searchByPrice(String login, String minPrice, String maxPrice) {
+    scriptPaged(minPrice, maxPrice, "1");
+    GameRental.searchByPrice(this._esql, login);
+  }
+
+  @Override
+  public void searchByName(String login, String query) {
+    scriptPaged(query);
+    GameRental.searchByName(this._esql, login);
+  }
+
+  @Override
+  public void placeOrder(String login, String[] gameIds) {
+    String[] lines = new String[1 + 2 * gameIds.length];
+    lines[0] = String.valueOf(gameIds.length);
+    for (int i = 0; i < gameIds.length; ++i) {
+      lines[1 + 2 * i] = gameIds[i];
+      lines[2 + 2 * i] = "1";
+    }
+    script(lines);
+    GameRental.placeOrder(this._esql, login);
+  }
+
+  @Override
+  public void viewAllOrders(String login) {
+    scriptPaged();
+    GameRental.viewAllOrders(this._esql, login);
+  }
+
+  @Override
+  public void viewTrackingInfo(String login, String trackingId) {
+    script(trackingId, "N");
+    GameRental.viewTrackingInfo(this._esql, login);
+  }
+
+  @Override
+  public long errors() {
+    return this._errors.get();
+  }
+
+  @Override
+  public void close() {
+    if (this._esql != null)
+      this._esql.cleanup();
+  }
+
+} //end GameRentalWorkload
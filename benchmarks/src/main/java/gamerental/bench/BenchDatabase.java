@@ -0,0 +1,136 @@
+package gamerental.bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.postgresql.PGConnection;
+
+/**
+ * The Postgres database the benchmarks run against, seeded from
+ * data/*.csv and scaled with sql/src/benchmark_scale.sql.
+ *
+ * By default an embedded Postgres is started for the trial.  Setting
+ * bench.port points the benchmarks at a running server instead:
+ * bench.host, bench.port, bench.db, bench.user and bench.password.
+ * bench.scale sets the scaling factor (default 10), bench.dataDir and
+ * bench.sqlDir locate data/ and sql/src/ (defaults: ./data, ./sql/src).
+ */
+public final class BenchDatabase implements AutoCloseable {
+
+  /** Users seeded with exactly this many orders, named bench_history_N. */
+  public static final int[] HISTORY_SIZES = { 10, 1000, 100000 };
+
+  private final EmbeddedPostgres embedded;
+  private final String host;
+  private final int port;
+  private final String db;
+  private final String user;
+  private final String password;
+
+  private BenchDatabase(EmbeddedPostgres embedded, String host, int port, String db, String user, String password) {
+    this.embedded = embedded;
+    this.host = host;
+    this.port = port;
+    this.db = db;
+    this.user = user;
+    this.password = password;
+  }
+
+  /** Starts or connects to the benchmark database and seeds it. */
+  public static BenchDatabase start() throws IOException, SQLException {
+    BenchDatabase database;
+    if (System.getProperty("bench.port") != null) {
+      database = new BenchDatabase(null,
+          System.getProperty("bench.host", "localhost"),
+          Integer.getInteger("bench.port"),
+          System.getProperty("bench.db", "postgres"),
+          System.getProperty("bench.user", System.getProperty("user.name")),
+          System.getProperty("bench.password", ""));
+    } else {
+      EmbeddedPostgres pg = EmbeddedPostgres.builder().start();
+      database = new BenchDatabase(pg, "localhost", pg.getPort(), "postgres", "postgres", "");
+    }
+    database.seed(Integer.getInteger("bench.scale", 10));
+    return database;
+  }
+
+  public String db() {
+    return db;
+  }
+
+  public int port() {
+    return port;
+  }
+
+  public String user() {
+    return user;
+  }
+
+  public String password() {
+    return password;
+  }
+
+  /** Opens a plain JDBC connection for setup queries. */
+  public Connection connect() throws SQLException {
+    return DriverManager.getConnection("jdbc:postgresql://" + host + ":" + port + "/" + db, user, password);
+  }
+
+  private void seed(int scale) throws IOException, SQLException {
+    Path sql = Paths.get(System.getProperty("bench.sqlDir", "sql/src"));
+    Path data = Paths.get(System.getProperty("bench.dataDir", "data"));
+    try (Connection conn = connect()) {
+      runScript(conn, Files.readString(sql.resolve("create_tables.sql")));
+      String[][] tables = {
+        { "Users", "users.csv" }, { "Catalog", "catalog.csv" }, { "RentalOrder", "rentalorder.csv" },
+        { "TrackingInfo", "trackinginfo.csv" }, { "GamesInOrder", "gamesinorder.csv" } };
+      for (String[] table : tables) {
+        try (Reader csv = Files.newBufferedReader(data.resolve(table[1]), StandardCharsets.UTF_8)) {
+          conn.unwrap(PGConnection.class).getCopyAPI()
+              .copyIn("COPY " + table[0] + " FROM STDIN WITH (FORMAT csv, HEADER true)", csv);
+        }
+      }
+      runScript(conn, Files.readString(sql.resolve("benchmark_scale.sql")).replace(":scale", String.valueOf(scale)));
+
+      try (Statement stmt = conn.createStatement()) {
+        // enough copies that placeOrder never runs out during a trial
+        stmt.executeUpdate("INSERT INTO Inventory (gameID, inStock) SELECT gameID, 1000000000 FROM Catalog");
+        for (int orders : HISTORY_SIZES) {
+          String login = "bench_history_" + orders;
+          stmt.executeUpdate("INSERT INTO Users(login, password, role, phoneNum) VALUES ('" + login
+              + "', 'bench', 'customer', '555-0100')");
+          stmt.executeUpdate("INSERT INTO RentalOrder SELECT 'benchorder_" + orders + "_' || i, '" + login
+              + "', 1, 9.99, now() - i * interval '1 minute', now() + interval '20 days'"
+              + " FROM generate_series(1, " + orders + ") i");
+        }
+      }
+      runScript(conn, Files.readString(sql.resolve("create_indexes.sql")));
+    }
+  }
+
+  // runs a script of ';'-terminated statements without dollar-quoted bodies.
+  private static void runScript(Connection conn, String script) throws SQLException {
+    String stripped = script.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)--.*$", "");
+    try (Statement stmt = conn.createStatement()) {
+      for (String statement : stripped.split(";")) {
+        if (!statement.isBlank()) {
+          stmt.execute(statement);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (embedded != null) {
+      embedded.close();
+    }
+  }
+}
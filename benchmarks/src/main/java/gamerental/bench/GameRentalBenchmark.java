@@ -0,0 +1,169 @@
+package gamerental.bench;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency percentiles of the GameRental menu actions,
+ * measured through the real menu handlers against a seeded Postgres.
+ *
+ * Build with "mvn -B package" and run from the repository root:
+ * java -jar benchmarks/target/benchmarks.jar -jvmArgsAppend -Dbench.scale=10
+ * (JMH options such as -t 8 or -p gamesPerOrder=20 work as usual).
+ * The SampleTime mode reports p50/p99/p99.9 per benchmark.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class GameRentalBenchmark {
+
+  /** The seeded database, the workload driving the menus, and the keys it uses. */
+  @State(Scope.Benchmark)
+  public static class Env {
+    BenchDatabase database;
+    Workload workload;
+
+    String login;
+    String password;
+    String phoneNum;
+    String genre;
+    String trackingLogin;
+    String trackingId;
+    List<String> gameIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      database = BenchDatabase.start();
+      try (Connection conn = database.connect(); Statement stmt = conn.createStatement()) {
+        try (ResultSet rs = stmt.executeQuery(
+            "SELECT login, password, phoneNum FROM Users WHERE login NOT LIKE 'bench_%' ORDER BY login LIMIT 1")) {
+          rs.next();
+          login = rs.getString(1);
+          password = rs.getString(2);
+          phoneNum = rs.getString(3);
+        }
+        try (ResultSet rs = stmt.executeQuery(
+            "SELECT genre FROM Catalog GROUP BY genre ORDER BY count(*) DESC LIMIT 1")) {
+          rs.next();
+          genre = rs.getString(1);
+        }
+        try (ResultSet rs = stmt.executeQuery(
+            "SELECT R.login, T.trackingID FROM TrackingInfo T JOIN RentalOrder R ON R.rentalOrderID = T.rentalOrderID"
+                + " ORDER BY T.trackingID LIMIT 1")) {
+          rs.next();
+          trackingLogin = rs.getString(1);
+          trackingId = rs.getString(2);
+        }
+        try (ResultSet rs = stmt.executeQuery("SELECT gameID FROM Catalog ORDER BY gameID LIMIT 20")) {
+          while (rs.next()) {
+            gameIds.add(rs.getString(1));
+          }
+        }
+      }
+      workload = Workload.load();
+      workload.open(database.db(), database.port(), database.user(), database.password());
+      if (!workload.login(login, password, phoneNum)) {
+        throw new IllegalStateException("Benchmark user " + login + " cannot log in");
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      long errors = workload.errors();
+      workload.close();
+      database.close();
+      if (errors > 0) {
+        throw new IllegalStateException(errors + " menu errors during the trial, results are not valid");
+      }
+    }
+  }
+
+  /** Number of games in each placed order. */
+  @State(Scope.Benchmark)
+  public static class OrderShape {
+    @Param({ "1", "5", "20" })
+    int gamesPerOrder;
+
+    String[] gameIds;
+
+    @Setup(Level.Trial)
+    public void setUp(Env env) {
+      gameIds = env.gameIds.subList(0, gamesPerOrder).toArray(new String[0]);
+    }
+  }
+
+  /** Size of the order history being listed. */
+  @State(Scope.Benchmark)
+  public static class HistoryShape {
+    @Param({ "10", "1000", "100000" })
+    int orders;
+
+    String login;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      login = "bench_history_" + orders;
+    }
+  }
+
+  @Benchmark
+  public boolean login(Env env) {
+    return env.workload.login(env.login, env.password, env.phoneNum);
+  }
+
+  @Benchmark
+  public void viewProfile(Env env) {
+    env.workload.viewProfile(env.login);
+  }
+
+  @Benchmark
+  public void searchByGenre(Env env) {
+    env.workload.searchByGenre(env.login, env.genre);
+  }
+
+  @Benchmark
+  public void searchByPrice(Env env) {
+    env.workload.searchByPrice(env.login, "20", "30");
+  }
+
+  @Benchmark
+  public void searchByName(Env env) {
+    // a typo, as a customer would type it
+    env.workload.searchByName(env.login, "mario kat");
+  }
+
+  @Benchmark
+  public void placeOrder(Env env, OrderShape shape) {
+    env.workload.placeOrder(env.login, shape.gameIds);
+  }
+
+  @Benchmark
+  public void viewAllOrders(Env env, HistoryShape history) {
+    env.workload.viewAllOrders(history.login);
+  }
+
+  @Benchmark
+  public void viewTrackingInfo(Env env) {
+    env.workload.viewTrackingInfo(env.trackingLogin, env.trackingId);
+  }
+
+}
@@ -0,0 +1,48 @@
+package gamerental.bench;
+
+/**
+ * The GameRental operations measured by the benchmarks.  The application
+ * classes live in the default package, which JMH benchmarks cannot import,
+ * so the implementation is the default-package class GameRentalWorkload
+ * and is loaded by name.
+ */
+public interface Workload {
+
+  /** Connects to the benchmark database. */
+  void open(String dbname, int port, String user, String password) throws Exception;
+
+  /** Runs the LogIn menu and returns true if the user was accepted. */
+  boolean login(String login, String password, String phoneNum);
+
+  /** Runs the My Profile menu of a user who logged in before. */
+  void viewProfile(String login);
+
+  /** Runs Search By Genre for one genre. */
+  void searchByGenre(String login, String genre);
+
+  /** Runs Search By Pricing for one price range, cheapest first. */
+  void searchByPrice(String login, String minPrice, String maxPrice);
+
+  /** Runs Search By Name for one query. */
+  void searchByName(String login, String query);
+
+  /** Runs Place Rental Order with one copy of each game. */
+  void placeOrder(String login, String[] gameIds);
+
+  /** Runs View Full Rental Order History. */
+  void viewAllOrders(String login);
+
+  /** Runs View Tracking Information for one trackingID. */
+  void viewTrackingInfo(String login, String trackingId);
+
+  /** Number of error messages the menus printed so far. */
+  long errors();
+
+  /** Closes the database connections. */
+  void close();
+
+  /** Loads the default-package implementation. */
+  static Workload load() throws ReflectiveOperationException {
+    return (Workload) Class.forName("GameRentalWorkload").getDeclaredConstructor().newInstance();
+  }
+}
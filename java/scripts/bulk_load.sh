@@ -0,0 +1,8 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# build the loader with a driver that supports COPY
+mvn -B -q -f $DIR/../../pom.xml -pl java package
+
+# stream data/*.csv into the database
+java -cp "$DIR/../target/classes:$DIR/../target/lib/*" BulkLoader $USER"_project_phase_3_DB" $PGPORT $USER $DIR/../../data
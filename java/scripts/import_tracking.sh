@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+if [ $# -ne 1 ]; then
+  echo "Usage: $0 <courier feed.csv>"
+  exit 1
+fi
+
+# build the importer with a driver that supports COPY
+mvn -B -q -f $DIR/../../pom.xml -pl java package
+
+# apply the courier's tracking updates in one transaction
+java -cp "$DIR/../target/classes:$DIR/../target/lib/*" TrackingImport $USER"_project_phase_3_DB" $PGPORT $USER "$1"
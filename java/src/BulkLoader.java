@@ -0,0 +1,425 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class (re)loads the five GameRental tables from the CSV files in
+ * data/, or from any other source of CSV rows such as DataGenerator.  The
+ * rows are streamed from the client with COPY ... FROM STDIN, one
+ * connection per table, so every table loads in parallel.  Keys,
+ * foreign keys and indexes are dropped first and rebuilt once the data is
+ * in: the foreign keys are then checked once per table instead of once
+ * per row, and every index is built in one sort.  The tables are emptied
+ * before loading.
+ *
+ */
+public class BulkLoader {
+
+  // the tables, and the files in the data directory they are loaded from.
+  static final String[][] TABLES = {
+    { "Users", "users.csv" },
+    { "Catalog", "catalog.csv" },
+    { "RentalOrder", "rentalorder.csv" },
+    { "TrackingInfo", "trackinginfo.csv" },
+    { "GamesInOrder", "gamesinorder.csv" }
+  };
+
+  // the loaded tables, as regclass names, for the catalog queries below.
+  private static final String TABLE_LIST =
+    "('users', 'catalog', 'rentalorder', 'trackinginfo', 'gamesinorder')";
+
+  // foreign keys from or to a loaded table.
+  private static final String FOREIGN_KEYS =
+    "SELECT C.conrelid::regclass::text, quote_ident(C.conname), pg_get_constraintdef(C.oid) " +
+    "FROM pg_constraint C " +
+    "WHERE C.contype = 'f' " +
+    "AND (lower(C.conrelid::regclass::text) IN " + TABLE_LIST +
+    " OR lower(C.confrelid::regclass::text) IN " + TABLE_LIST + ");";
+
+  // primary keys and unique constraints of the loaded tables.
+  private static final String KEYS =
+    "SELECT C.conrelid::regclass::text, quote_ident(C.conname), pg_get_constraintdef(C.oid) " +
+    "FROM pg_constraint C " +
+    "WHERE C.contype IN ('p', 'u') " +
+    "AND lower(C.conrelid::regclass::text) IN " + TABLE_LIST + ";";
+
+  // the other indexes of the loaded tables.
+  private static final String INDEXES =
+    "SELECT I.indrelid::regclass::text, I.indexrelid::regclass::text, pg_get_indexdef(I.indexrelid) " +
+    "FROM pg_index I " +
+    "WHERE lower(I.indrelid::regclass::text) IN " + TABLE_LIST + " " +
+    "AND NOT EXISTS (SELECT 1 FROM pg_constraint C " +
+    "WHERE C.conindid = I.indexrelid AND C.contype IN ('p', 'u', 'x'));";
+
+  // moves the ID sequences past the loaded IDs, as in load_data.sql.
+  private static final String[] SET_SEQUENCES = {
+    "SELECT setval('rentalorder_id_seq', " +
+    "COALESCE((SELECT max(substring(rentalOrderID from 16)::int) FROM RentalOrder), 999) + 1, false);",
+    "SELECT setval('trackinginfo_id_seq', " +
+    "COALESCE((SELECT max(substring(trackingID from 11)::int) FROM TrackingInfo), 999) + 1, false);"
+  };
+
+  /**
+   * Where the CSV rows of every table come from.
+   */
+  public interface Source {
+    /**
+     * Opens the rows of a table, with a header line
+     *
+     * @param table the table name as written in TABLES
+     * @param file the name of the table's file in a data directory
+     */
+    InputStream open(String table, String file) throws IOException;
+  }
+
+  // a constraint or index dropped for the load, and how to put it back.
+  private static final class Deferred {
+    final String table;
+    final String drop;
+    final String create;
+
+    Deferred(String table, String drop, String create) {
+      this.table = table;
+      this.drop = drop;
+      this.create = create;
+    }
+  }
+
+  /**
+   * The rows and time it took to copy one table.
+   */
+  public static final class TableLoad {
+    final String table;
+    final long rows;
+    final long nanos;
+
+    TableLoad(String table, long rows, long nanos) {
+      this.table = table;
+      this.rows = rows;
+      this.nanos = nanos;
+    }
+  }
+
+  /**
+   * What a load did and how long every phase took.
+   */
+  public static final class Report {
+    final List < TableLoad > tables = new ArrayList < TableLoad > ();
+    long copyNanos;
+    long indexNanos;
+    long foreignKeyNanos;
+    long totalNanos;
+
+    public long getRows() {
+      long rows = 0;
+      for (TableLoad table: this.tables)
+        rows += table.rows;
+      return rows;
+    }
+
+    public void print(PrintStream out) {
+      for (TableLoad table: this.tables)
+        out.printf("| %-14s %12d rows %9.2f s %12.0f rows/s%n",
+          table.table, table.rows, seconds(table.nanos), perSecond(table.rows, table.nanos));
+      out.printf("| copy %.2f s, keys and indexes %.2f s, foreign keys %.2f s%n",
+        seconds(this.copyNanos), seconds(this.indexNanos), seconds(this.foreignKeyNanos));
+      out.printf("| loaded %d rows in %.2f s, %.0f rows/s%n",
+        getRows(), seconds(this.totalNanos), perSecond(getRows(), this.totalNanos));
+    }
+  }
+
+  private final String _url;
+  private final String _user;
+  private final String _passwd;
+  private final int _threads;
+  private final String _maintenanceWorkMem;
+  private final int _initialStock;
+
+  /**
+   * Creates a new loader
+   *
+   * @param url the JDBC URL of the database
+   * @param user the database user
+   * @param passwd the password of the user
+   */
+  public BulkLoader(String url, String user, String passwd) {
+    this._url = url;
+    this._user = user;
+    this._passwd = passwd;
+    this._threads = Integer.getInteger("gamerental.load.threads", TABLES.length);
+    this._maintenanceWorkMem = System.getProperty("gamerental.load.maintenanceWorkMem", "256MB");
+    this._initialStock = Math.max(0, Integer.getInteger("gamerental.load.initialStock", 10));
+  } //end BulkLoader
+
+  /**
+   * Empties the tables and loads them from the CSV files of a directory.
+   *
+   * @param dataDir the directory holding the CSV files
+   * @return the rows loaded and the time every phase took
+   */
+  public Report load(Path dataDir) throws SQLException, IOException {
+    for (String[] table: TABLES)
+      if (!Files.isReadable(dataDir.resolve(table[1])))
+        throw new IOException("Cannot read " + dataDir.resolve(table[1]));
+    return load((table, file) -> Files.newInputStream(dataDir.resolve(file)));
+  }
+
+  /**
+   * Empties the tables and loads them from a source.  Every table is
+   * copied on its own connection at the same time, so a source may feed
+   * several tables from one producer.  The dropped keys and indexes are
+   * put back even when the load fails.
+   *
+   * @param source the rows of every table
+   * @return the rows loaded and the time every phase took
+   * @throws java.sql.SQLException when a statement fails, including a foreign key the data breaks
+   * @throws java.io.IOException when the rows of a table cannot be read
+   */
+  public Report load(Source source) throws SQLException, IOException {
+    Report report = new Report();
+    long start = System.nanoTime();
+    try (Connection ddl = connect()) {
+      if (!PgCopy.isSupported(ddl))
+        throw new SQLException("The JDBC driver on the classpath cannot COPY, use java/target/lib from 'mvn -B package'");
+      List < Deferred > foreignKeys = deferred(ddl, FOREIGN_KEYS, "ALTER TABLE %s DROP CONSTRAINT %s", "ALTER TABLE %s ADD CONSTRAINT %s %s");
+      List < Deferred > keys = deferred(ddl, KEYS, "ALTER TABLE %s DROP CONSTRAINT %s", "ALTER TABLE %s ADD CONSTRAINT %s %s");
+      List < Deferred > indexes = deferred(ddl, INDEXES, "DROP INDEX %2$s", "%3$s");
+      boolean favorites = hasTable(ddl, "favoritegames");
+      boolean inventory = hasTable(ddl, "inventory");
+
+      ddl.setAutoCommit(false);
+      try (Statement stmt = ddl.createStatement()) {
+        // foreign keys first, they depend on the keys.
+        for (Deferred fk: foreignKeys)
+          stmt.executeUpdate(fk.drop);
+        for (Deferred key: keys)
+          stmt.executeUpdate(key.drop);
+        for (Deferred index: indexes)
+          stmt.executeUpdate(index.drop);
+        stmt.executeUpdate("TRUNCATE Users, Catalog, RentalOrder, TrackingInfo, GamesInOrder;");
+        if (favorites)
+          stmt.executeUpdate("TRUNCATE FavoriteGames;");
+        if (inventory)
+          // with the copies running processes hold, which they find gone at their next order.
+          stmt.executeUpdate("TRUNCATE Inventory CASCADE;");
+        ddl.commit();
+      } catch (SQLException e) {
+        ddl.rollback();
+        throw e;
+      } finally {
+        ddl.setAutoCommit(true);
+      } //end try
+
+      long phase = System.nanoTime();
+      try {
+        report.tables.addAll(copyAll(source));
+      } finally {
+        report.copyNanos = System.nanoTime() - phase;
+        phase = System.nanoTime();
+        rebuild(keys, indexes);
+        report.indexNanos = System.nanoTime() - phase;
+        phase = System.nanoTime();
+        try (Statement stmt = ddl.createStatement()) {
+          for (Deferred fk: foreignKeys)
+            stmt.executeUpdate(fk.create);
+        } //end try
+        report.foreignKeyNanos = System.nanoTime() - phase;
+      } //end try
+
+      if (favorites) {
+        // the favorites come from the favGames column of the loaded users.
+        phase = System.nanoTime();
+        try (Statement stmt = ddl.createStatement()) {
+          long rows = stmt.executeUpdate(UserFavorites.MIGRATE);
+          report.tables.add(new TableLoad("FavoriteGames", rows, System.nanoTime() - phase));
+          stmt.executeUpdate("ANALYZE FavoriteGames;");
+        } //end try
+      } //end if
+
+      if (inventory) {
+        // the data has no stock, so every game starts with the same copies.
+        phase = System.nanoTime();
+        try (Statement stmt = ddl.createStatement()) {
+          long rows = stmt.executeUpdate(String.format(Inventory.STOCK_ALL, this._initialStock));
+          report.tables.add(new TableLoad("Inventory", rows, System.nanoTime() - phase));
+          stmt.executeUpdate("ANALYZE Inventory;");
+        } //end try
+      } //end if
+
+      try (Statement stmt = ddl.createStatement()) {
+        for (String[] table: TABLES)
+          stmt.executeUpdate("ANALYZE " + table[0] + ";");
+        for (String sql: SET_SEQUENCES)
+          stmt.executeQuery(sql).close();
+      } //end try
+    } //end try
+    report.totalNanos = System.nanoTime() - start;
+    return report;
+  } //end load
+
+  // databases created before the FavoriteGames or Inventory table do not have it.
+  private static boolean hasTable(Connection conn, String table) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery("SELECT to_regclass('" + table + "') IS NOT NULL;")) {
+      return rs.next() && rs.getBoolean(1);
+    } //end try
+  }
+
+  // copies every table on its own connection.
+  private List < TableLoad > copyAll(Source source) throws SQLException, IOException {
+    List < Callable < TableLoad >> copies = new ArrayList < Callable < TableLoad >> ();
+    for (String[] table: TABLES)
+      copies.add(() -> copy(table[0], source.open(table[0], table[1])));
+    return runAll(copies, copies.size());
+  }
+
+  private TableLoad copy(String table, InputStream data) throws SQLException, IOException {
+    try (Connection conn = connect();
+      InputStream in = new BufferedInputStream(data, 1 << 16)) {
+      try (Statement stmt = conn.createStatement()) {
+        // the load is repeated from the files if the server crashes.
+        stmt.execute("SET synchronous_commit TO off;");
+      } //end try
+      long start = System.nanoTime();
+      long rows = PgCopy.copyIn(conn, "COPY " + table + " FROM STDIN WITH (FORMAT csv, HEADER true)", in);
+      return new TableLoad(table, rows, System.nanoTime() - start);
+    } //end try
+  } //end copy
+
+  // builds the keys and indexes, one connection per table.
+  private void rebuild(List < Deferred > keys, List < Deferred > indexes) throws SQLException, IOException {
+    Map < String, List < String >> byTable = new LinkedHashMap < String, List < String >> ();
+    for (Deferred key: keys)
+      byTable.computeIfAbsent(key.table, t -> new ArrayList < String > ()).add(key.create);
+    for (Deferred index: indexes)
+      byTable.computeIfAbsent(index.table, t -> new ArrayList < String > ()).add(index.create);
+
+    List < Callable < Void >> builds = new ArrayList < Callable < Void >> ();
+    for (List < String > statements: byTable.values())
+      builds.add(() -> {
+        try (Connection conn = connect(); Statement stmt = conn.createStatement()) {
+          stmt.execute("SET maintenance_work_mem TO '" + this._maintenanceWorkMem.replace("'", "") + "';");
+          for (String sql: statements)
+            stmt.executeUpdate(sql);
+        } //end try
+        return null;
+      });
+    runAll(builds, this._threads);
+  } //end rebuild
+
+  // runs the tasks on up to threads threads and waits for all of them, rethrowing the first failure.
+  private static < T > List < T > runAll(List < Callable < T >> tasks, int threads) throws SQLException, IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+    try {
+      List < Future < T >> futures = new ArrayList < Future < T >> ();
+      for (Callable < T > task: tasks)
+        futures.add(executor.submit(task));
+      List < T > results = new ArrayList < T > ();
+      Throwable failure = null;
+      for (Future < T > future: futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          if (failure == null)
+            failure = e.getCause();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while loading");
+        } //end try
+      } //end for
+      if (failure instanceof SQLException)
+        throw (SQLException) failure;
+      if (failure instanceof IOException)
+        throw (IOException) failure;
+      if (failure instanceof Error)
+        throw (Error) failure;
+      if (failure != null)
+        throw new SQLException(failure);
+      return results;
+    } finally {
+      executor.shutdownNow();
+    } //end try
+  } //end runAll
+
+  // reads the drop and create statements of the constraints or indexes a query lists.
+  private static List < Deferred > deferred(Connection conn, String query, String drop, String create) throws SQLException {
+    List < Deferred > result = new ArrayList < Deferred > ();
+    try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+      while (rs.next()) {
+        String table = rs.getString(1), name = rs.getString(2), definition = rs.getString(3);
+        result.add(new Deferred(table, String.format(drop, table, name) + ";",
+          String.format(create, table, name, definition) + ";"));
+      } //end while
+    } //end try
+    return result;
+  } //end deferred
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(this._url, this._user, this._passwd);
+  }
+
+  static double seconds(long nanos) {
+    return nanos / 1e9;
+  }
+
+  static double perSecond(long rows, long nanos) {
+    return nanos == 0 ? 0 : rows * 1e9 / nanos;
+  }
+
+  /**
+   * Loads the data directory into a database
+   *
+   * @param args <dbname> <port> <user> [data directory]
+   */
+  public static void main(String[] args) {
+    if (args.length != 3 && args.length != 4) {
+      System.err.println(
+        "Usage: " +
+        "java [-classpath <classpath>] " +
+        BulkLoader.class.getName() +
+        " <dbname> <port> <user> [data directory]");
+      return;
+    } //end if
+    try {
+      Class.forName("org.postgresql.Driver");
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      Path dataDir = Paths.get(args.length == 4 ? args[3] : "data");
+      System.out.println("| Loading " + dataDir.toAbsolutePath() + " into " + args[0]);
+      new BulkLoader(url, args[2], "").load(dataDir).print(System.out);
+    } catch (Exception e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } //end try
+  } //end main
+
+} //end BulkLoader
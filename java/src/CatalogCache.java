@@ -0,0 +1,278 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class keeps a read-only copy of the Catalog table in memory for
+ * browsing.  Games are indexed by gameID, name and genre and kept in an
+ * array sorted by (price, gameID) so price ranges are found with a binary
+ * search, and listings are paged by seeking to the (price, gameID) of the
+ * last game shown.  The copy is reloaded after it is invalidated or once
+ * it is older than the configured time to live.
+ *
+ */
+public class CatalogCache {
+
+  // orders games by price, ties broken by gameID.
+  static final Comparator < CatalogGame > BY_PRICE =
+    Comparator.comparing(CatalogGame::price).thenComparing(CatalogGame::gameID);
+
+  private static final String LOAD = "SELECT " + CatalogGame.COLUMNS + " FROM Catalog;";
+
+  // an immutable copy of the catalog and its indexes.
+  private static final class Snapshot {
+    final CatalogGame[] byPrice;
+    final TreeMap < String, List < CatalogGame >> byGenre;
+    final HashMap < String, CatalogGame > byId;
+    // keyed by lower-cased name.
+    final HashMap < String, CatalogGame > byName;
+    final long loadedAtMillis;
+
+    Snapshot(CatalogGame[] byPrice, TreeMap < String, List < CatalogGame >> byGenre,
+      HashMap < String, CatalogGame > byId, HashMap < String, CatalogGame > byName) {
+      this.byPrice = byPrice;
+      this.byGenre = byGenre;
+      this.byId = byId;
+      this.byName = byName;
+      this.loadedAtMillis = System.currentTimeMillis();
+    }
+  }
+
+  private final GameRental _esql;
+  private final long _ttlMillis;
+
+  // the current snapshot, null when it has to be reloaded.
+  private volatile Snapshot _snapshot = null;
+
+  /**
+   * Creates a new, empty catalog cache
+   *
+   * @param esql the database the catalog is loaded from
+   * @param ttlMillis how long a loaded copy is served before it is reloaded
+   */
+  public CatalogCache(GameRental esql, long ttlMillis) {
+    this._esql = esql;
+    this._ttlMillis = ttlMillis;
+  } //end CatalogCache
+
+  /**
+   * Drops the in-memory copy so the next lookup reloads the catalog.
+   * Called after any write to the Catalog table.
+   */
+  public synchronized void invalidate() {
+    // under the monitor, so a load that read the table before the write
+    // publishes its snapshot first and it is dropped here.
+    this._snapshot = null;
+  }
+
+  /**
+   * Returns every genre in the catalog, in alphabetical order.
+   */
+  public List < String > genres() throws SQLException {
+    return new ArrayList < String > (snapshot().byGenre.keySet());
+  }
+
+  /**
+   * Returns the game with a gameID, or null when there is none.
+   */
+  public CatalogGame byId(String gameId) throws SQLException {
+    return snapshot().byId.get(gameId);
+  }
+
+  /**
+   * Returns the game a user typed, by its gameID or by its name in any
+   * case, or null when no game matches.
+   */
+  public CatalogGame find(String idOrName) throws SQLException {
+    Snapshot current = snapshot();
+    String key = idOrName.trim();
+    CatalogGame game = current.byId.get(key);
+    return game != null ? game : current.byName.get(key.toLowerCase(Locale.ROOT));
+  } //end find
+
+  /**
+   * Returns the games of a genre, cheapest first.
+   *
+   * @param genre the exact genre name
+   * @return the games, or an empty list for an unknown genre
+   */
+  public List < CatalogGame > byGenre(String genre) throws SQLException {
+    List < CatalogGame > games = snapshot().byGenre.get(genre);
+    return games == null ? Collections.< CatalogGame > emptyList() : games;
+  }
+
+  /**
+   * Returns one page of the games of a genre, cheapest first.
+   *
+   * @param genre the exact genre name
+   * @param after the last game of the previous page, null for the first page
+   * @param size the number of games per page
+   */
+  public Page < CatalogGame > pageByGenre(String genre, CatalogGame after, int size) throws SQLException {
+    List < CatalogGame > games = byGenre(genre);
+    int from = after == null ? 0 : seekAfter(games, after);
+    int to = Math.min(games.size(), from + size);
+    return new Page < CatalogGame > (new ArrayList < CatalogGame > (games.subList(from, to)), to < games.size());
+  } //end pageByGenre
+
+  /**
+   * Returns one page of the games whose price lies in [minPrice, maxPrice].
+   *
+   * @param minPrice the lowest price, inclusive
+   * @param maxPrice the highest price, inclusive
+   * @param ascending true for cheapest first, false for most expensive first
+   * @param after the last game of the previous page, null for the first page
+   * @param size the number of games per page
+   */
+  public Page < CatalogGame > pageByPrice(BigDecimal minPrice, BigDecimal maxPrice, boolean ascending,
+    CatalogGame after, int size) throws SQLException {
+    List < CatalogGame > games = Arrays.asList(snapshot().byPrice);
+    int lo = lowerBound(games, minPrice);
+    int hi = upperBound(games, maxPrice);
+    List < CatalogGame > items = new ArrayList < CatalogGame > (size);
+    if (ascending) {
+      int from = after == null ? lo : Math.max(lo, seekAfter(games, after));
+      for (int i = from; i < hi && items.size() < size; ++i)
+        items.add(games.get(i));
+      return new Page < CatalogGame > (items, from + items.size() < hi);
+    } //end if
+    // the games before the key, walked backwards.
+    int to = after == null ? hi : Math.min(hi, seekBefore(games, after));
+    for (int i = to - 1; i >= lo && items.size() < size; --i)
+      items.add(games.get(i));
+    return new Page < CatalogGame > (items, to - items.size() > lo);
+  } //end pageByPrice
+
+  /**
+   * Returns the number of games in the catalog.
+   */
+  public int size() throws SQLException {
+    return snapshot().byPrice.length;
+  }
+
+  // first index whose price is >= price.
+  static int lowerBound(List < CatalogGame > games, BigDecimal price) {
+    int lo = 0, hi = games.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (games.get(mid).price().compareTo(price) < 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    } //end while
+    return lo;
+  }
+
+  // first index whose price is > price.
+  static int upperBound(List < CatalogGame > games, BigDecimal price) {
+    int lo = 0, hi = games.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (games.get(mid).price().compareTo(price) <= 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    } //end while
+    return lo;
+  }
+
+  // first index ordered after key by (price, gameID).  The key need not be in the list.
+  static int seekAfter(List < CatalogGame > games, CatalogGame key) {
+    int lo = 0, hi = games.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (BY_PRICE.compare(games.get(mid), key) <= 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    } //end while
+    return lo;
+  }
+
+  // first index not ordered before key by (price, gameID).
+  static int seekBefore(List < CatalogGame > games, CatalogGame key) {
+    int lo = 0, hi = games.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (BY_PRICE.compare(games.get(mid), key) < 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    } //end while
+    return lo;
+  }
+
+  private Snapshot snapshot() throws SQLException {
+    Snapshot current = this._snapshot;
+    if (current != null && System.currentTimeMillis() - current.loadedAtMillis < this._ttlMillis)
+      return current;
+    synchronized (this) {
+      // another thread may have reloaded while this one waited.
+      current = this._snapshot;
+      if (current == null || System.currentTimeMillis() - current.loadedAtMillis >= this._ttlMillis) {
+        current = load();
+        this._snapshot = current;
+      } //end if
+      return current;
+    } //end synchronized
+  } //end snapshot
+
+  private Snapshot load() throws SQLException {
+    List < CatalogGame > games = new ArrayList < CatalogGame > ();
+    long start = System.nanoTime();
+    long rows = -1;
+    PooledConnection conn = this._esql.getPool().borrow();
+    try {
+      ResultSet rs = conn.prepare(LOAD).executeQuery();
+      while (rs.next())
+        games.add(CatalogGame.MAPPER.map(rs));
+      rs.close();
+      rows = games.size();
+    } finally {
+      this._esql.getPool().release(conn);
+      this._esql.observe(start, rows, LOAD, null);
+    } //end try
+
+    CatalogGame[] byPrice = games.toArray(new CatalogGame[0]);
+    Arrays.sort(byPrice, BY_PRICE);
+
+    // sorted by price already, so every genre list comes out cheapest first.
+    TreeMap < String, List < CatalogGame >> byGenre = new TreeMap < String, List < CatalogGame >> ();
+    for (CatalogGame game: byPrice)
+      byGenre.computeIfAbsent(game.genre(), g -> new ArrayList < CatalogGame > ()).add(game);
+    for (Map.Entry < String, List < CatalogGame >> genre: byGenre.entrySet())
+      genre.setValue(Collections.unmodifiableList(genre.getValue()));
+
+    HashMap < String, CatalogGame > byId = new HashMap < String, CatalogGame > ();
+    HashMap < String, CatalogGame > byName = new HashMap < String, CatalogGame > ();
+    for (CatalogGame game: byPrice) {
+      byId.put(game.gameID(), game);
+      // two games with one name resolve to the lower gameID.
+      byName.merge(game.gameName().toLowerCase(Locale.ROOT), game,
+        (a, b) -> a.gameID().compareTo(b.gameID()) <= 0 ? a : b);
+    } //end for
+    return new Snapshot(byPrice, byGenre, byId, byName);
+  } //end load
+
+} //end CatalogCache
@@ -0,0 +1,28 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.math.BigDecimal;
+
+/**
+ * One row of the Catalog table.
+ *
+ */
+public record CatalogGame(String gameID, String gameName, String genre, BigDecimal price,
+  String description, String imageURL) {
+
+  // SELECT list read by MAPPER.
+  public static final String COLUMNS = "gameID, gameName, genre, price, description, imageURL";
+
+  public static final RowMapper < CatalogGame > MAPPER = rs -> new CatalogGame(
+    rs.getString(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4),
+    rs.getString(5), rs.getString(6));
+}
@@ -0,0 +1,580 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class answers "customers who rented this also rented".  For every
+ * pair of games it counts the rental orders holding both, from the
+ * GamesInOrder rows grouped by rentalOrderID.
+ *
+ * Games are numbered as they are first seen.  Every game has a row of
+ * (other game, orders) pairs kept in an open-addressing table of ints, so
+ * the sparse game x game matrix holds no boxed keys or counts.  The matrix
+ * is built with fork-join: the orders are read into chunks of about
+ * CHUNK_LINES lines, every chunk is counted into a matrix of its own, and
+ * the matrices of neighbouring chunks are summed as the tasks join.  The
+ * build runs on a thread of its own from startup, and lookups made before
+ * it is done find no recommendations rather than wait for it.  After the
+ * build placeOrder adds each new order to the counts, and the top games
+ * of a row are picked with a heap of k entries when asked for.
+ *
+ */
+public class CoRentals {
+
+  /**
+   * A recommended game and the number of orders holding it together
+   * with the games it was recommended for.
+   */
+  public record Recommendation(String gameID, int orders) {}
+
+  private static final String LOAD = "SELECT rentalOrderID, gameID FROM GamesInOrder ORDER BY rentalOrderID;";
+
+  // order lines counted by one fork-join leaf; an order is never split.
+  static final int CHUNK_LINES = 1 << 18;
+
+  // the other games of one game and their counts, open addressing over
+  // game number + 1, 0 marks a free slot.
+  static final class Row {
+    int[] keys;
+    int[] counts;
+    int size = 0;
+
+    Row() {
+      this(4);
+    }
+
+    // a row holding expected games without growing.
+    Row(int expected) {
+      int length = 8;
+      while (length < 2 * expected)
+        length <<= 1;
+      this.keys = new int[length];
+      this.counts = new int[length];
+    }
+
+    void add(int game, int n) {
+      int mask = this.keys.length - 1;
+      int i = mix(game) & mask;
+      for (; this.keys[i] != 0; i = (i + 1) & mask)
+        if (this.keys[i] == game + 1) {
+          this.counts[i] += n;
+          return;
+        } //end if
+      this.keys[i] = game + 1;
+      this.counts[i] = n;
+      // kept at most half full.
+      if (2 * ++this.size > this.keys.length)
+        rehash();
+    } //end add
+
+    void addAll(Row other) {
+      for (int i = 0; i < other.keys.length; ++i)
+        if (other.keys[i] != 0)
+          add(other.keys[i] - 1, other.counts[i]);
+    }
+
+    private void rehash() {
+      int[] keys = this.keys;
+      int[] counts = this.counts;
+      this.keys = new int[2 * keys.length];
+      this.counts = new int[2 * keys.length];
+      int mask = this.keys.length - 1;
+      for (int k = 0; k < keys.length; ++k) {
+        if (keys[k] == 0)
+          continue;
+        int i = mix(keys[k] - 1) & mask;
+        while (this.keys[i] != 0)
+          i = (i + 1) & mask;
+        this.keys[i] = keys[k];
+        this.counts[i] = counts[k];
+      } //end for
+    } //end rehash
+  } //end Row
+
+  // the rows of every game by game number, and the orders holding each game.
+  static final class Matrix {
+    Row[] rows;
+    int[] rentals;
+
+    Matrix(int games) {
+      this.rows = new Row[Math.max(16, games)];
+      this.rentals = new int[this.rows.length];
+    }
+
+    void ensure(int games) {
+      if (games <= this.rows.length)
+        return;
+      int length = Math.max(games, 2 * this.rows.length);
+      this.rows = Arrays.copyOf(this.rows, length);
+      this.rentals = Arrays.copyOf(this.rentals, length);
+    }
+
+    // counts one order, the distinct game numbers in games[from, to).
+    void addOrder(int[] games, int from, int to) {
+      for (int i = from; i < to; ++i) {
+        int game = games[i];
+        ++this.rentals[game];
+        if (to - from == 1)
+          continue;
+        Row row = this.rows[game];
+        if (row == null)
+          row = this.rows[game] = new Row();
+        for (int j = from; j < to; ++j)
+          if (j != i)
+            row.add(games[j], 1);
+      } //end for
+    } //end addOrder
+
+    // adds the counts of another matrix over the same game numbers, taking its rows.
+    void addAll(Matrix other) {
+      for (int game = 0; game < other.rows.length; ++game) {
+        this.rentals[game] += other.rentals[game];
+        Row mine = this.rows[game];
+        Row theirs = other.rows[game];
+        if (theirs == null)
+          continue;
+        if (mine == null) {
+          this.rows[game] = theirs;
+        } else if (mine.size >= theirs.size) {
+          mine.addAll(theirs);
+        } else {
+          theirs.addAll(mine);
+          this.rows[game] = theirs;
+        } //end if
+      } //end for
+    } //end addAll
+  } //end Matrix
+
+  // the orders of one fork-join leaf: the game numbers of all their lines
+  // and where each order ends.
+  static final class Chunk {
+    int[] games = new int[1024];
+    int[] ends = new int[256];
+    int lines = 0;
+    int orders = 0;
+
+    void add(int game) {
+      if (this.lines == this.games.length)
+        this.games = Arrays.copyOf(this.games, 2 * this.lines);
+      this.games[this.lines++] = game;
+    }
+
+    void endOrder() {
+      if (this.orders == this.ends.length)
+        this.ends = Arrays.copyOf(this.ends, 2 * this.orders);
+      this.ends[this.orders++] = this.lines;
+    }
+  } //end Chunk
+
+  // cuts the streamed GamesInOrder rows into chunks of whole orders.
+  private static final class OrderReader implements RowHandler {
+    private final Map < String, Integer > _numbers;
+    private final List < String > _games;
+    private final Map < String, List < String >> _pending;
+    private final List < Chunk > _chunks = new ArrayList < Chunk > ();
+    private Chunk _chunk = new Chunk();
+    private String _order = null;
+
+    OrderReader(Map < String, Integer > numbers, List < String > games, Map < String, List < String >> pending) {
+      this._numbers = numbers;
+      this._games = games;
+      this._pending = pending;
+    }
+
+    @Override
+    public void handle(ResultSet rs) throws SQLException {
+      String order = rs.getString(1);
+      if (!order.equals(this._order)) {
+        if (this._order != null)
+          endOrder();
+        this._order = order;
+        // read here, so it is not counted again once the build is done.
+        if (!this._pending.isEmpty())
+          this._pending.remove(order);
+      } //end if
+      this._chunk.add(intern(this._numbers, this._games, rs.getString(2)));
+    } //end handle
+
+    private void endOrder() {
+      this._chunk.endOrder();
+      if (this._chunk.lines >= CHUNK_LINES) {
+        this._chunks.add(this._chunk);
+        this._chunk = new Chunk();
+      } //end if
+    }
+
+    Chunk[] finish() {
+      if (this._order != null)
+        endOrder();
+      if (this._chunk.orders > 0)
+        this._chunks.add(this._chunk);
+      return this._chunks.toArray(new Chunk[0]);
+    }
+  } //end OrderReader
+
+  // counts the chunks [lo, hi), one leaf per chunk.
+  static final class Count extends RecursiveTask < Matrix > {
+    private static final long serialVersionUID = 1L;
+
+    private final Chunk[] _chunks;
+    private final int _lo;
+    private final int _hi;
+    private final int _games;
+
+    Count(Chunk[] chunks, int lo, int hi, int games) {
+      this._chunks = chunks;
+      this._lo = lo;
+      this._hi = hi;
+      this._games = games;
+    }
+
+    @Override
+    protected Matrix compute() {
+      if (this._hi - this._lo == 1) {
+        Chunk chunk = this._chunks[this._lo];
+        // counted once, its lines are not needed anymore.
+        this._chunks[this._lo] = null;
+        Matrix counts = new Matrix(this._games);
+        int from = 0;
+        for (int o = 0; o < chunk.orders; ++o) {
+          counts.addOrder(chunk.games, from, chunk.ends[o]);
+          from = chunk.ends[o];
+        } //end for
+        return counts;
+      } //end if
+      int mid = (this._lo + this._hi) >>> 1;
+      Count left = new Count(this._chunks, this._lo, mid, this._games);
+      left.fork();
+      Matrix right = new Count(this._chunks, mid, this._hi, this._games).compute();
+      Matrix counts = left.join();
+      counts.addAll(right);
+      return counts;
+    } //end compute
+  } //end Count
+
+  private final GameRental _esql;
+  private final int _topK;
+  private final int _threads;
+
+  private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+  // gameID -> game number and back, and the counts; null before the build.
+  private Map < String, Integer > _numbers = null;
+  private List < String > _games = null;
+  private Matrix _counts = null;
+
+  // orders placed while a build reads GamesInOrder, by rentalOrderID; null when no build runs.
+  private Map < String, List < String >> _pending = null;
+
+  private volatile boolean _built = false;
+  private final AtomicBoolean _building = new AtomicBoolean();
+
+  /**
+   * Creates a new recommender, built once start is called
+   *
+   * @param esql the database the orders are read from
+   * @param topK the number of games recommended at most
+   * @param threads the number of threads counting the orders
+   */
+  public CoRentals(GameRental esql, int topK, int threads) {
+    this._esql = esql;
+    this._topK = topK;
+    this._threads = Math.max(1, threads);
+  } //end CoRentals
+
+  /**
+   * Builds the counts from GamesInOrder on a background thread, unless
+   * they are built or a build already runs.
+   */
+  public void start() {
+    if (this._built || !this._building.compareAndSet(false, true))
+      return;
+    Thread t = new Thread(() -> {
+      try {
+        build();
+      } catch (SQLException | RuntimeException e) {
+        // the next lookup starts another build.
+        GameRental.err().println("Co-rentals not built: " + e.getMessage());
+      } finally {
+        this._building.set(false);
+      } //end try
+    }, "co-rentals-build");
+    t.setDaemon(true);
+    t.start();
+  } //end start
+
+  /**
+   * Returns the games rented most often together with some games, most
+   * orders first, ties broken by gameID.  The given games themselves are
+   * never recommended.
+   *
+   * @param gameIds the games, e.g. one game or the games of an order
+   * @return at most topK games, empty when no order holds any of the games
+   *   with another or while the counts are being built
+   */
+  public List < Recommendation > alsoRented(Collection < String > gameIds) {
+    if (!this._built)
+      start();
+    this._lock.readLock().lock();
+    try {
+      if (this._counts == null)
+        return new ArrayList < Recommendation > ();
+      int[] given = new int[gameIds.size()];
+      int n = 0;
+      games:
+      for (String gameId: gameIds) {
+        Integer game = this._numbers.get(gameId.trim());
+        if (game == null)
+          continue;
+        // a game given twice counts its row once.
+        for (int i = 0; i < n; ++i)
+          if (given[i] == game)
+            continue games;
+        given[n++] = game;
+      } //end for
+      if (n == 0)
+        return new ArrayList < Recommendation > ();
+      Row counts = this._counts.rows[given[0]];
+      if (n > 1) {
+        // the rows of several games are summed first.
+        int expected = 0;
+        for (int i = 0; i < n; ++i)
+          if (this._counts.rows[given[i]] != null)
+            expected += this._counts.rows[given[i]].size;
+        counts = new Row(Math.min(expected, this._games.size()));
+        for (int i = 0; i < n; ++i)
+          if (this._counts.rows[given[i]] != null)
+            counts.addAll(this._counts.rows[given[i]]);
+      } //end if
+      return counts == null ? new ArrayList < Recommendation > () : top(counts, given, n);
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  } //end alsoRented
+
+  /**
+   * Counts a committed order.  Called by placeOrder.
+   *
+   * @param rentalOrderID the new order
+   * @param gameIds its distinct games
+   */
+  public void recordOrder(String rentalOrderID, Collection < String > gameIds) {
+    this._lock.writeLock().lock();
+    try {
+      if (this._pending != null)
+        this._pending.put(rentalOrderID, new ArrayList < String > (gameIds));
+      else if (this._counts != null)
+        count(gameIds);
+    } finally {
+      this._lock.writeLock().unlock();
+    } //end try
+  } //end recordOrder
+
+  /**
+   * Drops the counts and builds them again from GamesInOrder in the
+   * background, unless a build is already running.
+   */
+  public void invalidate() {
+    this._lock.writeLock().lock();
+    try {
+      this._built = false;
+      this._numbers = null;
+      this._games = null;
+      this._counts = null;
+    } finally {
+      this._lock.writeLock().unlock();
+    } //end try
+    start();
+  } //end invalidate
+
+  /**
+   * Returns the number of games seen in orders, 0 until the counts are built.
+   */
+  public int size() {
+    this._lock.readLock().lock();
+    try {
+      return this._games == null ? 0 : this._games.size();
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  }
+
+  // the k best entries of a row, leaving out the given games.
+  private List < Recommendation > top(Row counts, int[] given, int n) {
+    int[] heapGames = new int[this._topK];
+    int[] heapCounts = new int[this._topK];
+    int size = 0;
+    candidates:
+    for (int i = 0; i < counts.keys.length; ++i) {
+      if (counts.keys[i] == 0)
+        continue;
+      int game = counts.keys[i] - 1;
+      for (int g = 0; g < n; ++g)
+        if (given[g] == game)
+          continue candidates;
+      if (size < this._topK) {
+        heapGames[size] = game;
+        heapCounts[size] = counts.counts[i];
+        siftUp(heapGames, heapCounts, size++);
+      } else if (worse(heapGames[0], heapCounts[0], game, counts.counts[i])) {
+        heapGames[0] = game;
+        heapCounts[0] = counts.counts[i];
+        siftDown(heapGames, heapCounts, size);
+      } //end if
+    } //end for
+
+    // the heap keeps the worst on top, so it is emptied from the back.
+    Recommendation[] best = new Recommendation[size];
+    while (size > 0) {
+      best[size - 1] = new Recommendation(this._games.get(heapGames[0]), heapCounts[0]);
+      --size;
+      heapGames[0] = heapGames[size];
+      heapCounts[0] = heapCounts[size];
+      siftDown(heapGames, heapCounts, size);
+    } //end while
+    return new ArrayList < Recommendation > (Arrays.asList(best));
+  } //end top
+
+  // whether game a with count ca ranks below game b with count cb.
+  private boolean worse(int a, int ca, int b, int cb) {
+    return ca != cb ? ca < cb : this._games.get(a).compareTo(this._games.get(b)) > 0;
+  }
+
+  private void siftUp(int[] games, int[] counts, int i) {
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!worse(games[i], counts[i], games[parent], counts[parent]))
+        return;
+      swap(games, counts, i, parent);
+      i = parent;
+    } //end while
+  }
+
+  private void siftDown(int[] games, int[] counts, int size) {
+    int i = 0;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && worse(games[child + 1], counts[child + 1], games[child], counts[child]))
+        ++child;
+      if (!worse(games[child], counts[child], games[i], counts[i]))
+        return;
+      swap(games, counts, i, child);
+      i = child;
+    } //end while
+  }
+
+  private static void swap(int[] games, int[] counts, int i, int j) {
+    int game = games[i];
+    games[i] = games[j];
+    games[j] = game;
+    int count = counts[i];
+    counts[i] = counts[j];
+    counts[j] = count;
+  }
+
+  // adds one order to the counts, under the write lock.
+  private void count(Collection < String > gameIds) {
+    int[] order = new int[gameIds.size()];
+    int n = 0;
+    for (String gameId: gameIds)
+      order[n++] = intern(this._numbers, this._games, gameId);
+    this._counts.ensure(this._games.size());
+    this._counts.addOrder(order, 0, n);
+  }
+
+  // reads GamesInOrder and counts it.  Run by one start thread at a time.
+  private void build() throws SQLException {
+    Map < String, List < String >> pending = new ConcurrentHashMap < String, List < String >> ();
+    this._lock.writeLock().lock();
+    try {
+      this._pending = pending;
+    } finally {
+      this._lock.writeLock().unlock();
+    } //end try
+
+    boolean built = false;
+    ForkJoinPool pool = new ForkJoinPool(this._threads);
+    try {
+      Map < String, Integer > numbers = new HashMap < String, Integer > ();
+      List < String > games = new ArrayList < String > ();
+      OrderReader reader = new OrderReader(numbers, games, pending);
+      // read from the primary: a replica may not have replayed orders
+      // committed before the build, and those never reach the pending map.
+      String operation = QueryMetrics.getOperation();
+      QueryMetrics.setOperation("coRentalsBuild");
+      try {
+        this._esql.executeQueryForEach(LOAD, reader);
+      } finally {
+        QueryMetrics.setOperation(operation);
+      } //end try
+      Chunk[] chunks = reader.finish();
+      Matrix counts = chunks.length == 0 ? new Matrix(games.size())
+        : pool.invoke(new Count(chunks, 0, chunks.length, games.size()));
+
+      this._lock.writeLock().lock();
+      try {
+        this._numbers = numbers;
+        this._games = games;
+        this._counts = counts;
+        // orders placed during the build that it did not read.  An order
+        // committed just before the read but recorded after the reader
+        // passed it is counted twice until the next build.
+        for (List < String > order: pending.values())
+          count(order);
+        this._pending = null;
+        this._built = true;
+      } finally {
+        this._lock.writeLock().unlock();
+      } //end try
+      built = true;
+    } finally {
+      pool.shutdown();
+      if (!built) {
+        this._lock.writeLock().lock();
+        try {
+          this._pending = null;
+        } finally {
+          this._lock.writeLock().unlock();
+        } //end try
+      } //end if
+    } //end try
+  } //end build
+
+  // the number of a gameID, the next free one when new.
+  private static int intern(Map < String, Integer > numbers, List < String > games, String gameId) {
+    Integer number = numbers.get(gameId);
+    if (number != null)
+      return number;
+    numbers.put(gameId, games.size());
+    games.add(gameId);
+    return games.size() - 1;
+  } //end intern
+
+  private static int mix(int key) {
+    key *= 0x9E3779B9;
+    return key ^ (key >>> 16);
+  }
+
+} //end CoRentals
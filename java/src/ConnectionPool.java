@@ -0,0 +1,362 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines a bounded pool of physical connections to one
+ * PostgreSQL database.  Connections are opened lazily up to the maximum
+ * size, validated when they are borrowed after sitting idle, and closed
+ * again when they stay idle above the minimum size.
+ *
+ */
+public class ConnectionPool {
+
+  private final String _url;
+  private final String _user;
+  private final String _passwd;
+
+  private final int _minSize;
+  private final int _maxSize;
+  private final long _maxWaitMillis;
+  private final long _idleTimeoutMillis;
+  private final long _validationIntervalMillis;
+  private final int _statementCacheSize;
+
+  // idle connections, most recently used first.
+  private final ArrayDeque < PooledConnection > _idle = new ArrayDeque < PooledConnection > ();
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final Condition _available = _lock.newCondition();
+
+  // number of open connections, idle or borrowed.
+  private int _total = 0;
+  private boolean _closed = false;
+
+  // wait-time metrics, guarded by _lock.
+  private long _borrowCount = 0;
+  private long _totalWaitNanos = 0;
+  private long _maxWaitNanos = 0;
+  private long _timeoutCount = 0;
+
+  private final ScheduledExecutorService _evictor;
+
+  /**
+   * Creates a new connection pool and opens its minimum number of connections
+   *
+   * @param url the JDBC connection URL
+   * @param user the user name used to login to the database
+   * @param passwd the user login password
+   * @param minSize the number of connections kept open while idle
+   * @param maxSize the maximum number of open connections
+   * @param maxWaitMillis how long a borrow waits for a free connection
+   * @param idleTimeoutMillis how long a connection above minSize may stay idle
+   * @param validationIntervalMillis idle time after which a connection is validated on borrow
+   * @param statementCacheSize prepared statements cached per connection
+   * @throws java.sql.SQLException when failed to make a connection.
+   */
+  public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize,
+    long maxWaitMillis, long idleTimeoutMillis, long validationIntervalMillis,
+    int statementCacheSize) throws SQLException {
+    this._url = url;
+    this._user = user;
+    this._passwd = passwd;
+    this._maxSize = Math.max(1, maxSize);
+    this._minSize = Math.max(0, Math.min(minSize, this._maxSize));
+    this._maxWaitMillis = maxWaitMillis;
+    this._idleTimeoutMillis = idleTimeoutMillis;
+    this._validationIntervalMillis = validationIntervalMillis;
+    this._statementCacheSize = statementCacheSize;
+
+    for (int i = 0; i < this._minSize; ++i) {
+      this._idle.push(open());
+      ++this._total;
+    } //end for
+
+    this._evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "connection-pool-evictor");
+      t.setDaemon(true);
+      return t;
+    });
+    long period = Math.max(1000, idleTimeoutMillis / 2);
+    this._evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+  } //end ConnectionPool
+
+  /**
+   * Creates a connection pool configured from the gamerental.pool.* system
+   * properties.
+   */
+  public static ConnectionPool fromSystemProperties(String url, String user, String passwd) throws SQLException {
+    return fromSystemProperties(url, user, passwd, Integer.getInteger("gamerental.pool.minSize", 1));
+  }
+
+  /**
+   * Creates a connection pool configured from the gamerental.pool.* system
+   * properties that keeps minSize connections open.  A pool with minSize 0
+   * does not connect until its first borrow.
+   */
+  public static ConnectionPool fromSystemProperties(String url, String user, String passwd, int minSize)
+    throws SQLException {
+    return new ConnectionPool(url, user, passwd, minSize,
+      Integer.getInteger("gamerental.pool.maxSize", 8),
+      Long.getLong("gamerental.pool.maxWaitMillis", 30000L),
+      Long.getLong("gamerental.pool.idleTimeoutMillis", 300000L),
+      Long.getLong("gamerental.pool.validationIntervalMillis", 5000L),
+      Integer.getInteger("gamerental.statementCacheSize", 64));
+  } //end fromSystemProperties
+
+  private PooledConnection open() throws SQLException {
+    return new PooledConnection(DriverManager.getConnection(this._url, this._user, this._passwd),
+      this._statementCacheSize);
+  }
+
+  /**
+   * Borrows a connection, waiting up to the configured maximum wait time
+   * when every connection is in use.  The connection must be handed back
+   * with release.
+   *
+   * @return a validated connection
+   * @throws java.sql.SQLException when no connection became available
+   */
+  public PooledConnection borrow() throws SQLException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(this._maxWaitMillis);
+    while (true) {
+      PooledConnection conn = null;
+      boolean create = false;
+      this._lock.lock();
+      try {
+        while (conn == null && !create) {
+          if (this._closed)
+            throw new SQLException("Connection pool is closed");
+          if (!this._idle.isEmpty()) {
+            conn = this._idle.pop();
+          } else if (this._total < this._maxSize) {
+            ++this._total;
+            create = true;
+          } else {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+              ++this._timeoutCount;
+              throw new SQLException("Timed out waiting for a database connection after " +
+                this._maxWaitMillis + " ms");
+            } //end if
+            try {
+              this._available.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new SQLException("Interrupted while waiting for a database connection");
+            } //end try
+          } //end if
+        } //end while
+      } finally {
+        this._lock.unlock();
+      } //end try
+
+      if (create) {
+        try {
+          conn = open();
+        } catch (SQLException e) {
+          discard();
+          throw e;
+        } //end try
+      } else if (System.currentTimeMillis() - conn.getLastUsedMillis() >= this._validationIntervalMillis &&
+        !conn.validate()) {
+        // the connection went stale while idle, try another one.
+        conn.close();
+        discard();
+        continue;
+      } //end if
+      recordWait(System.nanoTime() - start);
+      return conn;
+    } //end while
+  } //end borrow
+
+  /**
+   * Hands a borrowed connection back to the pool.  An open transaction
+   * left on the connection is rolled back.
+   *
+   * @param conn the connection returned by borrow
+   */
+  public void release(PooledConnection conn) {
+    if (conn == null)
+      return;
+    try {
+      if (!conn.getConnection().getAutoCommit()) {
+        conn.getConnection().rollback();
+        conn.getConnection().setAutoCommit(true);
+      } //end if
+    } catch (SQLException e) {
+      conn.close();
+      discard();
+      return;
+    } //end try
+    conn.touch();
+    this._lock.lock();
+    try {
+      if (this._closed) {
+        conn.close();
+        --this._total;
+        return;
+      } //end if
+      this._idle.push(conn);
+      this._available.signal();
+    } finally {
+      this._lock.unlock();
+    } //end try
+  } //end release
+
+  /**
+   * Closes a borrowed connection that failed instead of handing it back,
+   * so the next borrow opens a fresh one.
+   *
+   * @param conn the connection returned by borrow
+   */
+  public void invalidate(PooledConnection conn) {
+    if (conn == null)
+      return;
+    conn.close();
+    discard();
+  } //end invalidate
+
+  // forgets a connection that was closed or never opened.
+  private void discard() {
+    this._lock.lock();
+    try {
+      --this._total;
+      this._available.signal();
+    } finally {
+      this._lock.unlock();
+    } //end try
+  }
+
+  private void recordWait(long nanos) {
+    this._lock.lock();
+    try {
+      ++this._borrowCount;
+      this._totalWaitNanos += nanos;
+      if (nanos > this._maxWaitNanos)
+        this._maxWaitNanos = nanos;
+    } finally {
+      this._lock.unlock();
+    } //end try
+  }
+
+  // closes connections that stayed idle too long while above the minimum size.
+  private void evictIdle() {
+    long cutoff = System.currentTimeMillis() - this._idleTimeoutMillis;
+    ArrayDeque < PooledConnection > evicted = new ArrayDeque < PooledConnection > ();
+    this._lock.lock();
+    try {
+      // the least recently used connections sit at the tail.
+      Iterator < PooledConnection > it = this._idle.descendingIterator();
+      while (it.hasNext() && this._total > this._minSize) {
+        PooledConnection conn = it.next();
+        if (conn.getLastUsedMillis() > cutoff)
+          break;
+        it.remove();
+        --this._total;
+        evicted.add(conn);
+      } //end while
+    } finally {
+      this._lock.unlock();
+    } //end try
+    for (PooledConnection conn: evicted)
+      conn.close();
+  } //end evictIdle
+
+  public int getMaxSize() {
+    return this._maxSize;
+  }
+
+  public int getOpenCount() {
+    this._lock.lock();
+    try {
+      return this._total;
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  public int getIdleCount() {
+    this._lock.lock();
+    try {
+      return this._idle.size();
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  public long getBorrowCount() {
+    this._lock.lock();
+    try {
+      return this._borrowCount;
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  public long getTimeoutCount() {
+    this._lock.lock();
+    try {
+      return this._timeoutCount;
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  public double getAverageWaitMillis() {
+    this._lock.lock();
+    try {
+      return this._borrowCount == 0 ? 0.0 : this._totalWaitNanos / 1e6 / this._borrowCount;
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  public double getMaxWaitMillis() {
+    this._lock.lock();
+    try {
+      return this._maxWaitNanos / 1e6;
+    } finally {
+      this._lock.unlock();
+    }
+  }
+
+  /**
+   * Closes every idle connection and stops handing out new ones.
+   * Borrowed connections are closed as they are released.
+   */
+  public void close() {
+    this._evictor.shutdownNow();
+    this._lock.lock();
+    try {
+      this._closed = true;
+      for (PooledConnection conn: this._idle) {
+        conn.close();
+        --this._total;
+      } //end for
+      this._idle.clear();
+      this._available.signalAll();
+    } finally {
+      this._lock.unlock();
+    } //end try
+  } //end close
+
+} //end ConnectionPool
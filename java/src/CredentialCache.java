@@ -0,0 +1,117 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps recently used Users rows in memory so that logging in
+ * and checking roles do not go to the database every time.  At most
+ * maxSize users are kept, the least recently used one is dropped first,
+ * and a row older than the time to live is read again.  Every write to a
+ * user's credentials or role must invalidate that user.
+ *
+ */
+public class CredentialCache {
+
+  // a cached row and when it was read.
+  private static final class Entry {
+    final User user;
+    final long loadedAtMillis;
+
+    Entry(User user) {
+      this.user = user;
+      this.loadedAtMillis = System.currentTimeMillis();
+    }
+  }
+
+  private final GameRental _esql;
+  private final int _maxSize;
+  private final long _ttlMillis;
+
+  // users in access order, eldest first.
+  private final LinkedHashMap < String, Entry > _users;
+
+  private long _hits = 0;
+  private long _misses = 0;
+
+  /**
+   * Creates a new, empty credential cache
+   *
+   * @param esql the database users are read from
+   * @param maxSize the maximum number of users kept
+   * @param ttlMillis how long a cached row is trusted
+   */
+  public CredentialCache(GameRental esql, int maxSize, long ttlMillis) {
+    this._esql = esql;
+    this._maxSize = Math.max(1, maxSize);
+    this._ttlMillis = ttlMillis;
+    this._users = new LinkedHashMap < String, Entry > (16, 0.75f, true);
+  } //end CredentialCache
+
+  /**
+   * Returns the Users row of a login, reading it on a miss.
+   *
+   * @param login the login name
+   * @return the user, or null if there is no such login
+   * @throws java.sql.SQLException when the user could not be read
+   */
+  public User get(String login) throws SQLException {
+    synchronized (this) {
+      Entry entry = this._users.get(login);
+      if (entry != null && System.currentTimeMillis() - entry.loadedAtMillis < this._ttlMillis) {
+        ++this._hits;
+        return entry.user;
+      } //end if
+      ++this._misses;
+    } //end synchronized
+
+    // read outside the lock, a concurrent miss on the same login reads twice.
+    User user = this._esql.executeQueryForObject(
+      "SELECT " + User.COLUMNS + " FROM Users WHERE login = ?;", User.MAPPER, login);
+    if (user != null)
+      put(user);
+    return user;
+  } //end get
+
+  /**
+   * Drops a login so its next lookup reads the database.
+   */
+  public synchronized void invalidate(String login) {
+    this._users.remove(login);
+  }
+
+  public synchronized long getHits() {
+    return this._hits;
+  }
+
+  public synchronized long getMisses() {
+    return this._misses;
+  }
+
+  public synchronized int size() {
+    return this._users.size();
+  }
+
+  private synchronized void put(User user) {
+    this._users.put(user.login(), new Entry(user));
+    if (this._users.size() > this._maxSize) {
+      // evicts the least recently used user.
+      Iterator < Map.Entry < String, Entry >> eldest = this._users.entrySet().iterator();
+      eldest.next();
+      eldest.remove();
+    } //end if
+  } //end put
+
+} //end CredentialCache
@@ -0,0 +1,736 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class generates GameRental data sets of any size, in the CSV
+ * format of data/.  The output only depends on the seed and the row
+ * counts: rows are generated in fixed-size chunks, every chunk from its
+ * own random stream, so the chunks are built in parallel and written
+ * back in order through a bounded window.  Users, games and order IDs
+ * are functions of their index, so memory does not grow with the data.
+ *
+ * Users place orders and games are rented with Zipf-distributed
+ * popularity, and genres follow a Zipf distribution over the catalog.
+ * Order and tracking IDs keep the gamerentalorderNNNN and trackingidNNNN
+ * formats from 1000 up, which the ID sequences continue after a load.
+ *
+ */
+public class DataGenerator {
+
+  // rows per chunk.  Fixed, so the output does not depend on the number of threads.
+  static final int CHUNK = 8192;
+
+  // most popular first.
+  static final String[] GENRES = {
+    "Action", "Shooter", "Sports", "Platform", "Role-Playing", "Misc",
+    "Racing", "Fighting", "Simulation", "Puzzle", "Adventure", "Strategy"
+  };
+
+  static final String[] STATUSES = {
+    "Out for Delivery", "Delivered", "In Transit", "Delayed",
+    "Arrived at Facility", "Attempted Delivery", "Ready for Pickup", "Returned to Sender"
+  };
+
+  static final String[] COURIERS = { "DHL", "FedEx", "TNT", "UPS", "USPS" };
+
+  static final String[] CITIES = {
+    "Albuquerque,NM", "Arlington,TX", "Atlanta,GA", "Austin,TX", "Baltimore,MD", "Boston,MA",
+    "Charlotte,NC", "Chicago,IL", "Colorado Springs,CO", "Columbus,OH", "Dallas,TX", "Denver,CO",
+    "Detroit,MI", "El Paso,TX", "Fort Worth,TX", "Fresno,CA", "Houston,TX", "Indianapolis,IN",
+    "Jacksonville,FL", "Kansas City,MO", "Las Vegas,NV", "Long Beach,CA", "Los Angeles,CA",
+    "Louisville,KY", "Memphis,TN", "Mesa,AZ", "Miami,FL", "Milwaukee,WI", "Minneapolis,MN",
+    "Nashville,TN", "New Orleans,LA", "New York,NY", "Oakland,CA", "Oklahoma City,OK", "Omaha,NE",
+    "Philadelphia,PA", "Phoenix,AZ", "Portland,OR", "Raleigh,NC", "Sacramento,CA", "San Antonio,TX",
+    "San Diego,CA", "San Francisco,CA", "San Jose,CA", "Seattle,WA", "Tucson,AZ", "Tulsa,OK",
+    "Virginia Beach,VA", "Washington,DC", "Wichita,KS"
+  };
+
+  static final String[] PLATFORMS = {
+    "PC", "PS4", "PS5", "Switch", "XOne", "XSX", "Wii", "DS", "GBA", "Multi"
+  };
+
+  static final String[] PUBLISHERS = {
+    "Nintendo", "Electronic Arts", "Activision", "Ubisoft", "Sony", "Take-Two", "Sega",
+    "Capcom", "Bandai Namco", "Square Enix", "Konami", "THQ", "Epic Games", "Microsoft"
+  };
+
+  static final String[] TITLE_WORDS = {
+    "Super", "Dark", "Final", "Grand", "Mega", "Shadow", "Crystal", "Iron", "Silent", "Lost",
+    "Eternal", "Galactic", "Wild", "Hidden", "Crimson", "Frozen", "Ancient", "Neon", "Rogue", "Royal",
+    "Savage", "Cosmic", "Burning", "Mystic", "Turbo", "Broken", "Golden", "Steel", "Phantom", "Hyper",
+    "Infinite", "Last"
+  };
+
+  static final String[] TITLE_NOUNS = {
+    "Legends", "Quest", "Racer", "Kingdom", "Warfare", "Odyssey", "Frontier", "Arena", "Saga", "Dungeon",
+    "Empire", "Strike", "League", "Horizon", "Souls", "Fantasy", "Tactics", "Island", "Drift", "Heroes",
+    "Rampage", "Outlaws", "Galaxy", "Knights", "Escape", "Protocol", "Chronicles", "Uprising", "Tycoon", "Party",
+    "Rivals", "Survivors"
+  };
+
+  static final String[] FIRST_NAMES = {
+    "aaron", "alex", "amanda", "andrew", "anna", "brandon", "brian", "carlos", "chris", "daniel",
+    "david", "emily", "eric", "grace", "hannah", "james", "jason", "jennifer", "jessica", "john",
+    "joseph", "julia", "katie", "kevin", "laura", "linda", "maria", "mark", "megan", "michael",
+    "nicole", "olivia", "peter", "rachel", "robert", "sarah", "steven", "tiffany", "whitney", "william"
+  };
+
+  static final String[] LAST_NAMES = {
+    "adams", "allen", "baker", "bowen", "brown", "campbell", "carter", "clark", "davis", "evans",
+    "garcia", "green", "hall", "haley", "harris", "henson", "hill", "hodge", "jackson", "johnson",
+    "jones", "king", "lee", "lewis", "lopez", "martin", "miller", "moore", "nguyen", "parker",
+    "potts", "roberts", "scott", "smith", "taylor", "thomas", "walker", "watson", "white", "young"
+  };
+
+  // the CSV headers, in BulkLoader.TABLES order.
+  static final String[] HEADERS = {
+    "\"login\",\"password\",\"role\",\"favGames\",\"phoneNumber\",\"numOverDueGames\"\n",
+    "\"gameID\",\"gameName\",\"genre\",\"price\",\"description\",\"imageURL\"\n",
+    "\"rentalorderid\",\"login\",\"noOfGames\",\"totalprice\",\"orderTimestamp\",\"dueDate\"\n",
+    "\"trackingID\",\"rentalorderid\",\"status\",\"currentLocation\",\"courierName\",\"lastUpdateDate\",\"additionalComments\"\n",
+    "\"rentalorderid\",\"gameID\",\"unitsOrdered\"\n"
+  };
+
+  private static final int USERS = 0, CATALOG = 1, RENTAL_ORDER = 2, TRACKING_INFO = 3, GAMES_IN_ORDER = 4;
+
+  // first order ID and trackingID number, as in data/.
+  static final long FIRST_ID = 1000;
+
+  // orders are spread over these years, oldest first.
+  private static final long FIRST_ORDER = LocalDateTime.of(2014, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+  private static final long LAST_ORDER = LocalDateTime.of(2025, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+  private static final long DAY = 24 * 60 * 60;
+
+  private static final char[] PASSWORD_CHARS =
+    "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+  // builds the rows of one chunk, one byte array per output table.
+  private interface Chunk {
+    byte[][] build(long chunk, long first, long last);
+  }
+
+  /**
+   * Samples ranks 1..n with probability proportional to 1 / rank^exponent,
+   * in constant time and memory, by rejection-inversion (Hormann and
+   * Derflinger, 1996).
+   */
+  static final class Zipf {
+    private final int _n;
+    private final double _exponent;
+    private final double _hIntegralX1;
+    private final double _hIntegralN;
+    private final double _s;
+
+    Zipf(int n, double exponent) {
+      this._n = n;
+      this._exponent = exponent;
+      this._hIntegralX1 = hIntegral(1.5) - 1d;
+      this._hIntegralN = hIntegral(n + 0.5);
+      this._s = 2d - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    int sample(SplittableRandom rng) {
+      while (true) {
+        double u = this._hIntegralN + rng.nextDouble() * (this._hIntegralX1 - this._hIntegralN);
+        double x = hIntegralInverse(u);
+        int k = (int) (x + 0.5);
+        if (k < 1)
+          k = 1;
+        else if (k > this._n)
+          k = this._n;
+        if (k - x <= this._s || u >= hIntegral(k + 0.5) - h(k))
+          return k;
+      } //end while
+    } //end sample
+
+    private double h(double x) {
+      return Math.exp(-this._exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+      double logX = Math.log(x);
+      return helper2((1d - this._exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+      double t = x * (1d - this._exponent);
+      if (t < -1d)
+        t = -1d;
+      return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, accurate near 0.
+    private static double helper1(double x) {
+      return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1d - x * (0.5 - x * (1d / 3d - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, accurate near 0.
+    private static double helper2(double x) {
+      return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1d + x * 0.5 * (1d + x / 3d * (1d + 0.25 * x));
+    }
+  } //end Zipf
+
+  /**
+   * An input stream fed with whole chunks by another thread, so generated
+   * rows go straight into a COPY without touching the disk.  The producer
+   * writes through sink() and fails the stream if generation breaks; the
+   * consumer closing the stream makes the producer's next write fail.
+   *
+   * The chunks of a table nobody has opened yet are spilled to a temporary
+   * file once the queue is full, instead of blocking the producer, so a
+   * reader that copies the tables one after the other does not deadlock
+   * with a producer that writes several tables at once.  Opening the
+   * stream reads the spilled chunks first, then the queue.
+   */
+  static final class ChunkStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue < byte[] > _chunks = new ArrayBlockingQueue < byte[] > (8);
+    private volatile IOException _failure = null;
+    private volatile boolean _closed = false;
+    private byte[] _chunk = new byte[0];
+    private int _pos = 0;
+
+    // guarded by this, until the stream is opened.
+    private boolean _opened = false;
+    private Path _spill = null;
+    private OutputStream _spillOut = null;
+    // read by the consumer only.
+    private InputStream _spillIn = null;
+
+    private final OutputStream _sink = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (len > 0)
+          put(off == 0 && len == b.length ? b : Arrays.copyOfRange(b, off, off + len));
+      }
+
+      @Override
+      public void close() throws IOException {
+        put(END);
+      }
+    };
+
+    OutputStream sink() {
+      return this._sink;
+    }
+
+    /**
+     * Marks the stream as read by a consumer, which then gets the spilled
+     * chunks before the queued ones.
+     */
+    synchronized ChunkStream open() throws IOException {
+      this._opened = true;
+      if (this._spillOut != null) {
+        this._spillOut.close();
+        this._spillOut = null;
+        this._spillIn = new BufferedInputStream(Files.newInputStream(this._spill), 1 << 16);
+      } //end if
+      return this;
+    } //end open
+
+    // ends the stream with an error the consumer sees on its next read.
+    void fail(IOException failure) {
+      this._failure = failure;
+      this._chunks.clear();
+      this._chunks.offer(END);
+    }
+
+    private void put(byte[] chunk) throws IOException {
+      if (spill(chunk))
+        return;
+      try {
+        while (!this._chunks.offer(chunk, 100, TimeUnit.MILLISECONDS))
+          if (this._closed)
+            throw new IOException("The reader of the generated rows stopped");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while generating rows");
+      } //end try
+    } //end put
+
+    // writes a chunk to the spill file while nobody reads the stream and the queue is full.
+    private synchronized boolean spill(byte[] chunk) throws IOException {
+      if (this._opened || (this._spillOut == null && this._chunks.remainingCapacity() > 0))
+        return false;
+      if (chunk == END)
+        // the queue is empty while spilling, the end marker fits.
+        return false;
+      if (this._spillOut == null) {
+        this._spill = Files.createTempFile("gamerental-", ".csv");
+        // in case the stream is never opened.
+        this._spill.toFile().deleteOnExit();
+        this._spillOut = new BufferedOutputStream(Files.newOutputStream(this._spill), 1 << 16);
+        // the queued chunks come first.
+        for (byte[] queued; (queued = this._chunks.poll()) != null;)
+          this._spillOut.write(queued);
+      } //end if
+      this._spillOut.write(chunk);
+      return true;
+    } //end spill
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (this._spillIn != null) {
+        int n = this._spillIn.read(b, off, len);
+        if (n >= 0)
+          return n;
+        closeSpill();
+      } //end if
+      while (this._pos == this._chunk.length) {
+        if (this._chunk == END)
+          return -1;
+        try {
+          this._chunk = this._chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading generated rows");
+        } //end try
+        this._pos = 0;
+        if (this._failure != null)
+          throw new IOException("Data generation failed", this._failure);
+      } //end while
+      int n = Math.min(len, this._chunk.length - this._pos);
+      System.arraycopy(this._chunk, this._pos, b, off, n);
+      this._pos += n;
+      return n;
+    } //end read
+
+    @Override
+    public void close() throws IOException {
+      this._closed = true;
+      this._chunks.clear();
+      closeSpill();
+    }
+
+    private synchronized void closeSpill() throws IOException {
+      try {
+        if (this._spillIn != null)
+          this._spillIn.close();
+        if (this._spillOut != null)
+          this._spillOut.close();
+      } finally {
+        this._spillIn = null;
+        this._spillOut = null;
+        if (this._spill != null)
+          Files.deleteIfExists(this._spill);
+        this._spill = null;
+      } //end try
+    } //end closeSpill
+  } //end ChunkStream
+
+  private final long _seed;
+  private final long _orders;
+  private final int _users;
+  private final int _games;
+  private final int _threads;
+  private final Zipf _userRanks;
+  private final Zipf _gameRanks;
+  private final Zipf _genreRanks;
+  private final long _userStride;
+  private final long _gameStride;
+
+  /**
+   * Creates a new generator
+   *
+   * @param seed the seed every random stream is derived from
+   * @param orders the number of rental orders
+   * @param users the number of users, at least 1
+   * @param games the number of games, at least 5
+   * @param threads the number of threads building chunks
+   */
+  public DataGenerator(long seed, long orders, int users, int games, int threads) {
+    if (users < 1 || games < 5 || orders < 0)
+      throw new IllegalArgumentException("Needs at least 1 user and 5 games");
+    this._seed = seed;
+    this._orders = orders;
+    this._users = users;
+    this._games = games;
+    this._threads = Math.max(1, threads);
+    this._userRanks = new Zipf(users, 0.8);
+    this._gameRanks = new Zipf(games, 1.0);
+    this._genreRanks = new Zipf(GENRES.length, 1.0);
+    this._userStride = stride(users);
+    this._gameStride = stride(games);
+  } //end DataGenerator
+
+  /**
+   * Creates a generator for a number of orders, with the users, games,
+   * seed and threads from gamerental.gen.* or scaled to the orders.
+   */
+  public static DataGenerator fromSystemProperties(long orders) {
+    int users = Integer.getInteger("gamerental.gen.users", (int) Math.min(Integer.MAX_VALUE, Math.max(500, orders / 6)));
+    int games = Integer.getInteger("gamerental.gen.games", (int) Math.max(500, Math.min(100000, orders / 5000)));
+    return new DataGenerator(
+      Long.getLong("gamerental.gen.seed", 166),
+      orders, users, games,
+      Integer.getInteger("gamerental.gen.threads", Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Writes the five CSV files into a directory.
+   */
+  public void writeCsv(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    OutputStream[] sinks = new OutputStream[BulkLoader.TABLES.length];
+    try {
+      for (int i = 0; i < sinks.length; ++i)
+        sinks[i] = new BufferedOutputStream(Files.newOutputStream(dir.resolve(BulkLoader.TABLES[i][1])), 1 << 16);
+      generate(sinks);
+    } finally {
+      // closing twice is harmless, this covers a failed generation.
+      for (OutputStream sink: sinks)
+        if (sink != null)
+          sink.close();
+    } //end try
+  } //end writeCsv
+
+  /**
+   * Returns a bulk load source whose tables are generated on the fly.
+   * Generation starts right away on a background thread and waits for
+   * the tables to be read.  The tables may be read at the same time or
+   * one after the other; rows of a table that is not open yet wait in a
+   * temporary file.
+   */
+  public BulkLoader.Source source() {
+    ChunkStream[] streams = new ChunkStream[BulkLoader.TABLES.length];
+    OutputStream[] sinks = new OutputStream[streams.length];
+    for (int i = 0; i < streams.length; ++i) {
+      streams[i] = new ChunkStream();
+      sinks[i] = streams[i].sink();
+    } //end for
+    Thread producer = new Thread(() -> {
+      try {
+        generate(sinks);
+      } catch (Throwable e) {
+        IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+        for (ChunkStream stream: streams)
+          stream.fail(failure);
+      } //end try
+    }, "data-generator");
+    producer.setDaemon(true);
+    producer.start();
+    return (table, file) -> {
+      for (int i = 0; i < BulkLoader.TABLES.length; ++i)
+        if (BulkLoader.TABLES[i][0].equals(table))
+          return streams[i].open();
+      throw new IOException("No generated rows for " + table);
+    };
+  } //end source
+
+  // writes every table, one after the other, each built in parallel chunks.
+  // A table's output is closed as soon as it is complete.
+  private void generate(OutputStream[] sinks) throws IOException {
+    for (int i = 0; i < sinks.length; ++i)
+      sinks[i].write(HEADERS[i].getBytes(StandardCharsets.US_ASCII));
+    ExecutorService executor = Executors.newFixedThreadPool(this._threads, r -> {
+      Thread t = new Thread(r, "data-generator-chunk");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      run(executor, this._users, this::users, sinks[USERS]);
+      sinks[USERS].close();
+      run(executor, this._games, this::catalog, sinks[CATALOG]);
+      sinks[CATALOG].close();
+      run(executor, this._orders, this::orders, sinks[RENTAL_ORDER], sinks[TRACKING_INFO], sinks[GAMES_IN_ORDER]);
+      sinks[RENTAL_ORDER].close();
+      sinks[TRACKING_INFO].close();
+      sinks[GAMES_IN_ORDER].close();
+    } finally {
+      executor.shutdownNow();
+    } //end try
+  } //end generate
+
+  // builds the chunks of rows [0, rows) in parallel and writes them in order.
+  private void run(ExecutorService executor, long rows, Chunk chunk, OutputStream... sinks) throws IOException {
+    long chunks = (rows + CHUNK - 1) / CHUNK;
+    ArrayDeque < Future < byte[][] >> window = new ArrayDeque < Future < byte[][] >> ();
+    long next = 0;
+    while (next < chunks || !window.isEmpty()) {
+      // keeps at most two chunks per thread in memory.
+      while (next < chunks && window.size() < 2 * this._threads) {
+        long c = next++;
+        window.add(executor.submit(() -> chunk.build(c, c * CHUNK, Math.min(rows, (c + 1) * CHUNK))));
+      } //end while
+      byte[][] built;
+      try {
+        built = window.poll().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while generating rows");
+      } catch (ExecutionException e) {
+        throw new IOException("Data generation failed", e.getCause());
+      } //end try
+      for (int i = 0; i < sinks.length; ++i)
+        sinks[i].write(built[i]);
+    } //end while
+  } //end run
+
+  private byte[][] users(long chunk, long first, long last) {
+    SplittableRandom rng = random(USERS, chunk);
+    StringBuilder sb = new StringBuilder((int) (last - first) * 110);
+    for (long u = first; u < last; ++u) {
+      int user = (int) u;
+      sb.append('"').append(login(user)).append("\",\"");
+      for (int i = 0; i < 9; ++i)
+        sb.append(PASSWORD_CHARS[rng.nextInt(PASSWORD_CHARS.length)]);
+      sb.append("\",\"").append(user % 100 == 0 ? "manager" : user % 100 < 4 ? "employee" : "customer").append("\",\"");
+      int favorites = rng.nextInt(4);
+      int previous = -1;
+      for (int i = 0; i < favorites; ++i) {
+        int game = game(rng);
+        if (game == previous)
+          continue;
+        if (previous >= 0)
+          sb.append(',');
+        gameName(sb, game);
+        previous = game;
+      } //end for
+      sb.append("\",\"+1-").append(200 + rng.nextInt(800)).append('-');
+      pad(sb, rng.nextInt(1000), 3).append('-');
+      pad(sb, rng.nextInt(10000), 4).append("\",");
+      sb.append(rng.nextInt(20) == 0 ? 1 + rng.nextInt(3) : 0).append('\n');
+    } //end for
+    return new byte[][] { ascii(sb) };
+  } //end users
+
+  private byte[][] catalog(long chunk, long first, long last) {
+    StringBuilder sb = new StringBuilder((int) (last - first) * 100);
+    for (long g = first; g < last; ++g) {
+      int game = (int) g;
+      SplittableRandom rng = random(CATALOG, game);
+      gameId(sb.append('"'), game).append("\",\"");
+      gameName(sb, game).append("\",\"");
+      sb.append(GENRES[this._genreRanks.sample(rng) - 1]).append("\",");
+      cents(sb, priceCents(game)).append(",\"Platform: ");
+      sb.append(PLATFORMS[rng.nextInt(PLATFORMS.length)]).append(";  Publisher: ");
+      sb.append(PUBLISHERS[rng.nextInt(PUBLISHERS.length)]).append("\",\"\"\n");
+    } //end for
+    return new byte[][] { ascii(sb) };
+  } //end catalog
+
+  private byte[][] orders(long chunk, long first, long last) {
+    SplittableRandom rng = random(RENTAL_ORDER, chunk);
+    int n = (int) (last - first);
+    StringBuilder orders = new StringBuilder(n * 100);
+    StringBuilder tracking = new StringBuilder(n * 130);
+    StringBuilder lines = new StringBuilder(n * 100);
+    long spacing = Math.max(1, (LAST_ORDER - FIRST_ORDER) / Math.max(1, this._orders));
+    int[] games = new int[5];
+    for (long o = first; o < last; ++o) {
+      long id = FIRST_ID + o;
+      String login = login(user(rng));
+      long timestamp = FIRST_ORDER + o * (LAST_ORDER - FIRST_ORDER) / Math.max(1, this._orders) + rng.nextLong(spacing);
+
+      // 1 to 5 distinct games, most orders have one or two.
+      int count = 1;
+      while (count < games.length && rng.nextInt(100) < 35)
+        ++count;
+      for (int i = 0; i < count; ++i) {
+        int game;
+        boolean duplicate;
+        do {
+          game = game(rng);
+          duplicate = false;
+          for (int j = 0; j < i; ++j)
+            duplicate |= games[j] == game;
+        } while (duplicate);
+        games[i] = game;
+      } //end for
+
+      int units = 0;
+      long total = 0;
+      for (int i = 0; i < count; ++i) {
+        int unitsOrdered = rng.nextInt(10) < 6 ? 1 : 1 + rng.nextInt(5);
+        units += unitsOrdered;
+        total += priceCents(games[i]) * unitsOrdered;
+        lines.append("\"gamerentalorder").append(id).append("\",\"");
+        gameId(lines, games[i]).append("\",").append(unitsOrdered).append('\n');
+      } //end for
+
+      orders.append("\"gamerentalorder").append(id).append("\",\"").append(login).append("\",")
+        .append(units).append(',');
+      cents(orders, total).append(",\"");
+      timestamp(orders, timestamp, true).append("\",\"");
+      timestamp(orders, timestamp + 30 * DAY, false).append("\"\n");
+
+      tracking.append("\"trackingid").append(id).append("\",\"gamerentalorder").append(id).append("\",\"")
+        .append(STATUSES[rng.nextInt(STATUSES.length)]).append("\",\"")
+        .append(CITIES[rng.nextInt(CITIES.length)]).append("\",\"")
+        .append(COURIERS[rng.nextInt(COURIERS.length)]).append("\",\"");
+      timestamp(tracking, timestamp + 2 * DAY, true).append("\",\"\"\n");
+    } //end for
+    return new byte[][] { ascii(orders), ascii(tracking), ascii(lines) };
+  } //end orders
+
+  // a user drawn by popularity.  Ranks are scattered over the users so heavy users are not all alike.
+  private int user(SplittableRandom rng) {
+    return (int) ((this._userRanks.sample(rng) - 1) * this._userStride % this._users);
+  }
+
+  // a game drawn by popularity.
+  private int game(SplittableRandom rng) {
+    return (int) ((this._gameRanks.sample(rng) - 1) * this._gameStride % this._games);
+  }
+
+  // unique by construction: the index is part of the login.
+  private String login(int user) {
+    long h = mix(this._seed ^ 0x5bd1e995L * (user + 1));
+    return FIRST_NAMES[(int) Long.remainderUnsigned(h, FIRST_NAMES.length)]
+      + LAST_NAMES[(int) Long.remainderUnsigned(h >>> 20, LAST_NAMES.length)] + user;
+  }
+
+  private long priceCents(int game) {
+    return 999 + 500 * Long.remainderUnsigned(mix(this._seed ^ 0x9e3779b9L * (game + 1)), 13);
+  }
+
+  private static StringBuilder gameId(StringBuilder sb, int game) {
+    return pad(sb.append("game"), game + 1, 4);
+  }
+
+  // unique by construction: every word pair gets a sequel number once all pairs are used.
+  private static StringBuilder gameName(StringBuilder sb, int game) {
+    int pairs = TITLE_WORDS.length * TITLE_NOUNS.length;
+    sb.append(TITLE_WORDS[game % TITLE_WORDS.length]).append(' ')
+      .append(TITLE_NOUNS[(game / TITLE_WORDS.length) % TITLE_NOUNS.length]);
+    if (game >= pairs)
+      sb.append(' ').append(game / pairs + 1);
+    return sb;
+  }
+
+  private static StringBuilder cents(StringBuilder sb, long cents) {
+    return pad(sb.append(cents / 100).append('.'), (int) (cents % 100), 2);
+  }
+
+  private static StringBuilder timestamp(StringBuilder sb, long epochSecond, boolean withTime) {
+    LocalDateTime t = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    pad(sb, t.getYear(), 4).append('-');
+    pad(sb, t.getMonthValue(), 2).append('-');
+    pad(sb, t.getDayOfMonth(), 2);
+    if (withTime) {
+      pad(sb.append(' '), t.getHour(), 2).append(':');
+      pad(sb, t.getMinute(), 2).append(':');
+      pad(sb, t.getSecond(), 2);
+    } //end if
+    return sb;
+  }
+
+  private static StringBuilder pad(StringBuilder sb, int value, int digits) {
+    for (int limit = 10; --digits > 0; limit *= 10)
+      if (value < limit)
+        sb.append('0');
+    return sb.append(value);
+  }
+
+  private static byte[] ascii(StringBuilder sb) {
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  // the random stream of one chunk of one table.
+  private SplittableRandom random(int table, long chunk) {
+    return new SplittableRandom(mix(mix(this._seed + table) + chunk));
+  }
+
+  // the SplitMix64 finalizer.
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  // a step coprime to n, so rank * step mod n visits every index once.
+  static long stride(int n) {
+    long step = (long) (n * 0.6180339887) | 1;
+    while (gcd(step, n) != 1)
+      step += 2;
+    return step;
+  }
+
+  private static long gcd(long a, long b) {
+    while (b != 0) {
+      long t = a % b;
+      a = b;
+      b = t;
+    } //end while
+    return a;
+  }
+
+  /**
+   * Generates a data set
+   *
+   * @param args <orders> <output directory> | <orders> --load <dbname> <port> <user>
+   */
+  public static void main(String[] args) {
+    if (!(args.length == 2 && !args[1].equals("--load")) && !(args.length == 5 && args[1].equals("--load"))) {
+      System.err.println(
+        "Usage: " +
+        "java [-classpath <classpath>] " +
+        DataGenerator.class.getName() +
+        " <orders> (<output directory> | --load <dbname> <port> <user>)");
+      return;
+    } //end if
+    try {
+      DataGenerator generator = fromSystemProperties(Long.parseLong(args[0]));
+      System.out.println("| Generating " + generator._orders + " orders, " + generator._users + " users, "
+        + generator._games + " games with seed " + generator._seed);
+      long start = System.nanoTime();
+      if (args.length == 2) {
+        generator.writeCsv(Paths.get(args[1]));
+        System.out.printf("| wrote %s in %.2f s%n", args[1], BulkLoader.seconds(System.nanoTime() - start));
+      } else {
+        Class.forName("org.postgresql.Driver");
+        String url = "jdbc:postgresql://localhost:" + args[3] + "/" + args[2];
+        new BulkLoader(url, args[4], "").load(generator.source()).print(System.out);
+      } //end if
+    } catch (Exception e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } //end try
+  } //end main
+
+} //end DataGenerator
@@ -0,0 +1,24 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * One row of the GamesInOrder table.
+ *
+ */
+public record GameInOrder(String rentalOrderID, String gameID, int unitsOrdered) {
+
+  // SELECT list read by MAPPER.
+  public static final String COLUMNS = "rentalOrderID, gameID, unitsOrdered";
+
+  public static final RowMapper < GameInOrder > MAPPER = rs -> new GameInOrder(
+    rs.getString(1), rs.getString(2), rs.getInt(3));
+}
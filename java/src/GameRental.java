@@ -14,17 +14,23 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.lang.Math;
 import java.sql.Timestamp;
+import java.math.BigDecimal;
 import java.util.Date;
 import java.util.Calendar;
 
@@ -35,13 +41,74 @@ import java.util.Calendar;
  */
 public class GameRental {
 
-  // reference to physical database connection.
-  private Connection _connection = null;
+  // pool of physical database connections shared by every caller.
+  private ConnectionPool _pool = null;
 
-  // handling the keyboard inputs through a BufferedReader
-  // This variable can be global for convenience.
-  static BufferedReader in = new BufferedReader(
-    new InputStreamReader(System.in));
+  // allocators for new rentalOrderIDs and trackingIDs.
+  private IdAllocator _orderIds = null;
+  private IdAllocator _trackingIds = null;
+
+  // writes new rental orders.
+  private OrderPlacement _orderPlacement = null;
+
+  // copies in stock, reserved in memory by placeOrder.
+  private Inventory _inventory = null;
+
+  // in-memory copy of the Catalog table used for browsing.
+  private CatalogCache _catalog = null;
+
+  // trigram index of game names and descriptions, for searching by name.
+  private GameSearchIndex _searchIndex = null;
+
+  // the favorite games of every user, as bitsets.
+  private UserFavorites _favorites = null;
+
+  // games rented together, for "customers who rented this also rented".
+  private CoRentals _coRentals = null;
+
+  // recently used Users rows, for logging in.
+  private CredentialCache _credentials = null;
+
+  // hashes and checks user passwords.
+  private PasswordHasher _passwords = null;
+
+  // latest orders and totals of recently active customers.
+  private OrderHistory _orderHistory = null;
+
+  // orders recently opened with viewOrderInfo.
+  private OrderDetailCache _orderDetails = null;
+
+  // journals tracking updates and writes them to TrackingInfo in batches.
+  private TrackingWriter _trackingWriter = null;
+
+  // latency, rows and errors of the database calls, per menu operation.
+  private final QueryMetrics _metrics = new QueryMetrics();
+
+  // sends the reads of read-only menu operations to the replicas, if any.
+  private ReplicaRouter _replicas = null;
+
+  // logs calls slower than gamerental.slowQuery.thresholdMillis, null when turned off.
+  private SlowQueryLog _slowQueries = null;
+
+  // rows fetched per round trip by executeQueryForEach.
+  private int _fetchSize = 256;
+
+  // orders or games shown per page of a listing.
+  private int _pageSize = 20;
+
+  // handling the keyboard inputs through the terminal of the current session.
+  // This is the console unless a server session bound its own terminal.
+  static BufferedReader in() {
+    return Terminal.current().in();
+  }
+
+  static PrintStream out() {
+    return Terminal.current().out();
+  }
+
+  static PrintStream err() {
+    return Terminal.current().err();
+  }
 
   /**
    * Creates a new instance of GameRental store
@@ -53,34 +120,76 @@ public class GameRental {
    * @throws java.sql.SQLException when failed to make a connection.
    */
   public GameRental(String dbname, String dbport, String user, String passwd) throws SQLException {
-    System.out.println("=======================================================");
-    System.out.println("|                           o                         |");
-    System.out.println("|                           o                         |");
-    System.out.println("|                           o                         |");
-    System.out.println("|                 Connecting to database              |");
-    System.out.println("|                           o                         |");
-    System.out.println("|                           o                         |");
-    System.out.println("|                           o                         |");
+    out().println("=======================================================");
+    out().println("|                           o                         |");
+    out().println("|                           o                         |");
+    out().println("|                           o                         |");
+    out().println("|                 Connecting to database              |");
+    out().println("|                           o                         |");
+    out().println("|                           o                         |");
+    out().println("|                           o                         |");
 
     try {
       // constructs the connection URL
       String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-      //System.out.println ("Connection URL: " + url + "\n");
-
-      // obtain a physical connection
-      this._connection = DriverManager.getConnection(url, user, passwd);
-      // System.out.println("|                o               |");
-      System.out.println("|            Database Connection Successful!          |");
-      System.out.println("|                    Loading Main Menu                |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("=======================================================");
-      System.out.println("|                       Main Menu                     |");
-      System.out.println("=======================================================");
+      //out().println ("Connection URL: " + url + "\n");
+
+      // obtain the pool of physical connections
+      this._pool = ConnectionPool.fromSystemProperties(url, user, passwd);
+      this._replicas = ReplicaRouter.fromSystemProperties(this._pool, dbname, user, passwd);
+      this._fetchSize = Integer.getInteger("gamerental.fetchSize", 256);
+      this._pageSize = Math.max(1, Integer.getInteger("gamerental.pageSize", 20));
+      this._orderIds = new IdAllocator(this._pool, "rentalorder_id_seq", "gamerentalorder");
+      this._trackingIds = new IdAllocator(this._pool, "trackinginfo_id_seq", "trackingid");
+      this._orderPlacement = new OrderPlacement(this);
+      this._inventory = new Inventory(this, Integer.getInteger("gamerental.inventory.blockSize", 8),
+        Long.getLong("gamerental.inventory.leaseMillis", 60000L));
+      this._catalog = new CatalogCache(this, Long.getLong("gamerental.catalog.ttlMillis", 300000L));
+      this._searchIndex = new GameSearchIndex(this,
+        Double.parseDouble(System.getProperty("gamerental.search.minMatch", "0.5")),
+        Integer.getInteger("gamerental.search.maxMatches", 10000),
+        Long.getLong("gamerental.search.ttlMillis", 300000L));
+      this._credentials = new CredentialCache(this,
+        Integer.getInteger("gamerental.credentials.maxSize", 10000),
+        Long.getLong("gamerental.credentials.ttlMillis", 60000L));
+      this._favorites = new UserFavorites(this, Long.getLong("gamerental.favorites.ttlMillis", 300000L));
+      this._coRentals = new CoRentals(this,
+        Math.max(1, Integer.getInteger("gamerental.recommend.topK", 5)),
+        Integer.getInteger("gamerental.recommend.threads", Runtime.getRuntime().availableProcessors()));
+      // built in the background, menus show no recommendations until it is done.
+      this._coRentals.start();
+      this._passwords = new PasswordHasher(Integer.getInteger("gamerental.password.iterations", 600000));
+      this._orderHistory = new OrderHistory(this,
+        Integer.getInteger("gamerental.history.recentOrders", 10),
+        Integer.getInteger("gamerental.history.maxUsers", 10000),
+        Long.getLong("gamerental.history.ttlMillis", 300000L));
+      this._orderDetails = new OrderDetailCache(this,
+        Integer.getInteger("gamerental.orderDetail.maxSize", 1000),
+        Long.getLong("gamerental.orderDetail.ttlMillis", 10000L));
+      this._trackingWriter = new TrackingWriter(this,
+        Paths.get(System.getProperty("gamerental.tracking.journal", "tracking.journal")),
+        Long.getLong("gamerental.tracking.flushIntervalMillis", 200L),
+        Integer.getInteger("gamerental.tracking.batchSize", TrackingWriter.MAX_ROWS),
+        Boolean.parseBoolean(System.getProperty("gamerental.tracking.syncJournal", "true")));
+      this._metrics.registerMBean();
+      this._slowQueries = SlowQueryLog.fromSystemProperties(url, user, passwd);
+      int metricsPort = Integer.getInteger("gamerental.metrics.port", -1);
+      if (metricsPort >= 0) {
+        metricsPort = this._metrics.serve(System.getProperty("gamerental.metrics.bind", "127.0.0.1"), metricsPort);
+        out().println("|      Query metrics at http://localhost:" + metricsPort + "/metrics");
+      } //end if
+      // out().println("|                o               |");
+      out().println("|            Database Connection Successful!          |");
+      out().println("|                    Loading Main Menu                |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("=======================================================");
+      out().println("|                       Main Menu                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
-      System.out.println("Make sure you started postgres on this machine");
+      err().println("Error - Unable to Connect to Database: " + e.getMessage());
+      out().println("Make sure you started postgres on this machine");
       System.exit(-1);
     } //end catch
   } //end GameRental
@@ -90,17 +199,24 @@ public class GameRental {
    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
    *
    * @param sql the input SQL string
+   * @param params the values bound to the statement placeholders
+   * @return the number of rows affected
    * @throws java.sql.SQLException when update failed
    */
-  public void executeUpdate(String sql) throws SQLException {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement();
-
-    // issues the update instruction
-    stmt.executeUpdate(sql);
-
-    // close the instruction
-    stmt.close();
+  public int executeUpdate(String sql, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    PooledConnection conn = this._pool.borrow();
+    try {
+      // issues the update instruction
+      int updated = conn.prepare(sql, params).executeUpdate();
+      rows = updated;
+      this._replicas.wrote(conn);
+      return updated;
+    } finally {
+      this._pool.release(conn);
+      observe(start, rows, sql, params);
+    } //end try
   } //end executeUpdate
 
   /**
@@ -109,134 +225,392 @@ public class GameRental {
    * standard out.
    *
    * @param query the input query string
+   * @param params the values bound to the query placeholders
    * @return the number of rows returned
    * @throws java.sql.SQLException when failed to execute the query
    */
-  public int executeQueryAndPrintResult(String query) throws SQLException {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery(query);
-
-    /*
-     ** obtains the metadata object for the returned result set.  The metadata
-     ** contains row and column info.
-     */
-    ResultSetMetaData rsmd = rs.getMetaData();
-    int numCol = rsmd.getColumnCount();
-    int rowCount = 0;
-
+  public int executeQueryAndPrintResult(String query, Object... params) throws SQLException {
+    final boolean[] outputHeader = { true };
     // iterates through the result set and output them to standard out.
-    boolean outputHeader = true;
-    while (rs.next()) {
-      if (outputHeader) {
+    return executeQueryForEach(query, rs -> {
+      /*
+       ** obtains the metadata object for the returned result set.  The metadata
+       ** contains row and column info.
+       */
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int numCol = rsmd.getColumnCount();
+      if (outputHeader[0]) {
         for (int i = 1; i <= numCol; i++) {
-          System.out.print(rsmd.getColumnName(i) + "\t");
+          out().print(rsmd.getColumnName(i) + "\t");
         }
-        System.out.println();
-        outputHeader = false;
+        out().println();
+        outputHeader[0] = false;
       }
       for (int i = 1; i <= numCol; ++i)
-        System.out.print(rs.getString(i) + "\t");
-      System.out.println();
-      ++rowCount;
-    } //end while
-    stmt.close();
-    return rowCount;
+        out().print(rs.getString(i) + "\t");
+      out().println();
+    }, params);
   } //end executeQuery
 
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT) and
+   * stream its rows to a handler.  The query runs in a transaction so the
+   * driver fetches rows through a cursor, fetchSize at a time, and memory
+   * use does not grow with the size of the result.
+   *
+   * @param query the input query string
+   * @param handler receives every row, in order
+   * @param params the values bound to the query placeholders
+   * @return the number of rows returned
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public int executeQueryForEach(String query, RowHandler handler, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    // read-only menu operations may read from a replica
+    ConnectionPool pool = this._replicas.route();
+    PooledConnection conn = pool.borrow();
+    try {
+      // the driver only uses a cursor outside of auto-commit mode
+      conn.getConnection().setAutoCommit(false);
+      PreparedStatement stmt = conn.prepare(query, params);
+      stmt.setFetchSize(this._fetchSize);
+
+      // issues the query instruction
+      ResultSet rs = stmt.executeQuery();
+      int rowCount = 0;
+      try {
+        while (rs.next()) {
+          handler.handle(rs);
+          ++rowCount;
+        } //end while
+      } finally {
+        rs.close();
+      } //end try
+      conn.getConnection().commit();
+      rows = rowCount;
+      return rowCount;
+    } finally {
+      pool.release(conn);
+      observe(start, rows, query, params);
+    } //end try
+  } //end executeQueryForEach
+
   /**
    * Method to execute an input query SQL instruction (i.e. SELECT).  This
    * method issues the query to the DBMS and returns the results as
    * a list of records. Each record in turn is a list of attribute values
    *
    * @param query the input query string
+   * @param params the values bound to the query placeholders
    * @return the query result as a list of records
    * @throws java.sql.SQLException when failed to execute the query
    */
-  public List < List < String >> executeQueryAndReturnResult(String query) throws SQLException {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery(query);
-
-    /*
-     ** obtains the metadata object for the returned result set.  The metadata
-     ** contains row and column info.
-     */
-    ResultSetMetaData rsmd = rs.getMetaData();
-    int numCol = rsmd.getColumnCount();
-    int rowCount = 0;
-
-    // iterates through the result set and saves the data returned by the query.
-    boolean outputHeader = false;
-    List < List < String >> result = new ArrayList < List < String >> ();
-    while (rs.next()) {
-      List < String > record = new ArrayList < String > ();
-      for (int i = 1; i <= numCol; ++i)
-        record.add(rs.getString(i));
-      result.add(record);
-    } //end while
-    stmt.close();
-    return result;
+  public List < List < String >> executeQueryAndReturnResult(String query, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    ConnectionPool pool = this._replicas.route();
+    PooledConnection conn = pool.borrow();
+    try {
+      // issues the query instruction
+      ResultSet rs = conn.prepare(query, params).executeQuery();
+
+      /*
+       ** obtains the metadata object for the returned result set.  The metadata
+       ** contains row and column info.
+       */
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int numCol = rsmd.getColumnCount();
+
+      // iterates through the result set and saves the data returned by the query.
+      List < List < String >> result = new ArrayList < List < String >> ();
+      while (rs.next()) {
+        List < String > record = new ArrayList < String > (numCol);
+        for (int i = 1; i <= numCol; ++i)
+          record.add(rs.getString(i));
+        result.add(record);
+      } //end while
+      rs.close();
+      rows = result.size();
+      return result;
+    } finally {
+      pool.release(conn);
+      observe(start, rows, query, params);
+    } //end try
   } //end executeQueryAndReturnResult
 
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT).  This
+   * method issues the query to the DBMS and returns the results as a list
+   * of typed records built by a row mapper.
+   *
+   * @param query the input query string
+   * @param mapper builds one record from each row
+   * @param params the values bound to the query placeholders
+   * @return the query result as a list of records
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public < T > List < T > executeQueryAndMap(String query, RowMapper < T > mapper, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    ConnectionPool pool = this._replicas.route();
+    PooledConnection conn = pool.borrow();
+    try {
+      // issues the query instruction
+      ResultSet rs = conn.prepare(query, params).executeQuery();
+      List < T > result = new ArrayList < T > ();
+      while (rs.next())
+        result.add(mapper.map(rs));
+      rs.close();
+      rows = result.size();
+      return result;
+    } finally {
+      pool.release(conn);
+      observe(start, rows, query, params);
+    } //end try
+  } //end executeQueryAndMap
+
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT) that
+   * returns at most one row of interest, mapped to a typed record.
+   *
+   * @param query the input query string
+   * @param mapper builds the record from the first row
+   * @param params the values bound to the query placeholders
+   * @return the first row as a record, or null if there is none
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public < T > T executeQueryForObject(String query, RowMapper < T > mapper, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    ConnectionPool pool = this._replicas.route();
+    PooledConnection conn = pool.borrow();
+    try {
+      // issues the query instruction
+      ResultSet rs = conn.prepare(query, params).executeQuery();
+      T result = rs.next() ? mapper.map(rs) : null;
+      rs.close();
+      rows = result == null ? 0 : 1;
+      return result;
+    } finally {
+      pool.release(conn);
+      observe(start, rows, query, params);
+    } //end try
+  } //end executeQueryForObject
+
   /**
    * Method to execute an input query SQL instruction (i.e. SELECT).  This
    * method issues the query to the DBMS and returns the number of results
    *
    * @param query the input query string
+   * @param params the values bound to the query placeholders
    * @return the number of rows returned
    * @throws java.sql.SQLException when failed to execute the query
    */
-  public int executeQuery(String query) throws SQLException {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery(query);
+  public int executeQuery(String query, Object... params) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    ConnectionPool pool = this._replicas.route();
+    PooledConnection conn = pool.borrow();
+    try {
+      // issues the query instruction
+      ResultSet rs = conn.prepare(query, params).executeQuery();
 
-    int rowCount = 0;
+      int rowCount = 0;
 
-    // iterates through the result set and count nuber of results.
-    while (rs.next()) {
-      rowCount++;
-    } //end while
-    stmt.close();
-    return rowCount;
+      // iterates through the result set and count nuber of results.
+      while (rs.next()) {
+        rowCount++;
+      } //end while
+      rs.close();
+      rows = rowCount;
+      return rowCount;
+    } finally {
+      pool.release(conn);
+      observe(start, rows, query, params);
+    } //end try
   }
 
+  /**
+   * Method to run several statements as one transaction on a single
+   * connection.  The transaction commits when the work returns and rolls
+   * back when it throws.
+   *
+   * @param work the statements to run
+   * @return the value returned by the work
+   * @throws java.sql.SQLException when the work or the commit failed
+   */
+  public < T > T executeTransaction(Transaction < T > work) throws SQLException {
+    long start = System.nanoTime();
+    long rows = -1;
+    PooledConnection conn = this._pool.borrow();
+    try {
+      conn.getConnection().setAutoCommit(false);
+      T result = work.run(conn);
+      conn.getConnection().commit();
+      this._replicas.wrote(conn);
+      // a transaction counts as one call, with the rows its work reports, if any
+      rows = result instanceof Number ? ((Number) result).longValue() : 0;
+      return result;
+    } catch (SQLException | RuntimeException e) {
+      try {
+        conn.getConnection().rollback();
+      } catch (SQLException ignored) {
+        // the connection is reset or dropped on release.
+      } //end try
+      throw e;
+    } finally {
+      this._pool.release(conn);
+      observe(start, rows, null, null);
+    } //end try
+  } //end executeTransaction
+
+  /**
+   * Records a finished database call in the query metrics and, when it was
+   * slow, in the slow-query log.
+   *
+   * @param startNanos System.nanoTime() when the call began
+   * @param rows the rows returned or changed, negative when the call failed
+   * @param sql the statement, null for a transaction
+   * @param params the values bound to the statement
+   */
+  void observe(long startNanos, long rows, String sql, Object[] params) {
+    this._metrics.record(startNanos, rows);
+    if (this._slowQueries != null)
+      this._slowQueries.check(startNanos, rows, sql, params);
+  } //end observe
+
   /**
    * Method to fetch the last value from sequence. This
    * method issues the query to the DBMS and returns the current
-   * value of sequence used for autogenerated keys
+   * value of sequence used for autogenerated keys.  The value is only
+   * defined if nextval was called on the same pooled connection.
    *
    * @param sequence name of the DB sequence
    * @return current value of a sequence
    * @throws java.sql.SQLException when failed to execute the query
    */
   public int getCurrSeqVal(String sequence) throws SQLException {
-    Statement stmt = this._connection.createStatement();
+    PooledConnection conn = this._pool.borrow();
+    try {
+      ResultSet rs = conn.prepare("SELECT currval(?)", sequence).executeQuery();
+      int value = -1;
+      if (rs.next())
+        value = rs.getInt(1);
+      rs.close();
+      return value;
+    } finally {
+      this._pool.release(conn);
+    } //end try
+  }
+
+  /**
+   * Returns the pool the JDBC helpers borrow their connections from.
+   */
+  public ConnectionPool getPool() {
+    return this._pool;
+  }
+
+  /**
+   * Returns the allocator for new rentalOrderIDs.
+   */
+  public IdAllocator getOrderIds() {
+    return this._orderIds;
+  }
+
+  /**
+   * Returns the allocator for new trackingIDs.
+   */
+  public IdAllocator getTrackingIds() {
+    return this._trackingIds;
+  }
+
+  /**
+   * Returns the engine that places rental orders.
+   */
+  public OrderPlacement getOrderPlacement() {
+    return this._orderPlacement;
+  }
+
+  /**
+   * Returns the copies in stock of every game.
+   */
+  public Inventory getInventory() {
+    return this._inventory;
+  }
+
+  /**
+   * Returns the in-memory copy of the catalog.
+   */
+  public CatalogCache getCatalog() {
+    return this._catalog;
+  }
+
+  public GameSearchIndex getSearchIndex() {
+    return this._searchIndex;
+  }
+
+  public UserFavorites getFavorites() {
+    return this._favorites;
+  }
 
-    ResultSet rs = stmt.executeQuery(String.format("Select currval('%s')", sequence));
-    if (rs.next())
-      return rs.getInt(1);
-    return -1;
+  public CoRentals getCoRentals() {
+    return this._coRentals;
+  }
+
+  public CredentialCache getCredentials() {
+    return this._credentials;
+  }
+
+  public PasswordHasher getPasswords() {
+    return this._passwords;
+  }
+
+  public OrderHistory getOrderHistory() {
+    return this._orderHistory;
+  }
+
+  public OrderDetailCache getOrderDetails() {
+    return this._orderDetails;
+  }
+
+  public TrackingWriter getTrackingWriter() {
+    return this._trackingWriter;
+  }
+
+  public ReplicaRouter getReplicas() {
+    return this._replicas;
+  }
+
+  public QueryMetrics getMetrics() {
+    return this._metrics;
+  }
+
+  public int getPageSize() {
+    return this._pageSize;
   }
 
   /**
-   * Method to close the physical connection if it is open.
+   * Method to close the physical connections if they are open.
    */
   public void cleanup() {
-    try {
-      if (this._connection != null) {
-        this._connection.close();
-      } //end if
-    } catch (SQLException e) {
-      // ignored.
-    } //end try
+    // pending tracking updates need the pool, so they go first
+    if (this._trackingWriter != null) {
+      this._trackingWriter.close();
+    } //end if
+    if (this._inventory != null) {
+      this._inventory.close();
+    } //end if
+    this._metrics.close();
+    if (this._slowQueries != null) {
+      this._slowQueries.close();
+    } //end if
+    if (this._replicas != null) {
+      this._replicas.close();
+    } //end if
+    if (this._pool != null) {
+      this._pool.close();
+    } //end if
   } //end cleanup
 
   /**
@@ -245,12 +619,12 @@ public class GameRental {
    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
    */
   public static void main(String[] args) {
-    if (args.length != 3) {
-      System.err.println(
+    if (args.length != 3 && !(args.length == 5 && args[3].equals("--server"))) {
+      err().println(
         "Usage: " +
         "java [-classpath <classpath>] " +
         GameRental.class.getName() +
-        " <dbname> <port> <user>");
+        " <dbname> <port> <user> [--server <listen port>]");
       return;
     } //end if
 
@@ -266,105 +640,151 @@ public class GameRental {
       String user = args[2];
       esql = new GameRental(dbname, dbport, user, "");
 
+      if (args.length == 5) {
+        // serves every connected terminal from this process until killed
+        new GameRentalServer(esql, Integer.parseInt(args[4])).serve();
+      } else {
+        runSession(esql);
+      } //end if
+    } catch (Exception e) {
+      err().println(e.getMessage());
+    } finally {
+      // make sure to cleanup the created table and close the connection.
+      try {
+        if (esql != null) {
+          out().println("|-----------------------------------------------------|");
+          out().println("|-----------------------------------------------------|");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|              Disconnecting from database            |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          esql.cleanup();
+          out().println("|                          Bye!                       |");
+          out().println("|-----------------------------------------------------|");
+          out().println("|-----------------------------------------------------|");
+        } //end if
+      } catch (Exception e) {
+        // ignored.
+      } //end try
+    } //end try
+  } //end main
+
+  /**
+   * Runs the interactive menus for one user session on the current
+   * terminal, until the user exits or the terminal is closed.
+   *
+   * @param esql the database shared by every session
+   */
+  public static void runSession(GameRental esql) {
+    try {
       boolean keepon = true;
       while (keepon) {
         // These are sample SQL statements
-        System.out.println("=======================================================");
-        System.out.println("=======================================================");
-        System.out.println("|            Type 1 to create an account.             |");
-        System.out.println("|                                                     |");
-        System.out.println("|            Type 2 to login to account.              |");
-        System.out.println("|                                                     |");
-        System.out.println("|            Type 9 to exit the app.                  |");
-        System.out.println("=======================================================");
-        // System.out.println("1. Create an account!");
-        // System.out.println("2. Log in");
-        // System.out.println("9. < EXIT");
-        String authorisedUser = null;
+        out().println("=======================================================");
+        out().println("=======================================================");
+        out().println("|            Type 1 to create an account.             |");
+        out().println("|                                                     |");
+        out().println("|            Type 2 to login to account.              |");
+        out().println("|                                                     |");
+        out().println("|            Type 9 to exit the app.                  |");
+        out().println("=======================================================");
+        // out().println("1. Create an account!");
+        // out().println("2. Log in");
+        // out().println("9. < EXIT");
+        Session session = null;
         switch (readChoice()) {
         case 1:
           CreateUser(esql);
           break;
         case 2:
-          authorisedUser = LogIn(esql);
+          session = LogIn(esql);
           break;
         case 9:
           keepon = false;
           break;
         default:
-          System.out.println("|   Invalid selection! try again     |");
+          out().println("|   Invalid selection! try again     |");
           break;
         } //end switch
-        if (authorisedUser != null) {
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                    Successful Login!                |");
-          System.out.println("|                    Loading Homepage                 |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
+        if (session != null) {
+          String authorisedUser = session.getLogin();
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                    Successful Login!                |");
+          out().println("|                    Loading Homepage                 |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
           boolean usermenu = true;
           while (usermenu) {
-            System.out.println("|                           o                         |");
-            System.out.println("|                           o                         |");
-            System.out.println("|                           o                         |");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                        MY HOME                      |");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                                                     |");
-            System.out.println("|                                                     |");
-            System.out.println("|         1.         My Profile                       |");
-            System.out.println("|                                                     |");
-            System.out.println("|         2.      Update My Profile                   |");
-            System.out.println("|                                                     |");
-            System.out.println("|         3.        View Catalog                      |");
-            System.out.println("|                                                     |");
-            System.out.println("|         4.     Place Rental Order                   |");
-            System.out.println("|                                                     |");
-            System.out.println("|         5. View Full Rental Order History           |");
-            System.out.println("|                                                     |");
-            System.out.println("|         6. View Past 5 Rental Orders                |");
-            System.out.println("|                                                     |");
-            System.out.println("|         7. View Rental Order Information            |");
-            System.out.println("|                                                     |");
-            System.out.println("|         8. View Tracking Information                |");
-            System.out.println("|                                                     |");
-            System.out.println("|                                                     |");
+            out().println("|                           o                         |");
+            out().println("|                           o                         |");
+            out().println("|                           o                         |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|                        MY HOME                      |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|                                                     |");
+            out().println("|                                                     |");
+            out().println("|         1.         My Profile                       |");
+            out().println("|                                                     |");
+            out().println("|         2.      Update My Profile                   |");
+            out().println("|                                                     |");
+            out().println("|         3.        View Catalog                      |");
+            out().println("|                                                     |");
+            out().println("|         4.     Place Rental Order                   |");
+            out().println("|                                                     |");
+            out().println("|         5. View Full Rental Order History           |");
+            out().println("|                                                     |");
+            out().println("|         6. View Past 5 Rental Orders                |");
+            out().println("|                                                     |");
+            out().println("|         7. View Rental Order Information            |");
+            out().println("|                                                     |");
+            out().println("|         8. View Tracking Information                |");
+            out().println("|                                                     |");
+            out().println("|                                                     |");
 
             //the following functionalities basically used by employees & managers
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|              Employee and Managers Access*          |");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                                                     |");
-            System.out.println("|           9. Update Tracking Information            |");
-            System.out.println("|                                                     |");
-            System.out.println("|                                                     |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|              Employee and Managers Access*          |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|                                                     |");
+            out().println("|           9. Update Tracking Information            |");
+            out().println("|                                                     |");
+            out().println("|                                                     |");
 
             //the following functionalities basically used by managers
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                   Managers Access*                  |");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                                                     |");
-            System.out.println("|                  10. Update Catalog                 |");
-            System.out.println("|                  11. Update User                    |");
-            System.out.println("|                                                     |");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|-----------------------------------------------------|");
-            System.out.println("|                                                     |");
-            System.out.println("|                    20. Log out                      |");
-            System.out.println("|                                                     |");
-            System.out.println("|-----------------------------------------------------|");
-
-            switch (readChoice()) {
+            out().println("|-----------------------------------------------------|");
+            out().println("|                   Managers Access*                  |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|                                                     |");
+            out().println("|                  10. Update Catalog                 |");
+            out().println("|                  11. Update User                    |");
+            out().println("|                  12. Query Metrics                  |");
+            out().println("|                                                     |");
+            out().println("|-----------------------------------------------------|");
+            out().println("|-----------------------------------------------------|");
+            out().println("|                                                     |");
+            out().println("|                    20. Log out                      |");
+            out().println("|                                                     |");
+            out().println("|-----------------------------------------------------|");
+
+            int choice = readChoice();
+            // the role or login may have changed since the last action.
+            if (choice != 20 && !refreshSession(esql, session))
+              break;
+            switch (choice) {
             case 1:
 
-              viewProfile(esql, authorisedUser);
+              viewProfile(esql, session);
               break;
 
             case 2:
 
-              updateProfile(esql, authorisedUser);
+              updateProfile(esql, session);
               break;
 
             case 3:
@@ -399,17 +819,22 @@ public class GameRental {
 
             case 9:
 
-              updateTrackingInfo(esql, authorisedUser);
+              updateTrackingInfo(esql, session);
               break;
 
             case 10:
 
-              updateCatalog(esql, authorisedUser);
+              updateCatalog(esql, session);
               break;
 
             case 11:
 
-              updateUser(esql, authorisedUser);
+              updateUser(esql, session);
+              break;
+
+            case 12:
+
+              viewQueryMetrics(esql, session);
               break;
 
             case 20:
@@ -418,51 +843,43 @@ public class GameRental {
               break;
 
             default:
-              System.out.println("|    Invalid selection! try again   |");
+              out().println("|    Invalid selection! try again   |");
               break;
 
             }
           }
         }
       } //end while
-    } catch (Exception e) {
-      System.err.println(e.getMessage());
-    } finally {
-      // make sure to cleanup the created table and close the connection.
-      try {
-        if (esql != null) {
-          System.out.println("|-----------------------------------------------------|");
-          System.out.println("|-----------------------------------------------------|");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|              Disconnecting from database            |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          esql.cleanup();
-          System.out.println("|                          Bye!                       |");
-          System.out.println("|-----------------------------------------------------|");
-          System.out.println("|-----------------------------------------------------|");
-        } //end if
-      } catch (Exception e) {
-        // ignored.
-      } //end try
+    } catch (Terminal.ClosedException e) {
+      // the user went away, end the session.
     } //end try
-  } //end main
+  } //end runSession
+
+  // reads the role of a logged-in user again, false when the session has to end.
+  private static boolean refreshSession(GameRental esql, Session session) {
+    QueryMetrics.setOperation("session");
+    try {
+      if (session.refresh(esql.getCredentials()))
+        return true;
+      out().println("|   Your login no longer exists, please log in again  |");
+    } catch (SQLException e) {
+      err().println(e.getMessage());
+    } //end try
+    return false;
+  } //end refreshSession
 
   public static void Greeting() {
-    System.out.println("*******************************************************");
-    System.out.println("*******************************************************");
-    System.out.println("|                                                     |");
-    System.out.println("|                  Game Rental Store                  |");
-    System.out.println("|                                                     |");
-    System.out.println("*******************************************************");
-    System.out.println("|                                                     |");
-    System.out.println("|        Welcome to our Game Rental Store App         |");
-    System.out.println("|              By Alex Zhang and Peter Lu             |");
-    System.out.println("|                                                     |");
-    System.out.println("*******************************************************");
+    out().println("*******************************************************");
+    out().println("*******************************************************");
+    out().println("|                                                     |");
+    out().println("|                  Game Rental Store                  |");
+    out().println("|                                                     |");
+    out().println("*******************************************************");
+    out().println("|                                                     |");
+    out().println("|        Welcome to our Game Rental Store App         |");
+    out().println("|              By Alex Zhang and Peter Lu             |");
+    out().println("|                                                     |");
+    out().println("*******************************************************");
   } //end Greeting  
 
   /*
@@ -473,14 +890,22 @@ public class GameRental {
     int input;
     // returns only if a correct value is given.
     do {
-      System.out.println("|                           o                         |");
-      System.out.println("|               Please make your choice:              |");
-      System.out.println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|               Please make your choice:              |");
+      out().println("|                           o                         |");
+      String line;
+      try {
+        line = in().readLine();
+      } catch (IOException e) {
+        throw new Terminal.ClosedException("Input failed: " + e.getMessage());
+      } //end try
+      if (line == null)
+        throw new Terminal.ClosedException("Input closed");
       try { // read the integer, parse it and break. 
-        input = Integer.parseInt(in.readLine());
+        input = Integer.parseInt(line.trim());
         break;
       } catch (Exception e) {
-        System.out.println("|    Invalid selection! try again   |");
+        out().println("|    Invalid selection! try again   |");
         continue;
       } //end try
     } while (true);
@@ -491,325 +916,337 @@ public class GameRental {
    * Creates a new user
    */
   public static void CreateUser(GameRental esql) {
+    // the database calls of this action are timed under its name
+    QueryMetrics.setOperation("createUser");
     try {
-      System.out.println("*******************************************************");
-      System.out.println("=======================================================");
-      System.out.println("|                     Create User                     |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("|                                                     |");
-
-      System.out.print("|    Enter login name: ");
-      String login = in.readLine();
-      System.out.print("   |");
-      System.out.print("|    Enter password: ");
-      String password = in.readLine();
-      System.out.print("   |");
-
-      System.out.print("|    Enter phone number (just the 10 digits): ");
-      String phoneNum = in.readLine();
-      System.out.print("   |");
-
-      String query = "INSERT INTO Users(login, password, role, phoneNum) VALUES ('" + login + "', '" + password + "', 'customer', '" + phoneNum + "');";
-
-      esql.executeUpdate(query);
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                    Creating account                 |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                User created successfully!           |");
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      out().println("*******************************************************");
+      out().println("=======================================================");
+      out().println("|                     Create User                     |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("|                                                     |");
+
+      out().print("|    Enter login name: ");
+      String login = in().readLine();
+      out().print("   |");
+      out().print("|    Enter password: ");
+      String password = in().readLine();
+      out().print("   |");
+
+      out().print("|    Enter phone number (just the 10 digits): ");
+      String phoneNum = in().readLine();
+      out().print("   |");
+
+      String query = "INSERT INTO Users(login, password, role, phoneNum) VALUES (?, ?, 'customer', ?);";
+
+      esql.executeUpdate(query, login, esql.getPasswords().hash(password), phoneNum);
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                    Creating account                 |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                User created successfully!           |");
+      out().println("|                                                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println("Error: " + e.getMessage());
+      err().println("Error: " + e.getMessage());
     }
   }
 
   /*
    * Check log in credentials for an existing user
-   * @return User login or null is the user does not exist
+   * @return the session of the user or null is the user does not exist
    **/
-  public static String LogIn(GameRental esql) {
+  public static Session LogIn(GameRental esql) {
+    QueryMetrics.setOperation("login");
     try {
-      System.out.print("|   Enter login name: ");
-      String login = in.readLine();
-      System.out.println("   |");
-      System.out.print("|   Enter password: ");
-      String password = in.readLine();
-      System.out.println("   |");
-      System.out.print("|   Enter phone number (just the 10 digits): ");
-      String phoneNum = in.readLine();
-      System.out.println("   |");
-      String query = "SELECT * FROM Users WHERE login = '" + login + "' AND password =  '" + password + "' AND phoneNum = '" + phoneNum + "';";
-
-      int userExists = esql.executeQuery(query);
-      if (userExists > 0) {
-        return login;
+      out().print("|   Enter login name: ");
+      String login = in().readLine();
+      out().println("   |");
+      out().print("|   Enter password: ");
+      String password = in().readLine();
+      out().println("   |");
+      out().print("|   Enter phone number (just the 10 digits): ");
+      String phoneNum = in().readLine();
+      out().println("   |");
+      // one primary key lookup, or none when the user is cached
+      User user = esql.getCredentials().get(login);
+      boolean passwordMatches = esql.getPasswords().verify(password, user == null ? null : user.password());
+      if (passwordMatches && user.phoneNum().equals(phoneNum)) {
+        if (esql.getPasswords().needsRehash(user.password()))
+          upgradePassword(esql, user, password);
+        return new Session(user);
       } else {
-        System.out.println("User does not exist");
+        out().println("User does not exist");
         return null;
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
     return null;
   } //end
 
-  // Rest of the functions definition go in here
-
-  public static void viewProfile(GameRental esql, String authorisedUser) {
+  /*
+   * Replaces a plaintext or weaker stored password with a current hash,
+   * unless the password changed in the meantime.  A failure leaves the
+   * old value working, e.g. while Users.password is still too short.
+   */
+  static void upgradePassword(GameRental esql, User user, String password) {
     try {
-      String login = authorisedUser;
-      String query = "SELECT * FROM Users WHERE login = '" + login + "';";
-
-      // Execute the query and get the result
-      List < List < String >> result = esql.executeQueryAndReturnResult(query);
+      String query = "UPDATE Users SET password = ? WHERE login = ? AND password = ?;";
+      esql.executeUpdate(query, esql.getPasswords().hash(password), user.login(), user.password());
+    } catch (SQLException e) {
+      // keeps the old value.
+    } finally {
+      esql.getCredentials().invalidate(user.login());
+    } //end try
+  } //end upgradePassword
 
-      // Check if the result is empty
-      if (result.isEmpty()) {
-        System.out.println("No user found with login: " + login);
-        return;
-      }
+  // Rest of the functions definition go in here
 
-      // Assuming the Users table has columns in the order: login, password, role, favGames, phoneNum, numOverDueGames
-      List < String > user = result.get(0);
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                    Loading Profile                  |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("=======================================================");
-      System.out.println("|                       My Profile                    |");
-      System.out.println("=======================================================");
-      System.out.println("| Login: " + user.get(0));
-      System.out.println("| Password: " + user.get(1));
-      System.out.println("| Role: " + user.get(2));
-      System.out.println("| Favorite Games: " + user.get(3));
-      System.out.println("| Phone Number: " + user.get(4));
-      System.out.println("| Number of Overdue Games: " + user.get(5));
-      System.out.println("====================================");
-      System.out.println("| Press any key to return to the homepage...");
-      in.readLine(); // Wait for the user to press Enter or any key
+  public static void viewProfile(GameRental esql, Session session) {
+    QueryMetrics.setOperation("viewProfile");
+    try {
+      // the profile was read at login and after every edit
+      User user = session.getProfile();
+
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                    Loading Profile                  |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("=======================================================");
+      out().println("|                       My Profile                    |");
+      out().println("=======================================================");
+      out().println("| Login: " + user.login());
+      out().println("| Password: ********");
+      out().println("| Role: " + user.role());
+      out().println("| Favorite Games: " + favoriteNames(esql, user.login()));
+      out().println("| Phone Number: " + user.phoneNum());
+      out().println("| Number of Overdue Games: " + user.numOverDueGames());
+      out().println("====================================");
+      out().println("| Press any key to return to the homepage...");
+      in().readLine(); // Wait for the user to press Enter or any key
 
     } catch (Exception e) {
-      System.err.println("Error: " + e.getMessage());
+      err().println("Error: " + e.getMessage());
     }
   }
 
-  public static void updateProfile(GameRental esql, String authorisedUser) {
+  public static void updateProfile(GameRental esql, Session session) {
+    QueryMetrics.setOperation("updateProfile");
     try {
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("======================================================");
-      System.out.println("|                  Update Your Profile                |");
-      System.out.println("======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("| 1.                Update password                   |");
-      System.out.println("|                                                     |");
-      System.out.println("| 2.               Update phone number                |");
-      System.out.println("|                                                     |");
-      System.out.println("| 3.              Update favorite games               |");
-      System.out.println("|                                                     |");
-      System.out.println("|-----------------------------------------------------|");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("======================================================");
+      out().println("|                  Update Your Profile                |");
+      out().println("======================================================");
+      out().println("|                                                     |");
+      out().println("| 1.                Update password                   |");
+      out().println("|                                                     |");
+      out().println("| 2.               Update phone number                |");
+      out().println("|                                                     |");
+      out().println("| 3.              Update favorite games               |");
+      out().println("|                                                     |");
+      out().println("|-----------------------------------------------------|");
       switch (readChoice()) {
       case 1:
-        updatePassword(esql, authorisedUser);
+        updatePassword(esql, session);
         break;
       case 2:
-        updatePhoneNum(esql, authorisedUser);
+        updatePhoneNum(esql, session);
         break;
       case 3:
-        updateFavGame(esql, authorisedUser);
+        updateFavGame(esql, session);
         break;
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
-  public static String getPass(GameRental esql, String authorisedUser) {
+  public static void updatePassword(GameRental esql, Session session) {
     try {
-      String query = "SELECT password FROM Users WHERE login = '" + authorisedUser + "';";
-      int correct = esql.executeQueryAndPrintResult(query);
-      List < List < String >> currPass = esql.executeQueryAndReturnResult(query);
-      String correctPass = currPass.get(0).get(0);
-      return correctPass;
-    } catch (Exception e) {
-      System.err.println(e.getMessage());
-    }
-    return null;
-  }
-
-  public static String getRole(GameRental esql, String authorisedUser) {
-    try {
-      String query = "SELECT password FROM Users WHERE login = '" + authorisedUser + "';";
-      int correct = esql.executeQueryAndPrintResult(query);
-      List < List < String >> currRole = esql.executeQueryAndReturnResult(query);
-      String returnRole = currRole.get(0).get(0);
-      return returnRole;
-    } catch (Exception e) {
-      System.err.println(e.getMessage());
-    }
-    return null;
-  }
-
-  public static void updatePassword(GameRental esql, String authorisedUser) {
-    try {
-      System.out.println("=======================================================");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                 Enter current password:              ");
-      String password = in.readLine().trim();
-      System.out.println("|");
-      String correctPassword = getPass(esql, authorisedUser);
-      correctPassword.trim();
-      while (!password.equals(correctPassword)) {
-        System.out.println("====================================================");
-        System.out.println("|                                                  |");
-        System.out.println("|                   Wrong password                 |");
-        System.out.println("|                 1. reenter password              |");
-        System.out.println("|                     2. Go back                   |");
+      String authorisedUser = session.getLogin();
+      out().println("=======================================================");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                 Enter current password:              ");
+      String password = in().readLine().trim();
+      out().println("|");
+      String correctPassword = session.getProfile().password();
+      while (!esql.getPasswords().verify(password, correctPassword)) {
+        out().println("====================================================");
+        out().println("|                                                  |");
+        out().println("|                   Wrong password                 |");
+        out().println("|                 1. reenter password              |");
+        out().println("|                     2. Go back                   |");
         switch (readChoice()) {
         case 1:
-          System.out.println("|                                            |");
-          System.out.println("              reenter password:               ");
-          password = in.readLine();
+          out().println("|                                            |");
+          out().println("              reenter password:               ");
+          password = in().readLine();
           break;
         case 2:
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                       Going back                    |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("|                           o                         |");
-          System.out.println("=======================================================");
-          password = getPass(esql, authorisedUser);
-          break;
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                       Going back                    |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("|                           o                         |");
+          out().println("=======================================================");
+          return;
         }
       }
-      System.out.println("|                                                     |");
-      System.out.println("|                                                     |");
-      System.out.println("|                   Enter new password:               |");
-      String newPassword = in.readLine();
-
-      String query = " UPDATE Users SET password = '" + newPassword + "' WHERE login = '" + authorisedUser + "';";
-      esql.executeUpdate(query);
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                    Password updated!                |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("| Press any key to return to the homepage...");
-      in.readLine(); // Wait for the user to press Enter or any key
+      out().println("|                                                     |");
+      out().println("|                                                     |");
+      out().println("|                   Enter new password:               |");
+      String newPassword = in().readLine();
+
+      String query = "UPDATE Users SET password = ? WHERE login = ?;";
+      esql.executeUpdate(query, esql.getPasswords().hash(newPassword), authorisedUser);
+      session.reload(esql.getCredentials());
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                    Password updated!                |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("| Press any key to return to the homepage...");
+      in().readLine(); // Wait for the user to press Enter or any key
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
 
   }
-  public static void updatePhoneNum(GameRental esql, String authorisedUser) {
+  public static void updatePhoneNum(GameRental esql, Session session) {
     try {
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("|                 Enter new phone number:             |");
-      String newPhoneNum = in.readLine();
-      System.out.println("   |");
-
-      String query = "  UPDATE Users SET phoneNum = '" + newPhoneNum + "' WHERE login = '" + authorisedUser + "';";
-      esql.executeUpdate(query);
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                                                     |");
-      System.out.println("|            Phone number update successful!          |");
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      String authorisedUser = session.getLogin();
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("|                 Enter new phone number:             |");
+      String newPhoneNum = in().readLine();
+      out().println("   |");
+
+      String query = "UPDATE Users SET phoneNum = ? WHERE login = ?;";
+      esql.executeUpdate(query, newPhoneNum, authorisedUser);
+      session.reload(esql.getCredentials());
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("|                                                     |");
+      out().println("|            Phone number update successful!          |");
+      out().println("|                                                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
-  public static void updateFavGame(GameRental esql, String authorisedUser) {
+  public static void updateFavGame(GameRental esql, Session session) {
     try {
+      String authorisedUser = session.getLogin();
       boolean keepUpdating = true;
 
       while (keepUpdating) {
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("=======================================================");
-        System.out.println("|                                                     |");
-        System.out.println("|                Current favorite games:              |");
-
-        String selectQuery = "SELECT favGames FROM Users WHERE login = '" + authorisedUser + "'";
-        Statement stmt = esql._connection.createStatement();
-        ResultSet rs = stmt.executeQuery(selectQuery);
-        rs.next();
-        String currentFavGames = rs.getString(1);
-
-        System.out.println("|   " + currentFavGames);
-        System.out.println("|                                   |");
-        System.out.println("|      Enter a favorite game:       |");
-        System.out.println("|  (or type 'delete' to remove a game) |");
-        System.out.println("|  (or type 'home' to return to home) |");
-        System.out.println("|                                   |");
-        String newFavGame = in.readLine();
-        System.out.println("   |");
-
-        if (newFavGame.equalsIgnoreCase("home")) {
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("=======================================================");
+        out().println("|                                                     |");
+        out().println("|                Current favorite games:              |");
+        out().println("|   " + favoriteNames(esql, authorisedUser));
+        out().println("|                                   |");
+        out().println("|  Enter a favorite game (ID or name): |");
+        out().println("|  (or type 'delete' to remove a game) |");
+        out().println("|  (or type 'home' to return to home) |");
+        out().println("|                                   |");
+        String newFavGame = in().readLine();
+        out().println("   |");
+
+        if (newFavGame == null || newFavGame.equalsIgnoreCase("home")) {
           keepUpdating = false;
-          System.out.println("|                    Returning to Home                |");
-        } else if (newFavGame.equalsIgnoreCase("delete")) {
-          System.out.println("|      Enter the game to remove:     |");
-          String gameToRemove = in.readLine();
-          currentFavGames = currentFavGames.replaceAll(gameToRemove + ",?", "");
-          String updateQuery = "UPDATE Users SET favGames = '" + currentFavGames + "' WHERE login = '" + authorisedUser + "'";
-          esql.executeUpdate(updateQuery);
-          System.out.println("|          Game removed from favorites                |");
+          out().println("|                    Returning to Home                |");
+          continue;
+        }
+
+        boolean delete = newFavGame.equalsIgnoreCase("delete");
+        if (delete) {
+          out().println("|      Enter the game to remove:     |");
+          newFavGame = in().readLine();
+          if (newFavGame == null) {
+            return;
+          }
+        }
+        CatalogGame game = esql.getCatalog().find(newFavGame);
+        if (game == null) {
+          out().println("|   No game with that ID or name: " + newFavGame.trim());
+        } else if (delete) {
+          // one row deleted, the other favorites are untouched
+          if (esql.getFavorites().remove(authorisedUser, game.gameID())) {
+            out().println("|          Game removed from favorites                |");
+          } else {
+            out().println("|   " + game.gameName() + " is not one of your favorites");
+          }
+        } else if (esql.getFavorites().add(authorisedUser, game.gameID())) {
+          out().println("|              Game added to favorites                |");
+          int others = esql.getFavorites().fanCount(game.gameID()) - 1;
+          if (others > 0) {
+            out().println("|   Also a favorite of " + others + " other user(s)");
+          }
         } else {
-          String updatedFavGames = currentFavGames + ", " + newFavGame;
-          String updateQuery = "UPDATE Users SET favGames = '" + updatedFavGames + "' WHERE login = '" + authorisedUser + "'";
-          esql.executeUpdate(updateQuery);
-          System.out.println("|              Game added to favorites                |");
+          out().println("|   " + game.gameName() + " is already one of your favorites");
         }
 
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|              Updated favorite games list            |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("=======================================================");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|              Updated favorite games list            |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("=======================================================");
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
+  // the names of a user's favorite games, alphabetically, comma separated.
+  static String favoriteNames(GameRental esql, String login) throws SQLException {
+    List < String > names = new ArrayList < String > ();
+    for (String gameId: esql.getFavorites().favorites(login)) {
+      CatalogGame game = esql.getCatalog().byId(gameId);
+      names.add(game == null ? gameId : game.gameName());
+    }
+    Collections.sort(names);
+    return String.join(", ", names);
+  }
+
   public static void viewCatalog(GameRental esql, String authorisedUser) {
     try {
-      System.out.println("|                              o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("|                           o                         |");
-      System.out.println("==========================================================");
-      System.out.println("|                  Viewing Catalog Options               |");
-      System.out.println("==========================================================");
-      System.out.println("|                                                        |");
-      System.out.println("| 1.                    Search By Genre                  |");
-      System.out.println("|                                                        |");
-      System.out.println("| 2.                   Search By Pricing                 |");
-      System.out.println("|                                                        |");
-      System.out.println("|--------------------------------------------------------|");
+      out().println("|                              o                         |");
+      out().println("|                           o                         |");
+      out().println("|                           o                         |");
+      out().println("==========================================================");
+      out().println("|                  Viewing Catalog Options               |");
+      out().println("==========================================================");
+      out().println("|                                                        |");
+      out().println("| 1.                    Search By Genre                  |");
+      out().println("|                                                        |");
+      out().println("| 2.                   Search By Pricing                 |");
+      out().println("|                                                        |");
+      out().println("| 3.                    Search By Name                   |");
+      out().println("|                                                        |");
+      out().println("|--------------------------------------------------------|");
 
       switch (readChoice()) {
       case 1:
@@ -818,359 +1255,425 @@ public class GameRental {
       case 2:
         searchByPrice(esql, authorisedUser);
         break;
+      case 3:
+        searchByName(esql, authorisedUser);
+        break;
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void searchByGenre(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("searchByGenre");
     try {
       boolean keepSearching = true;
       while (keepSearching) {
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("=======================================================");
-        System.out.println("|                     Available Genres:               |");
-        String genreQuery = "SELECT DISTINCT genre FROM Catalog;";
-
-        List < List < String >> result1 = esql.executeQueryAndReturnResult(genreQuery);
-        for (List < String > row: result1) {
-          System.out.println("| " + row.get(0));
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("=======================================================");
+        out().println("|                     Available Genres:               |");
+        for (String genre: esql.getCatalog().genres()) {
+          out().println("| " + genre);
         }
 
-        System.out.println("=======================================================");
-        System.out.println("|                       Enter a Genre:                |");
-
-        String genreType = in.readLine();
-        System.out.println("|");
-
-        System.out.println("|  Games in the specified genre:    |");
-
-        // Fetch all games in the specified genre
-        String gamesInGenreQuery = "SELECT gameName FROM Catalog WHERE genre = '" + genreType + "';";
-        List < List < String >> result2 = esql.executeQueryAndReturnResult(gamesInGenreQuery);
-
-        System.out.println("=======================================================");
-        if (result2.isEmpty()) {
-          System.out.println("|   No games found in the specified |");
-          System.out.println("|   genre.                          |");
+        out().println("=======================================================");
+        out().println("|                       Enter a Genre:                |");
+
+        String genreType = in().readLine();
+        out().println("|");
+
+        out().println("|  Games in the specified genre:    |");
+
+        // one page at a time, continuing after the last game shown
+        Page < CatalogGame > page = esql.getCatalog().pageByGenre(genreType.trim(), null, esql.getPageSize());
+
+        out().println("=======================================================");
+        if (page.isEmpty()) {
+          out().println("|   No games found in the specified |");
+          out().println("|   genre.                          |");
+          // the closest genre name, for a typo
+          String closest = null;
+          double best = 0.3;
+          for (String genre: esql.getCatalog().genres()) {
+            double similarity = GameSearchIndex.similarity(genreType, genre);
+            if (similarity >= best) {
+              best = similarity;
+              closest = genre;
+            }
+          }
+          if (closest != null) {
+            out().println("|   Did you mean: " + closest + "?");
+          }
         } else {
-          System.out.println("=======================================================");
-          System.out.println("|   Games in the specified genre:   |");
-          for (List < String > row: result2) {
-            System.out.println("|   - " + row.get(0));
+          out().println("=======================================================");
+          out().println("|   Games in the specified genre:   |");
+          while (true) {
+            for (CatalogGame game: page.getItems()) {
+              out().println("|   - " + game.gameName());
+            }
+            if (!page.hasMore() || !morePages())
+              break;
+            page = esql.getCatalog().pageByGenre(genreType.trim(), page.last(), esql.getPageSize());
           }
         }
-        System.out.println("=======================================================");
+        out().println("=======================================================");
 
         // Ask user if they want to search for another genre or quit
-        System.out.println("|                                                     |");
-        System.out.println("|   Do you want to see another genre? (Y/N): ");
-        String userResponse = in.readLine().trim().toUpperCase();
-        if (!userResponse.equals("Y")) {
+        out().println("|                                                     |");
+        out().println("|   Do you want to see another genre? (Y/N): ");
+        String userResponse = in().readLine();
+        if (userResponse == null || !userResponse.trim().equalsIgnoreCase("Y")) {
           keepSearching = false;
-          System.out.println("|                     Exiting search                  |");
-          System.out.println("=======================================================");
+          out().println("|                     Exiting search                  |");
+          out().println("=======================================================");
         }
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void searchByPrice(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("searchByPrice");
     try {
       boolean keepSearching = true;
       while (keepSearching) {
-        System.out.println("=======================================================");
-        System.out.println("|                Enter minimum price:                 |");
-        String minPriceInput = in.readLine();
-        double minPrice = Double.parseDouble(minPriceInput);
-        System.out.println("|                Enter maximum price:                 |");
-        String maxPriceInput = in.readLine();
-        double maxPrice = Double.parseDouble(maxPriceInput);
-
-        System.out.println("=======================================================");
-        System.out.println("|                    Choose order:                    |");
-        System.out.println("|                   1. Low to High                    |");
-        System.out.println("|                   2. High to Low                    |");
-        int orderChoice = Integer.parseInt(in.readLine());
-
-        String order = (orderChoice == 1) ? "ASC" : "DESC";
-        String priceQuery = "SELECT gameName, price FROM Catalog WHERE price BETWEEN " + minPrice + " AND " + maxPrice + " ORDER BY price " + order + ";";
-        List < List < String >> result = esql.executeQueryAndReturnResult(priceQuery);
-
-        System.out.println("=======================================================");
-        if (result.isEmpty()) {
-          System.out.println("|           No games found within the             |");
-          System.out.println("|             specified price range.              |");
+        out().println("=======================================================");
+        out().println("|                Enter minimum price:                 |");
+        String minPriceInput = in().readLine();
+        BigDecimal minPrice = new BigDecimal(minPriceInput.trim());
+        out().println("|                Enter maximum price:                 |");
+        String maxPriceInput = in().readLine();
+        BigDecimal maxPrice = new BigDecimal(maxPriceInput.trim());
+
+        out().println("=======================================================");
+        out().println("|                    Choose order:                    |");
+        out().println("|                   1. Low to High                    |");
+        out().println("|                   2. High to Low                    |");
+        int orderChoice = Integer.parseInt(in().readLine());
+
+        boolean ascending = orderChoice == 1;
+        Page < CatalogGame > page = esql.getCatalog().pageByPrice(minPrice, maxPrice, ascending, null, esql.getPageSize());
+
+        out().println("=======================================================");
+        if (page.isEmpty()) {
+          out().println("|           No games found within the             |");
+          out().println("|             specified price range.              |");
         } else {
-          System.out.println("|           Games within the specified            |");
-          System.out.println("|                 price range:                    |");
-          for (List < String > row: result) {
-            System.out.println("|   - " + row.get(0) + ": $" + row.get(1));
+          out().println("|           Games within the specified            |");
+          out().println("|                 price range:                    |");
+          while (true) {
+            for (CatalogGame game: page.getItems()) {
+              out().println("|   - " + game.gameName() + ": $" + game.price());
+            }
+            if (!page.hasMore() || !morePages())
+              break;
+            page = esql.getCatalog().pageByPrice(minPrice, maxPrice, ascending, page.last(), esql.getPageSize());
           }
         }
-        System.out.println("=======================================================");
+        out().println("=======================================================");
 
         // Ask user if they want to search for another price range or quit
-        System.out.println("|                                   |");
-        System.out.println("|   Do you want to search another price range? (Y/N): ");
-        String userResponse = in.readLine().trim().toUpperCase();
-        if (!userResponse.equals("Y")) {
+        out().println("|                                   |");
+        out().println("|   Do you want to search another price range? (Y/N): ");
+        String userResponse = in().readLine();
+        if (userResponse == null || !userResponse.trim().equalsIgnoreCase("Y")) {
           keepSearching = false;
-          System.out.println("|                    Exiting search                   |");
-          System.out.println("=======================================================");
+          out().println("|                    Exiting search                   |");
+          out().println("=======================================================");
         }
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
-  public static void placeOrder(GameRental esql, String authorisedUser) {
+  public static void searchByName(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("searchByName");
     try {
-      // Incrementing the last order number by 1 to use as new order number
-      String getLastQuery = "SELECT rentalOrderID FROM RentalOrder ORDER BY rentalOrderID DESC LIMIT 1;";
-      List < List < String >> getLast = esql.executeQueryAndReturnResult(getLastQuery);
-      String lastID = getLast.get(0).get(0);
-      Integer lastOrderId = Integer.valueOf(lastID.substring(lastID.length() - 4));
-      Integer lastOrderId_1 = lastOrderId + 1;
-      String newOrderId = "gamerentalorder" + String.valueOf(lastOrderId_1);
+      boolean keepSearching = true;
+      while (keepSearching) {
+        out().println("=======================================================");
+        out().println("|        Enter words from a game name or description: |");
+        String query = in().readLine();
+        if (query == null) {
+          return;
+        }
 
+        // best matches first, tolerating typos
+        Page < GameSearchIndex.Hit > page = esql.getSearchIndex().search(query, 0, esql.getPageSize());
+        int shown = 0;
 
-      String getLastTracking = "SELECT trackingID FROM TrackingInfo ORDER BY trackingID DESC LIMIT 1;";
-      List < List < String >> getEnd = esql.executeQueryAndReturnResult(getLastTracking);
-      String endID = getEnd.get(0).get(0);
-      Integer lastTrackingId = Integer.valueOf(endID.substring(endID.length() - 4));
-      Integer lastTrackingId_1 = lastTrackingId + 2;
-      String newTrackingId = "trackingid" + String.valueOf(lastTrackingId_1);
+        out().println("=======================================================");
+        if (page.isEmpty()) {
+          out().println("|             No games match your search.             |");
+        } else {
+          out().println("|               Games matching your search:           |");
+          CatalogGame best = page.getItems().get(0).game();
+          while (true) {
+            for (GameSearchIndex.Hit hit: page.getItems()) {
+              out().println("|   - " + hit.game().gameName() + " (" + hit.game().gameID() + "): $" + hit.game().price());
+            }
+            shown += page.getItems().size();
+            if (!page.hasMore() || !morePages())
+              break;
+            page = esql.getSearchIndex().search(query, shown, esql.getPageSize());
+          }
+          printAlsoRented(esql, "Customers who rented " + best.gameName() + " also rented:",
+            esql.getCoRentals().alsoRented(Collections.singletonList(best.gameID())));
+        }
+        out().println("=======================================================");
+
+        out().println("|                                                     |");
+        out().println("|   Do you want to search again? (Y/N): ");
+        String userResponse = in().readLine();
+        if (userResponse == null || !userResponse.trim().equalsIgnoreCase("Y")) {
+          keepSearching = false;
+          out().println("|                    Exiting search                   |");
+          out().println("=======================================================");
+        }
+      }
+    } catch (Exception e) {
+      err().println(e.getMessage());
+    }
+  }
+
+  // lists recommended games under a heading, nothing when there are none.
+  static void printAlsoRented(GameRental esql, String heading, List < CoRentals.Recommendation > games) throws SQLException {
+    if (games.isEmpty())
+      return;
+    out().println("|   " + heading);
+    for (CoRentals.Recommendation pick: games) {
+      CatalogGame game = esql.getCatalog().byId(pick.gameID());
+      out().println("|   - " + (game == null ? pick.gameID() : game.gameName()) + " (" + pick.gameID() + ")");
+    }
+  }
+
+  // asks whether to show the next page of a listing; a blank line continues.
+  static boolean morePages() throws IOException {
+    out().println("|   Press Enter for more, or Q to stop: ");
+    String line = in().readLine();
+    return line != null && line.trim().isEmpty();
+  }
 
-      System.out.println("How many games do you want to order?");
-      Integer numOfGames = Integer.valueOf(in.readLine());
+  public static void placeOrder(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("placeOrder");
+    try {
+      out().println("How many games do you want to order?");
+      Integer numOfGames = Integer.valueOf(in().readLine());
 
       // Collect game information
       List < String > gameIds = new ArrayList < > ();
       List < Integer > numCopiesList = new ArrayList < > ();
-      Float totalCost = 0.0f;
 
       for (int i = 0; i < numOfGames; i++) {
-        System.out.println("Insert the game ID of the game you want to order");
-        String gameId = in.readLine();
+        out().println("Insert the game ID of the game you want to order");
+        String gameId = in().readLine();
         gameIds.add(gameId);
 
-        System.out.println("Insert the amount of copies you want of the game you want to order");
-        Integer numCopies = Integer.valueOf(in.readLine());
+        out().println("Insert the amount of copies you want of the game you want to order");
+        Integer numCopies = Integer.valueOf(in().readLine());
         numCopiesList.add(numCopies);
-
-        String getCost = "SELECT price FROM Catalog WHERE gameID = '" + gameId + "';";
-        List < List < String >> returnCost = esql.executeQueryAndReturnResult(getCost);
-        String cost = returnCost.get(0).get(0);
-        Float costNum = Float.parseFloat(cost);
-        totalCost += costNum * numCopies;
-      }
-
-      // Insert the RentalOrder first
-      Timestamp currTime = new Timestamp(new Date().getTime());
-      Calendar today = Calendar.getInstance();
-      today.setTime(currTime);
-      today.add(Calendar.DAY_OF_MONTH, 20);
-      Timestamp dateDue = new Timestamp(today.getTimeInMillis());
-
-      String putIntoRentalOrder = "INSERT INTO RentalOrder(rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate) VALUES ('" + newOrderId + "', '" + authorisedUser + "', '" + numOfGames + "', '" + totalCost + "', '" + currTime + "', '" + dateDue + "');";
-      esql.executeUpdate(putIntoRentalOrder);
-
-      // Then insert into TrackingOrder
-      String putIntoTrackingOrder = "INSERT INTO TrackingInfo(trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate, additionalComments) VALUES ('" + newTrackingId + "', '" + newOrderId + "', 'Out for Delivery', 'DHL', 'Bob', '" + currTime + "', '');";
-      esql.executeUpdate(putIntoTrackingOrder);
-      List<List<String>> help = esql.executeQueryAndReturnResult(putIntoTrackingOrder);
-      System.out.println(help.get(0).get(0));
-
-      // Now insert the games into GamesInOrder
-      for (int i = 0; i < numOfGames; i++) {
-        String gameId = gameIds.get(i);
-        Integer numCopies = numCopiesList.get(i);
-
-        String putIntoGameinOrder = "INSERT INTO GamesInOrder(rentalOrderID, gameID, unitsOrdered) VALUES ('" + newOrderId + "', '" + gameId + "', '" + numCopies + "');";
-        esql.executeUpdate(putIntoGameinOrder);
       }
 
-      System.out.printf("Total cost = %.2f\n", totalCost);
+      // Prices, the order, its tracking row and its games are written in one transaction
+      OrderPlacement.Receipt receipt = esql.getOrderPlacement().place(authorisedUser, gameIds, numCopiesList);
+      out().println("Order ID: " + receipt.getRentalOrderID());
+      out().println("Tracking ID: " + receipt.getTrackingID());
+      out().printf("Total cost = %.2f\n", receipt.getTotalPrice());
+      printAlsoRented(esql, "Customers who rented these games also rented:",
+        esql.getCoRentals().alsoRented(gameIds));
 
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void viewRecentOrders(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("viewRecentOrders");
     try {
-      System.out.println("=======================================================");
-      System.out.println("|            Viewing 5 Most Recent Orders             |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
+      out().println("=======================================================");
+      out().println("|            Viewing 5 Most Recent Orders             |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
 
-      String query = "SELECT rentalOrderID, noOfGames, totalPrice, orderTimestamp, dueDate FROM RentalOrder " +
-        "WHERE login = '" + authorisedUser + "' ORDER BY orderTimestamp DESC LIMIT 5;";
-      List < List < String >> result = esql.executeQueryAndReturnResult(query);
+      // kept in memory and updated by placeOrder
+      List < RentalOrder > result = esql.getOrderHistory().get(authorisedUser).recent(5);
 
       if (result.isEmpty()) {
-        System.out.println("|          No recent orders found.                    |");
+        out().println("|          No recent orders found.                    |");
       } else {
-        for (List < String > row: result) {
-          System.out.println("| Order ID: " + row.get(0));
-          System.out.println("| Number of Games: " + row.get(1));
-          System.out.println("| Total Price: " + row.get(2));
-          System.out.println("| Order Timestamp: " + row.get(3));
-          System.out.println("| Due Date: " + row.get(4));
-          System.out.println("|-----------------------------------------------------|");
+        for (RentalOrder order: result) {
+          out().println("| Order ID: " + order.rentalOrderID());
+          out().println("| Number of Games: " + order.noOfGames());
+          out().println("| Total Price: " + order.totalPrice());
+          out().println("| Order Timestamp: " + order.orderTimestamp());
+          out().println("| Due Date: " + order.dueDate());
+          out().println("|-----------------------------------------------------|");
         }
       }
 
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      out().println("|                                                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void viewAllOrders(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("viewAllOrders");
     try {
-      System.out.println("=======================================================");
-      System.out.println("|             Viewing All Previous Orders             |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-
-      String query = "SELECT rentalOrderID, noOfGames, totalPrice, orderTimestamp, dueDate FROM RentalOrder WHERE login = '" + authorisedUser + "';";
-      List < List < String >> result = esql.executeQueryAndReturnResult(query);
-
-      if (result.isEmpty()) {
-        System.out.println("|            No previous orders found                 |");
-      } else {
-        System.out.println("=======================================================");
-        for (List < String > row: result) {
-          System.out.println("| Order ID         : " + row.get(0));
-          System.out.println("| No. of Games     : " + row.get(1));
-          System.out.println("| Total Price      : " + row.get(2));
-          System.out.println("| Order Timestamp  : " + row.get(3));
-          System.out.println("| Due Date         : " + row.get(4));
-          System.out.println("-------------------------------------------------------");
+      out().println("=======================================================");
+      out().println("|             Viewing All Previous Orders             |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+
+      OrderHistory.Summary summary = esql.getOrderHistory().get(authorisedUser);
+      out().println("| Orders placed    : " + summary.getOrderCount());
+      out().println("| Total spent      : " + summary.getTotalSpent());
+
+      // newest first, one page at a time; each page seeks past the last order shown
+      out().println("=======================================================");
+      Page < RentalOrder > page = esql.getOrderHistory().page(authorisedUser, null, esql.getPageSize());
+      while (true) {
+        for (RentalOrder order: page.getItems()) {
+          out().println("| Order ID         : " + order.rentalOrderID());
+          out().println("| No. of Games     : " + order.noOfGames());
+          out().println("| Total Price      : " + order.totalPrice());
+          out().println("| Order Timestamp  : " + order.orderTimestamp());
+          out().println("| Due Date         : " + order.dueDate());
+          out().println("-------------------------------------------------------");
         }
+        if (!page.hasMore() || !morePages())
+          break;
+        page = esql.getOrderHistory().page(authorisedUser, page.last(), esql.getPageSize());
+      }
+
+      if (summary.getOrderCount() == 0) {
+        out().println("|            No previous orders found                 |");
       }
 
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      out().println("|                                                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void viewOrderInfo(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("viewOrderInfo");
     try {
-      System.out.println("=======================================================");
-      System.out.println("|          Viewing A Specific Recent Order            |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("|        Insert the OrderId you want to view          |");
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
-
-      String orderId = in.readLine();
-      String queryGames = "SELECT C.gameName FROM RentalOrder R, TrackingInfo T, GamesInOrder G, Catalog C WHERE R.login = '" + authorisedUser + "' AND R.rentalOrderID = '" + orderId + "' AND R.rentalOrderID = T.rentalOrderID AND R.rentalOrderID = G.rentalOrderID AND G.gameID = C.gameID;";
-      String queryInfo = "SELECT T.trackingID FROM TrackingInfo T WHERE T.rentalOrderID = '" + orderId + "';";
-      // String queryInfo = "SELECT R.orderTimestamp, R.dueDate, R.totalPrice, T.trackingID FROM RentalOrder R, TrackingInfo T WHERE R.login = '" + authorisedUser + "' AND R.rentalOrderID = '" + orderId + "' AND T.rentalOrderID = '" + orderId + "';";
-      List < List < String >> info = esql.executeQueryAndReturnResult(queryInfo);
-      System.out.println(info);
-      List < String > order = info.get(0);
-      List < List < String >> game = esql.executeQueryAndReturnResult(queryGames);
-      System.out.println("=======================================================");
-      System.out.println("|                      Order Info                     |");
-      System.out.println("=======================================================");
-      System.out.println("| Order Timestamp: " + order.get(0));
-      System.out.println("| Due Date: " + order.get(1));
-      System.out.println("| Total Price: " + order.get(2));
-      System.out.println("| TrackingID: " + order.get(3));
-      System.out.println("| Ordered Games: " + game);
-      System.out.println("=======================================================");
+      out().println("=======================================================");
+      out().println("|          Viewing A Specific Recent Order            |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("|        Insert the OrderId you want to view          |");
+      out().println("|                                                     |");
+      out().println("=======================================================");
+
+      String orderId = in().readLine().trim();
+      // the order, its tracking row and its games in one round trip, or from the cache
+      OrderDetail detail = esql.getOrderDetails().get(authorisedUser, orderId);
+      if (detail == null) {
+        out().println("No order information for/no permission to view order: " + orderId);
+        return;
+      }
+      RentalOrder order = detail.order();
+      TrackingInfo tracking = detail.tracking();
+      out().println("=======================================================");
+      out().println("|                      Order Info                     |");
+      out().println("=======================================================");
+      out().println("| Order Timestamp: " + order.orderTimestamp());
+      out().println("| Due Date: " + order.dueDate());
+      out().println("| Total Price: " + order.totalPrice());
+      out().println("| TrackingID: " + (tracking == null ? "" : tracking.trackingID()));
+      out().println("| Ordered Games: " + detail.gameNames());
+      List < String > gameIds = new ArrayList < String > ();
+      for (OrderDetail.Line line: detail.games()) {
+        gameIds.add(line.gameID());
+      }
+      printAlsoRented(esql, "Customers who rented these games also rented:",
+        esql.getCoRentals().alsoRented(gameIds));
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void viewTrackingInfo(GameRental esql, String authorisedUser) {
+    QueryMetrics.setOperation("viewTrackingInfo");
     try {
       boolean keepGoing = true;
 
       while (keepGoing) {
-        System.out.println("=======================================================");
-        System.out.println("|                                                     |");
-        System.out.println("|                  Enter a Tracking ID:               |");
-        System.out.println("|                                                     |");
-        System.out.println("=======================================================");
-        String trackingID = in.readLine();
-
-        String query = "SELECT T.courierName, T.rentalOrderID, T.currentLocation, T.status, T.lastUpdateDate, T.additionalComments " +
-          "FROM TrackingInfo T, RentalOrder R WHERE trackingID = '" + trackingID + "'" + 
-          " AND T.rentalOrderID = R.rentalOrderID AND R.login = '" + authorisedUser + "';";
-        int resultCheck = esql.executeQuery(query);
-
-        if (resultCheck > 0) {
-          List < List < String >> result = esql.executeQueryAndReturnResult(query);
-          List < String > trackingInfo = result.get(0);
-          System.out.println("=======================================================");
-          System.out.println("|                 Tracking Information                |");
-          System.out.println("=======================================================");
-          System.out.println("| Courier Name: " + trackingInfo.get(0));
-          System.out.println("| Rental Order ID: " + trackingInfo.get(1));
-          System.out.println("| Current Location: " + trackingInfo.get(2));
-          System.out.println("| Status: " + trackingInfo.get(3));
-          System.out.println("| Last Updated Date: " + trackingInfo.get(4));
-          System.out.println("| Additional Comments: " + trackingInfo.get(5));
-          System.out.println("=======================================================");
+        out().println("=======================================================");
+        out().println("|                                                     |");
+        out().println("|                  Enter a Tracking ID:               |");
+        out().println("|                                                     |");
+        out().println("=======================================================");
+        String trackingID = in().readLine();
+
+        String query = "SELECT T.trackingID, T.rentalOrderID, T.status, T.currentLocation, T.courierName, T.lastUpdateDate, T.additionalComments " +
+          "FROM TrackingInfo T, RentalOrder R WHERE trackingID = ?" +
+          " AND T.rentalOrderID = R.rentalOrderID AND R.login = ?;";
+        // acknowledged updates not yet written are shown too
+        TrackingInfo trackingInfo = esql.getTrackingWriter().overlay(
+          esql.executeQueryForObject(query, TrackingInfo.MAPPER, trackingID, authorisedUser));
+
+        if (trackingInfo != null) {
+          out().println("=======================================================");
+          out().println("|                 Tracking Information                |");
+          out().println("=======================================================");
+          out().println("| Courier Name: " + trackingInfo.courierName());
+          out().println("| Rental Order ID: " + trackingInfo.rentalOrderID());
+          out().println("| Current Location: " + trackingInfo.currentLocation());
+          out().println("| Status: " + trackingInfo.status());
+          out().println("| Last Updated Date: " + trackingInfo.lastUpdateDate());
+          out().println("| Additional Comments: " + trackingInfo.additionalComments());
+          out().println("=======================================================");
         } else {
-          System.out.println("No tracking information for/no permission to view trackingID: " + trackingID);
+          out().println("No tracking information for/no permission to view trackingID: " + trackingID);
         }
 
         // Prompt user to enter another tracking ID or quit
-        System.out.println("Do you want to enter another tracking ID? (Y/N)");
-        String response = in.readLine();
+        out().println("Do you want to enter another tracking ID? (Y/N)");
+        String response = in().readLine();
         if (!response.equalsIgnoreCase("Y")) {
           keepGoing = false;
-          System.out.println("Returning to homepage...");
+          out().println("Returning to homepage...");
         }
       }
     } catch (Exception e) {
-      System.err.println("Error: " + e.getMessage());
+      err().println("Error: " + e.getMessage());
     }
   }
 
-  public static void updateTrackingInfo(GameRental esql, String authorisedUser) {
+  public static void updateTrackingInfo(GameRental esql, Session session) {
+    QueryMetrics.setOperation("updateTrackingInfo");
     try {
-      String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "';";
-      List < List < String >> roleQuery = esql.executeQueryAndReturnResult(query);
-      String userRole = roleQuery.get(0).get(0);
-      System.out.println(userRole);
-      if (userRole.trim().equals("manager") || userRole.trim().equals("manager")) {
-        System.out.println("Enter tracking ID you would like to update");
-        String trackingIdUpdate = in.readLine();
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("=======================================================");
-        System.out.println("|                  Update Tracking Info               |");
-        System.out.println("=======================================================");
-        System.out.println("|                                                     |");
-        System.out.println("| 1.                  Update status                   |");
-        System.out.println("|                                                     |");
-        System.out.println("| 2.              Update current location             |");
-        System.out.println("|                                                     |");
-        System.out.println("| 3.               Update courrier name               |");
-        System.out.println("|                                                     |");
-        System.out.println("| 4.              Add additional comments             |");
-        System.out.println("|                                                     |");
-        System.out.println("=======================================================");
-        // System.out.println("|      Please make your choice:     |");
+      out().println(session.getRole());
+      if (session.isStaff()) {
+        out().println("Enter tracking ID you would like to update");
+        String trackingIdUpdate = in().readLine();
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("=======================================================");
+        out().println("|                  Update Tracking Info               |");
+        out().println("=======================================================");
+        out().println("|                                                     |");
+        out().println("| 1.                  Update status                   |");
+        out().println("|                                                     |");
+        out().println("| 2.              Update current location             |");
+        out().println("|                                                     |");
+        out().println("| 3.               Update courrier name               |");
+        out().println("|                                                     |");
+        out().println("| 4.              Add additional comments             |");
+        out().println("|                                                     |");
+        out().println("=======================================================");
+        // out().println("|      Please make your choice:     |");
         switch (readChoice()) {
         case 1:
           updateTrackingStatus(esql, trackingIdUpdate);
@@ -1183,130 +1686,171 @@ public class GameRental {
           break;
           // case 4: addAdditionalComments(); break;
         }
+        // the update commits later on the writer thread, so this session reads from the primary for a while
+        esql.getReplicas().pin();
       } else {
-        System.out.println("You do not have permissions to edit");
+        out().println("You do not have permissions to edit");
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void updateTrackingStatus(GameRental esql, String trackingIdUpdate) {
     try {
-      System.out.println("=======================================================");
-      System.out.println("|                    Update Status                    |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("|                  Options . . .                      |");
-      System.out.println("|                                                     |");
-      System.out.println("|  1. Change to:  Out for Delivery                    |");
-      System.out.println("|  2. Change to:  Delivered                           |");
-      System.out.println("|  3. Change to:  In Transit                          |");
-      System.out.println("|  4. Change to:  Delayed                             |");
-      System.out.println("|  5. Change to:  Ready for Pickup                    |");
-      System.out.println("|  6. Change to:  Attempted Delivery                  |");
-      System.out.println("|  7. Change to:  Arrived at Facility                 |");
-      System.out.println("|  8. Change to:  Returned to Sender                  |");
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      out().println("=======================================================");
+      out().println("|                    Update Status                    |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("|                  Options . . .                      |");
+      out().println("|                                                     |");
+      for (int i = 0; i < TrackingInfo.STATUSES.size(); ++i) {
+        out().printf("|  %d. Change to:  %-37s|%n", i + 1, TrackingInfo.STATUSES.get(i));
+      }
+      out().println("|                                                     |");
+      out().println("=======================================================");
 
-      switch (readChoice()) {
-      case 1:
-        String case1 = "Out for Delivery";
-        String update1 = "UPDATE TrackingInfo SET status = '" + case1 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update1);
-        break;
-      case 2:
-        String case2 = "Delivered";
-        String update2 = "UPDATE TrackingInfo SET status = '" + case2 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update2);
-        break;
-      case 3:
-        String case3 = "In Transit";
-        String update3 = "UPDATE TrackingInfo SET status = '" + case3 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update3);
-        break;
-      case 4:
-        String case4 = "Delayed";
-        String update4 = "UPDATE TrackingInfo SET status = '" + case4 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update4);
-        break;
-      case 5:
-        String case5 = "Ready for Pickup";
-        String update5 = "UPDATE TrackingInfo SET status = '" + case5 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update5);
-        break;
-      case 6:
-        String case6 = "Attempted Delivery";
-        String update6 = "UPDATE TrackingInfo SET status = '" + case6 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update6);
-        break;
-      case 7:
-        String case7 = "Arrived at Facility";
-        String update7 = "UPDATE TrackingInfo SET status = '" + case7 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update7);
-        break;
-      case 8:
-        String case8 = "Returned to Sender";
-        String update8 = "UPDATE TrackingInfo SET status = '" + case8 + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-        esql.executeUpdate(update8);
-        break;
-      default:
-        System.out.println("|               Invalid option!                      |");
-        break;
+      // journaled and acknowledged now, written to TrackingInfo with the next batch
+      int choice = readChoice();
+      if (choice >= 1 && choice <= TrackingInfo.STATUSES.size()) {
+        esql.getTrackingWriter().submit(trackingIdUpdate, TrackingWriter.Field.STATUS, TrackingInfo.STATUSES.get(choice - 1));
+      } else {
+        out().println("|               Invalid option!                      |");
       }
-      System.out.println("=======================================================");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void updateCurrentLocation(GameRental esql, String trackingIdUpdate) {
     try {
-      System.out.println("Insert new location:");
-      System.out.println("(Format: city,State. Ex: Austin,TX)");
-      String newLocation = in.readLine();
-      String updateLocation = "UPDATE TrackingInfo SET currentLocation = '" + newLocation + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-      esql.executeUpdate(updateLocation);
+      out().println("Insert new location:");
+      out().println("(Format: city,State. Ex: Austin,TX)");
+      String newLocation = in().readLine();
+      esql.getTrackingWriter().submit(trackingIdUpdate, TrackingWriter.Field.CURRENT_LOCATION, newLocation);
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void updateCourierName(GameRental esql, String trackingIdUpdate) {
     try {
-      System.out.println("Insert new courier name:");
-      String newName = in.readLine();
-      String updateName = "UPDATE TrackingInfo SET courierName = '" + newName + "' WHERE trackingID = '" + trackingIdUpdate + "';";
-      esql.executeUpdate(updateName);
+      out().println("Insert new courier name:");
+      String newName = in().readLine();
+      esql.getTrackingWriter().submit(trackingIdUpdate, TrackingWriter.Field.COURIER_NAME, newName);
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
-  public static void updateCatalog(GameRental esql, String authorisedUser) {}
-  public static void updateUser(GameRental esql, String authorisedUser) {
+  public static void updateCatalog(GameRental esql, Session session) {
+    QueryMetrics.setOperation("updateCatalog");
     try {
-      String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "';";
-      List < List < String >> roleQuery = esql.executeQueryAndReturnResult(query);
-      String userRole = roleQuery.get(0).get(0);
-      System.out.println(userRole);
-      if (userRole.trim().equals("manager")) {
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("|                           o                         |");
-        System.out.println("=======================================================");
-        System.out.println("|             Update a Customer's Profile             |");
-        System.out.println("=======================================================");
-        System.out.println("|                                                     |");
-        System.out.println("| 1.                  Update login                    |");
-        System.out.println("|                                                     |");
-        System.out.println("| 2.                  Update role                     |");
-        System.out.println("|                                                     |");
-        System.out.println("| 3.       Update number of overdue games             |");
-        System.out.println("|                                                     |");
-        System.out.println("|-----------------------------------------------------|");
-        // System.out.println("|      Please make your choice:     |");
+      if (session.isManager()) {
+        out().println("=======================================================");
+        out().println("|                  Update Game Information            |");
+        out().println("=======================================================");
+        out().println("|                                                     |");
+        out().println("|   Enter the gameID of the game you want to update:  |");
+        out().println("|                                                     |");
+        String gameId = in().readLine().trim();
+        out().println("|                                                     |");
+        out().println("| 1.                Update game name                  |");
+        out().println("|                                                     |");
+        out().println("| 2.                  Update genre                    |");
+        out().println("|                                                     |");
+        out().println("| 3.                  Update price                    |");
+        out().println("|                                                     |");
+        out().println("| 4.               Update description                 |");
+        out().println("|                                                     |");
+        out().println("| 5.             Add or remove copies                 |");
+        out().println("|                                                     |");
+        out().println("|-----------------------------------------------------|");
+        String update = null;
+        Object newValue = null;
+        switch (readChoice()) {
+        case 1:
+          out().println("| Enter the new game name:");
+          update = "UPDATE Catalog SET gameName = ? WHERE gameID = ?;";
+          newValue = in().readLine();
+          break;
+        case 2:
+          out().println("| Enter the new genre:");
+          update = "UPDATE Catalog SET genre = ? WHERE gameID = ?;";
+          newValue = in().readLine().trim();
+          break;
+        case 3:
+          out().println("| Enter the new price:");
+          update = "UPDATE Catalog SET price = ? WHERE gameID = ?;";
+          newValue = new BigDecimal(in().readLine().trim());
+          break;
+        case 4:
+          out().println("| Enter the new description:");
+          update = "UPDATE Catalog SET description = ? WHERE gameID = ?;";
+          newValue = in().readLine();
+          break;
+        case 5:
+          int available = esql.getInventory().available(gameId);
+          if (available < 0) {
+            out().println("|   No game found with gameID: " + gameId);
+            out().println("=======================================================");
+            return;
+          }
+          out().println("| Copies in stock: " + available);
+          out().println("| Enter the copies to add (negative to remove):");
+          int copies = Integer.parseInt(in().readLine().trim());
+          // written at once, with the copies held in memory for the game
+          int inStock = esql.getInventory().restock(gameId, copies);
+          out().println("|                                                     |");
+          out().println("| Copies in stock: " + inStock);
+          out().println("=======================================================");
+          return;
+        default:
+          out().println("|               Invalid option!                      |");
+          return;
+        }
+        int updated = esql.executeUpdate(update, newValue, gameId);
+        // the browsing copy of the catalog is stale now, and so are cached game names
+        esql.getCatalog().invalidate();
+        esql.getOrderDetails().clear();
+        esql.getSearchIndex().refresh(gameId);
+        out().println("|                                                     |");
+        if (updated > 0) {
+          out().println("|                Game Update Successful!              |");
+        } else {
+          out().println("|   No game found with gameID: " + gameId);
+        }
+        out().println("=======================================================");
+      } else {
+        out().println("You do not have permissions to edit");
+      }
+    } catch (Exception e) {
+      err().println(e.getMessage());
+    }
+  }
+
+  public static void updateUser(GameRental esql, Session session) {
+    QueryMetrics.setOperation("updateUser");
+    try {
+      String authorisedUser = session.getLogin();
+      out().println(session.getRole());
+      if (session.isManager()) {
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("|                           o                         |");
+        out().println("=======================================================");
+        out().println("|             Update a Customer's Profile             |");
+        out().println("=======================================================");
+        out().println("|                                                     |");
+        out().println("| 1.                  Update login                    |");
+        out().println("|                                                     |");
+        out().println("| 2.                  Update role                     |");
+        out().println("|                                                     |");
+        out().println("| 3.       Update number of overdue games             |");
+        out().println("|                                                     |");
+        out().println("|-----------------------------------------------------|");
+        // out().println("|      Please make your choice:     |");
         switch (readChoice()) {
         case 1:
           workerUpdateLogin(esql, authorisedUser);
@@ -1319,95 +1863,119 @@ public class GameRental {
           break;
         }
       } else {
-        System.out.println("You do not have permissions to edit");
+        out().println("You do not have permissions to edit");
       }
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
+  public static void viewQueryMetrics(GameRental esql, Session session) {
+    if (!session.isManager()) {
+      out().println("You do not have permissions to view query metrics");
+      return;
+    }
+    out().println("=======================================================");
+    out().println("|                    Query Metrics                    |");
+    out().println("=======================================================");
+    esql.getMetrics().print(out());
+    esql.getInventory().print(out());
+    if (esql.getReplicas().getReplicaCount() > 0) {
+      out().println("=======================================================");
+      esql.getReplicas().print(out());
+    } //end if
+    out().println("=======================================================");
+  }
+
   public static void workerUpdateLogin(GameRental esql, String authorisedUser) {
     try {
-      System.out.println("=======================================================");
-      System.out.println("|               Update User Login                     |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("|   Enter the user you want to update login:          |");
-      System.out.println("|                                                     |");
-      String userUpdate = in.readLine();
-      System.out.println("|                                                     |");
-      System.out.println("|            Enter the new login name:                |");
-      System.out.println("|                                                     |");
-      String newUserLogin = in.readLine();
-
-      String newLoginQuery = "UPDATE Users SET login = '" + newUserLogin + "' WHERE login = '" + userUpdate + "';";
-      esql.executeUpdate(newLoginQuery);
-
-      System.out.println("|                                                     |");
-      System.out.println("|                Login Update Successful!             |");
-      System.out.println("|                                                     |");
-      System.out.println("=======================================================");
+      out().println("=======================================================");
+      out().println("|               Update User Login                     |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("|   Enter the user you want to update login:          |");
+      out().println("|                                                     |");
+      String userUpdate = in().readLine();
+      out().println("|                                                     |");
+      out().println("|            Enter the new login name:                |");
+      out().println("|                                                     |");
+      String newUserLogin = in().readLine();
+
+      String newLoginQuery = "UPDATE Users SET login = ? WHERE login = ?;";
+      esql.executeUpdate(newLoginQuery, newUserLogin, userUpdate);
+      esql.getCredentials().invalidate(userUpdate);
+      esql.getCredentials().invalidate(newUserLogin);
+      esql.getOrderHistory().invalidate(userUpdate);
+      esql.getOrderHistory().invalidate(newUserLogin);
+      esql.getFavorites().invalidate();
+
+      out().println("|                                                     |");
+      out().println("|                Login Update Successful!             |");
+      out().println("|                                                     |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void workerUpdateRole(GameRental esql, String authorisedUser) {
     try {
-      System.out.println("=======================================================");
-      System.out.println("|               Update User Role                      |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("| Enter user you want to update role:                 |");
-      System.out.println("|                                                     |");
-      String userUpdate = in.readLine();
-      System.out.println("|                                                     |");
-      System.out.println("| Set user role to 'customer', 'employee', or 'manager':");
-      System.out.println("|                                                     |");
-      String newRole = in.readLine().trim();
+      out().println("=======================================================");
+      out().println("|               Update User Role                      |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("| Enter user you want to update role:                 |");
+      out().println("|                                                     |");
+      String userUpdate = in().readLine();
+      out().println("|                                                     |");
+      out().println("| Set user role to 'customer', 'employee', or 'manager':");
+      out().println("|                                                     |");
+      String newRole = in().readLine().trim();
 
 
       if (newRole.equals("customer") || newRole.equals("employee") || newRole.equals("manager")) {
-        String newLoginQuery = "UPDATE Users SET role = '" + newRole + "' WHERE login = '" + userUpdate + "';";
-        esql.executeUpdate(newLoginQuery);
-        System.out.println("|                                                     |");
-        System.out.println("|                Role Update Successful!              |");
-        System.out.println("|                                                     |");
+        String newLoginQuery = "UPDATE Users SET role = ? WHERE login = ?;";
+        esql.executeUpdate(newLoginQuery, newRole, userUpdate);
+        esql.getCredentials().invalidate(userUpdate);
+        out().println("|                                                     |");
+        out().println("|                Role Update Successful!              |");
+        out().println("|                                                     |");
       } else {
-        System.out.println("|                                                     |");
-        System.out.println("|                Invalid input.                       |");
-        System.out.println("|     Press any key to return to the main menu.       |");
-        in.readLine();
+        out().println("|                                                     |");
+        out().println("|                Invalid input.                       |");
+        out().println("|     Press any key to return to the main menu.       |");
+        in().readLine();
       }
-      System.out.println("=======================================================");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
   public static void updateOverdueGames(GameRental esql, String authorisedUser) {
     try {
-      System.out.println("=======================================================");
-      System.out.println("|              Update Overdue Games                   |");
-      System.out.println("=======================================================");
-      System.out.println("|                                                     |");
-      System.out.println("| Enter user you want to update number of overdue games:");
-      System.out.println("|                                                     |");
-      String userUpdate = in.readLine();
-      System.out.println("|                                                     |");
-      System.out.println("| Enter number of overdue games:                      |");
-      System.out.println("|                                                     |");
-      Integer newNumber = Integer.valueOf(in.readLine());
-      System.out.println("|                                                     |");
-
-      String newLoginQuery = "UPDATE Users SET numOverdueGames = " + newNumber + " WHERE login = '" + userUpdate + "';";
-      esql.executeUpdate(newLoginQuery);
-
-      System.out.println("=======================================================");
-      System.out.println("|                Update Successful!                   |");
-      System.out.println("=======================================================");
+      out().println("=======================================================");
+      out().println("|              Update Overdue Games                   |");
+      out().println("=======================================================");
+      out().println("|                                                     |");
+      out().println("| Enter user you want to update number of overdue games:");
+      out().println("|                                                     |");
+      String userUpdate = in().readLine();
+      out().println("|                                                     |");
+      out().println("| Enter number of overdue games:                      |");
+      out().println("|                                                     |");
+      Integer newNumber = Integer.valueOf(in().readLine());
+      out().println("|                                                     |");
+
+      String newLoginQuery = "UPDATE Users SET numOverdueGames = ? WHERE login = ?;";
+      esql.executeUpdate(newLoginQuery, newNumber, userUpdate);
+      esql.getCredentials().invalidate(userUpdate);
+
+      out().println("=======================================================");
+      out().println("|                Update Successful!                   |");
+      out().println("=======================================================");
     } catch (Exception e) {
-      System.err.println(e.getMessage());
+      err().println(e.getMessage());
     }
   }
 
@@ -0,0 +1,148 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class serves the GameRental menus to many store terminals from one
+ * process.  Each TCP connection is a session that speaks the same line
+ * protocol as the console: the server prints the menus and reads one
+ * answer per line.  Every session runs on its own thread, a virtual thread
+ * when the JVM has them, and all sessions borrow database connections from
+ * the shared pool.
+ *
+ */
+public class GameRentalServer {
+
+  private final GameRental _esql;
+  private final int _port;
+  private final int _idleTimeoutMillis;
+  private final AtomicInteger _activeSessions = new AtomicInteger();
+
+  private volatile ServerSocket _socket = null;
+
+  /**
+   * Creates a new server
+   *
+   * @param esql the database shared by every session
+   * @param port the TCP port to listen on, 0 picks a free one
+   */
+  public GameRentalServer(GameRental esql, int port) {
+    this._esql = esql;
+    this._port = port;
+    this._idleTimeoutMillis = Integer.getInteger("gamerental.server.idleTimeoutMillis", 30 * 60 * 1000);
+  } //end GameRentalServer
+
+  /**
+   * Accepts sessions until the server is closed.  The listening socket is
+   * bound to the loopback address unless gamerental.server.bind says
+   * otherwise.
+   *
+   * @throws java.io.IOException when the server socket fails
+   */
+  public void serve() throws IOException {
+    String bind = System.getProperty("gamerental.server.bind", "127.0.0.1");
+    ExecutorService sessions = newSessionExecutor();
+    try (ServerSocket socket = new ServerSocket(this._port, 1024, InetAddress.getByName(bind))) {
+      this._socket = socket;
+      System.out.println("| Serving sessions on " + bind + ":" + socket.getLocalPort());
+      while (!socket.isClosed()) {
+        Socket client;
+        try {
+          client = socket.accept();
+        } catch (IOException e) {
+          if (socket.isClosed())
+            break;
+          throw e;
+        } //end try
+        sessions.execute(() -> runSession(client));
+      } //end while
+    } finally {
+      sessions.shutdownNow();
+    } //end try
+  } //end serve
+
+  /**
+   * Returns the port the server listens on, or -1 before it started.
+   */
+  public int getLocalPort() {
+    ServerSocket socket = this._socket;
+    return socket == null ? -1 : socket.getLocalPort();
+  }
+
+  public int getActiveSessions() {
+    return this._activeSessions.get();
+  }
+
+  /**
+   * Stops accepting sessions.
+   */
+  public void close() throws IOException {
+    ServerSocket socket = this._socket;
+    if (socket != null)
+      socket.close();
+  }
+
+  // runs the menus of one connected terminal.
+  private void runSession(Socket client) {
+    this._activeSessions.incrementAndGet();
+    try {
+      client.setSoTimeout(this._idleTimeoutMillis);
+      client.setTcpNoDelay(true);
+      PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()), false,
+        StandardCharsets.UTF_8.name());
+      Terminal.bind(new Terminal(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8), out, out));
+      GameRental.Greeting();
+      GameRental.runSession(this._esql);
+      out.println("|                          Bye!                       |");
+      out.flush();
+    } catch (IOException e) {
+      // the terminal disconnected.
+    } finally {
+      Terminal.unbind();
+      this._activeSessions.decrementAndGet();
+      try {
+        client.close();
+      } catch (IOException e) {
+        // ignored.
+      } //end try
+    } //end try
+  } //end runSession
+
+  /**
+   * Returns an executor starting one virtual thread per session, or one
+   * platform thread per session on JVMs older than 21.
+   */
+  static ExecutorService newSessionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(null, r, "session-" + count.incrementAndGet(), 256 * 1024);
+        t.setDaemon(true);
+        return t;
+      });
+    } //end try
+  } //end newSessionExecutor
+
+} //end GameRentalServer
@@ -0,0 +1,542 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds games by name and description while tolerating typos,
+ * without a LIKE '%...%' scan of the Catalog table.  Every word is cut into
+ * trigrams the way pg_trgm does ("mario" gives "  m", " ma", "mar", "ari",
+ * "rio", "io "), and every trigram of a game's name or description points
+ * to a posting list: the sorted int document numbers of the games that
+ * contain it.
+ *
+ * A query matches a game when the game holds at least minMatch of the
+ * query's trigrams in its name or its description.  A game that misses at
+ * most the rest must contain one of that many plus one trigrams, so
+ * candidates are counted from only the shortest posting lists, checked
+ * against the longer ones with binary searches, and only the matches are
+ * scored.  Matches are ranked by how much of the query the name covers,
+ * then by how close the name is to the query, then by the description.
+ *
+ * Changed games get a new document number and the old one is left as a
+ * tombstone, which keeps every posting list sorted by appending only.  The
+ * lists are rebuilt once the tombstones outnumber the live games.
+ *
+ */
+public class GameSearchIndex {
+
+  /**
+   * A game matching a search, with its score.
+   */
+  public record Hit(CatalogGame game, double score) {}
+
+  // orders hits best first, ties broken by name and gameID.
+  static final Comparator < Hit > RANKING = Comparator.comparingDouble(Hit::score).reversed()
+    .thenComparing(h -> h.game().gameName())
+    .thenComparing(h -> h.game().gameID());
+
+  private static final String LOAD = "SELECT " + CatalogGame.COLUMNS + " FROM Catalog;";
+  private static final String LOAD_ONE = "SELECT " + CatalogGame.COLUMNS + " FROM Catalog WHERE gameID = ?;";
+
+  // set on the trigrams of descriptions so they have keys of their own.
+  private static final long DESCRIPTION = 1L << 48;
+
+  // weights of the three parts of a score.
+  private static final double NAME_SIMILARITY_WEIGHT = 0.25;
+  private static final double DESCRIPTION_WEIGHT = 0.5;
+
+  private final GameRental _esql;
+  private final double _minMatch;
+  private final int _maxMatches;
+  private final long _ttlMillis;
+
+  private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+  // trigram key -> slot of its posting list, open addressing, 0 marks a free key.
+  private long[] _keys = new long[1024];
+  private int[] _slots = new int[1024];
+  private int _keyCount = 0;
+
+  // posting lists by slot, each sorted by document number.
+  private int[][] _postings = new int[256][];
+  private int[] _postingSizes = new int[256];
+
+  // games by document number, null once replaced or deleted.
+  private CatalogGame[] _docs = new CatalogGame[256];
+  private int[] _nameGramCounts = new int[256];
+  private int _docCount = 0;
+  private int _liveCount = 0;
+  private final Map < String, Integer > _docByGameId = new HashMap < String, Integer > ();
+
+  // when the index was last loaded from the database, -1 before the first load.
+  private volatile long _loadedAtMillis = -1;
+
+  // work arrays of one search, reused by later searches.
+  private static final class Scratch {
+    // hits per document, zero between searches.
+    int[] counts = new int[0];
+    int[] touched = new int[64];
+    // the stamp of the search that last returned each document.
+    int[] seen = new int[0];
+    int stamp = 0;
+
+    void reset(int docs) {
+      if (this.counts.length < docs) {
+        this.counts = new int[docs + docs / 2];
+        this.seen = new int[this.counts.length];
+        this.stamp = 0;
+      } //end if
+      if (++this.stamp == Integer.MAX_VALUE) {
+        Arrays.fill(this.seen, 0);
+        this.stamp = 1;
+      } //end if
+    } //end reset
+  }
+
+  // one set per concurrent search, rather than per thread, since sessions may each have a thread.
+  private final ConcurrentLinkedQueue < Scratch > _scratch = new ConcurrentLinkedQueue < Scratch > ();
+
+  /**
+   * Creates a new, empty search index
+   *
+   * @param esql the database the catalog is loaded from
+   * @param minMatch the share of the query's trigrams a match must hold, 0 to 1
+   * @param maxMatches the matches ranked per field, the rest of a broad query are not
+   * @param ttlMillis how long a loaded index is served before it is reloaded
+   */
+  public GameSearchIndex(GameRental esql, double minMatch, int maxMatches, long ttlMillis) {
+    this._esql = esql;
+    this._minMatch = Math.min(1.0, Math.max(0.05, minMatch));
+    this._maxMatches = Math.max(1, maxMatches);
+    this._ttlMillis = ttlMillis;
+  } //end GameSearchIndex
+
+  /**
+   * Returns one page of the games matching a query, best match first.
+   *
+   * @param query the words to look for
+   * @param from the number of matches to skip
+   * @param size the number of matches per page
+   */
+  public Page < Hit > search(String query, int from, int size) throws SQLException {
+    ensureLoaded();
+    long[] grams = grams(query, 0);
+    if (grams.length == 0)
+      return new Page < Hit > (new ArrayList < Hit > (), false);
+    List < Hit > top;
+    this._lock.readLock().lock();
+    try {
+      top = rank(grams, from + size + 1);
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+    int to = Math.min(top.size(), from + size);
+    List < Hit > items = from >= to ? new ArrayList < Hit > () : new ArrayList < Hit > (top.subList(from, to));
+    return new Page < Hit > (items, top.size() > from + size);
+  } //end search
+
+  /**
+   * Reads one game again after it changed and replaces it in the index,
+   * or drops it when the row is gone.
+   *
+   * @param gameId the gameID of the changed row
+   */
+  public void refresh(String gameId) throws SQLException {
+    replace(gameId, this._esql.executeQueryForObject(LOAD_ONE, CatalogGame.MAPPER, gameId));
+  } //end refresh
+
+  /**
+   * Drops the index so the next search loads the catalog again.
+   */
+  public synchronized void invalidate() {
+    this._loadedAtMillis = -1;
+  }
+
+  /**
+   * Returns the number of games in the index.
+   */
+  public int size() {
+    this._lock.readLock().lock();
+    try {
+      return this._liveCount;
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  }
+
+  /**
+   * Returns the trigram similarity of two strings: the trigrams they share
+   * over the trigrams either has, from 0 to 1.
+   */
+  public static double similarity(String a, String b) {
+    long[] x = grams(a, 0);
+    long[] y = grams(b, 0);
+    if (x.length == 0 || y.length == 0)
+      return 0;
+    int shared = 0;
+    for (int i = 0, j = 0; i < x.length && j < y.length;) {
+      if (x[i] == y[j]) {
+        ++shared;
+        ++i;
+        ++j;
+      } else if (x[i] < y[j]) {
+        ++i;
+      } else {
+        ++j;
+      }
+    } //end for
+    return (double) shared / (x.length + y.length - shared);
+  } //end similarity
+
+  // the best `limit` matches for the sorted, distinct query trigrams.
+  private List < Hit > rank(long[] grams, int limit) {
+    int[] nameLists = new int[grams.length];
+    int[] descriptionLists = new int[grams.length];
+    for (int i = 0; i < grams.length; ++i) {
+      nameLists[i] = slot(grams[i]);
+      descriptionLists[i] = slot(grams[i] | DESCRIPTION);
+    } //end for
+    int needed = Math.max(1, (int) Math.ceil(this._minMatch * grams.length - 1e-9));
+
+    PriorityQueue < Hit > best = new PriorityQueue < Hit > (limit + 1, RANKING.reversed());
+    Scratch scratch = this._scratch.poll();
+    if (scratch == null)
+      scratch = new Scratch();
+    try {
+      scratch.reset(this._docCount);
+      for (int[] lists: new int[][] { nameLists, descriptionLists }) {
+        for (int doc: matches(bySize(lists), needed, scratch)) {
+          int nameShared = 0;
+          int descriptionShared = 0;
+          for (int g = 0; g < grams.length; ++g) {
+            if (contains(nameLists[g], doc))
+              ++nameShared;
+            if (contains(descriptionLists[g], doc))
+              ++descriptionShared;
+          } //end for
+          double score = (double) nameShared / grams.length +
+            NAME_SIMILARITY_WEIGHT * nameShared / (grams.length + this._nameGramCounts[doc] - nameShared) +
+            DESCRIPTION_WEIGHT * descriptionShared / grams.length;
+          if (best.size() == limit && score < best.peek().score())
+            continue;
+          best.add(new Hit(this._docs[doc], score));
+          if (best.size() > limit)
+            best.poll();
+        } //end for
+      } //end for
+    } finally {
+      this._scratch.offer(scratch);
+    } //end try
+
+    List < Hit > hits = new ArrayList < Hit > (best);
+    hits.sort(RANKING);
+    return hits;
+  } //end rank
+
+  /**
+   * Returns the live documents holding at least `needed` of the posting
+   * lists, skipping those already returned for this search, and at most
+   * maxMatches of them.  A document
+   * that holds `needed` of m lists holds one of any m - needed + 1 of
+   * them, so only that many of the shortest lists are scanned and counted;
+   * the candidates are then checked against the longer lists by binary
+   * search, giving up once they cannot reach `needed` any more.
+   *
+   * @param lists the slots of the posting lists, shortest first
+   */
+  private int[] matches(int[] lists, int needed, Scratch scratch) {
+    int m = lists.length;
+    if (m < needed)
+      return new int[0];
+    int scanned = m - needed + 1;
+    int touched = 0;
+    for (int j = 0; j < scanned; ++j) {
+      int[] list = this._postings[lists[j]];
+      for (int k = 0, n = this._postingSizes[lists[j]]; k < n; ++k) {
+        int doc = list[k];
+        if (scratch.counts[doc]++ == 0) {
+          if (touched == scratch.touched.length)
+            scratch.touched = Arrays.copyOf(scratch.touched, 2 * touched);
+          scratch.touched[touched++] = doc;
+        } //end if
+      } //end for
+    } //end for
+
+    int found = 0;
+    for (int t = 0; t < touched; ++t) {
+      int doc = scratch.touched[t];
+      int count = scratch.counts[doc];
+      scratch.counts[doc] = 0;
+      if (found == this._maxMatches)
+        continue;
+      for (int j = scanned; j < m && count < needed && count + m - j >= needed; ++j)
+        if (contains(lists[j], doc))
+          ++count;
+      if (count < needed || scratch.seen[doc] == scratch.stamp || this._docs[doc] == null)
+        continue;
+      scratch.seen[doc] = scratch.stamp;
+      // matches are written over the candidates already checked.
+      scratch.touched[found++] = doc;
+    } //end for
+    return Arrays.copyOf(scratch.touched, found);
+  } //end matches
+
+  // the slots of the existing posting lists, shortest first.
+  private int[] bySize(int[] lists) {
+    Integer[] order = Arrays.stream(lists).filter(s -> s >= 0).boxed().toArray(Integer[]::new);
+    Arrays.sort(order, Comparator.comparingInt(s -> this._postingSizes[s]));
+    int[] sorted = new int[order.length];
+    for (int i = 0; i < order.length; ++i)
+      sorted[i] = order[i];
+    return sorted;
+  } //end bySize
+
+  // whether the posting list in a slot holds a document.
+  private boolean contains(int slot, int doc) {
+    return slot >= 0 && Arrays.binarySearch(this._postings[slot], 0, this._postingSizes[slot], doc) >= 0;
+  }
+
+  private boolean fresh() {
+    long loaded = this._loadedAtMillis;
+    return loaded >= 0 && System.currentTimeMillis() - loaded < this._ttlMillis;
+  }
+
+  private void ensureLoaded() throws SQLException {
+    if (fresh())
+      return;
+    synchronized (this) {
+      // another thread may have loaded while this one waited.
+      if (fresh())
+        return;
+      List < CatalogGame > games = new ArrayList < CatalogGame > ();
+      this._esql.executeQueryForEach(LOAD, rs -> games.add(CatalogGame.MAPPER.map(rs)));
+      load(games);
+    } //end synchronized
+  } //end ensureLoaded
+
+  // indexes the games read from the catalog in place of the old ones.
+  synchronized void load(List < CatalogGame > games) {
+    this._lock.writeLock().lock();
+    try {
+      clear();
+      for (CatalogGame game: games)
+        add(game);
+    } finally {
+      this._lock.writeLock().unlock();
+    } //end try
+    this._loadedAtMillis = System.currentTimeMillis();
+  } //end load
+
+  // replaces one game by the row read again, null when it is gone.
+  void replace(String gameId, CatalogGame game) {
+    // a reload in progress may have read the row before it changed, so wait for it.
+    synchronized (this) {
+      if (this._loadedAtMillis < 0)
+        return;
+      this._lock.writeLock().lock();
+      try {
+        remove(gameId);
+        if (game != null)
+          add(game);
+        if (this._docCount - this._liveCount > Math.max(1024, this._liveCount))
+          compact();
+      } finally {
+        this._lock.writeLock().unlock();
+      } //end try
+    } //end synchronized
+  } //end replace
+
+  // the document numbers given out, live games and tombstones.
+  int documents() {
+    this._lock.readLock().lock();
+    try {
+      return this._docCount;
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  }
+
+  private void clear() {
+    this._keys = new long[1024];
+    this._slots = new int[1024];
+    this._keyCount = 0;
+    this._postings = new int[256][];
+    this._postingSizes = new int[256];
+    this._docs = new CatalogGame[256];
+    this._nameGramCounts = new int[256];
+    this._docCount = 0;
+    this._liveCount = 0;
+    this._docByGameId.clear();
+  }
+
+  // gives a game the next document number and appends it to its posting lists.
+  private void add(CatalogGame game) {
+    int doc = this._docCount++;
+    if (doc == this._docs.length) {
+      this._docs = Arrays.copyOf(this._docs, 2 * doc);
+      this._nameGramCounts = Arrays.copyOf(this._nameGramCounts, 2 * doc);
+    } //end if
+    this._docs[doc] = game;
+    long[] name = grams(game.gameName(), 0);
+    this._nameGramCounts[doc] = name.length;
+    for (long gram: name)
+      append(slotFor(gram), doc);
+    for (long gram: grams(game.description(), DESCRIPTION))
+      append(slotFor(gram), doc);
+    this._docByGameId.put(game.gameID(), doc);
+    ++this._liveCount;
+  } //end add
+
+  private void remove(String gameId) {
+    Integer doc = this._docByGameId.remove(gameId);
+    if (doc == null)
+      return;
+    this._docs[doc] = null;
+    --this._liveCount;
+  }
+
+  // rebuilds the posting lists from the live games.
+  private void compact() {
+    List < CatalogGame > live = new ArrayList < CatalogGame > (this._liveCount);
+    for (int doc = 0; doc < this._docCount; ++doc)
+      if (this._docs[doc] != null)
+        live.add(this._docs[doc]);
+    clear();
+    for (CatalogGame game: live)
+      add(game);
+  }
+
+  private void append(int slot, int doc) {
+    int[] list = this._postings[slot];
+    int n = this._postingSizes[slot];
+    if (list == null) {
+      list = new int[4];
+    } else if (n == list.length) {
+      list = Arrays.copyOf(list, 2 * n);
+    } //end if
+    list[n] = doc;
+    this._postings[slot] = list;
+    this._postingSizes[slot] = n + 1;
+  } //end append
+
+  // the slot of a trigram's posting list, -1 when no game has the trigram.
+  private int slot(long key) {
+    int mask = this._keys.length - 1;
+    for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+      if (this._keys[i] == key)
+        return this._slots[i];
+      if (this._keys[i] == 0)
+        return -1;
+    } //end for
+  }
+
+  // the slot of a trigram's posting list, made when missing.
+  private int slotFor(long key) {
+    int mask = this._keys.length - 1;
+    int i = mix(key) & mask;
+    for (; this._keys[i] != 0; i = (i + 1) & mask)
+      if (this._keys[i] == key)
+        return this._slots[i];
+    int slot = this._keyCount++;
+    this._keys[i] = key;
+    this._slots[i] = slot;
+    if (slot == this._postings.length) {
+      this._postings = Arrays.copyOf(this._postings, 2 * slot);
+      this._postingSizes = Arrays.copyOf(this._postingSizes, 2 * slot);
+    } //end if
+    // kept at most half full.
+    if (2 * this._keyCount > this._keys.length)
+      rehash();
+    return slot;
+  } //end slotFor
+
+  private void rehash() {
+    long[] keys = this._keys;
+    int[] slots = this._slots;
+    this._keys = new long[2 * keys.length];
+    this._slots = new int[2 * keys.length];
+    int mask = this._keys.length - 1;
+    for (int k = 0; k < keys.length; ++k) {
+      if (keys[k] == 0)
+        continue;
+      int i = mix(keys[k]) & mask;
+      while (this._keys[i] != 0)
+        i = (i + 1) & mask;
+      this._keys[i] = keys[k];
+      this._slots[i] = slots[k];
+    } //end for
+  } //end rehash
+
+  private static int mix(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return (int) (key ^ (key >>> 32));
+  }
+
+  /**
+   * Returns the sorted, distinct trigrams of a text.  The text is lower
+   * cased and split into words at every character that is not a letter or
+   * a digit; each word is padded with two spaces in front and one behind.
+   * A trigram is its three chars packed into one long, with the given
+   * field bits set.
+   */
+  static long[] grams(String text, long field) {
+    if (text == null)
+      return new long[0];
+    String lower = text.toLowerCase(Locale.ROOT);
+    long[] grams = new long[lower.length() + 2];
+    int count = 0;
+    char a = ' ', b = ' ';
+    for (int i = 0; i <= lower.length(); ++i) {
+      char c = i < lower.length() ? lower.charAt(i) : ' ';
+      if (!Character.isLetterOrDigit(c)) {
+        // the end of a word gives one more trigram, "io " for "mario".
+        if (b != ' ') {
+          grams = ensure(grams, count);
+          grams[count++] = field | pack(a, b, ' ');
+        } //end if
+        a = ' ';
+        b = ' ';
+        continue;
+      } //end if
+      grams = ensure(grams, count);
+      grams[count++] = field | pack(a, b, c);
+      a = b;
+      b = c;
+    } //end for
+    Arrays.sort(grams, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; ++i)
+      if (distinct == 0 || grams[distinct - 1] != grams[i])
+        grams[distinct++] = grams[i];
+    return Arrays.copyOf(grams, distinct);
+  } //end grams
+
+  private static long[] ensure(long[] grams, int count) {
+    return count < grams.length ? grams : Arrays.copyOf(grams, 2 * grams.length);
+  }
+
+  private static long pack(char a, char b, char c) {
+    return ((long) a << 32) | ((long) b << 16) | c;
+  }
+
+} //end GameSearchIndex
@@ -0,0 +1,104 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out unique, prefixed IDs (e.g. gamerentalorder4147)
+ * from a PostgreSQL sequence.  Each nextval reserves a whole block of
+ * numbers, as wide as the sequence's INCREMENT BY, and the numbers in a
+ * block are then given out in memory.  Blocks never overlap, so IDs stay
+ * unique across every client sharing the sequence.
+ *
+ */
+public class IdAllocator {
+
+  // a reserved range [start, end) and the next number to give out.
+  private static final class Block {
+    final AtomicLong cursor;
+    final long end;
+
+    Block(long start, long end) {
+      this.cursor = new AtomicLong(start);
+      this.end = end;
+    }
+  }
+
+  private final ConnectionPool _pool;
+  private final String _sequence;
+  private final String _prefix;
+
+  private volatile Block _block = new Block(0, 0);
+
+  /**
+   * Creates a new allocator over a sequence
+   *
+   * @param pool the pool used to reserve blocks
+   * @param sequence name of the DB sequence
+   * @param prefix the text put in front of every number
+   */
+  public IdAllocator(ConnectionPool pool, String sequence, String prefix) {
+    this._pool = pool;
+    this._sequence = sequence;
+    this._prefix = prefix;
+  } //end IdAllocator
+
+  /**
+   * Returns the next unique number, reserving a new block from the
+   * database only when the current one is used up.
+   *
+   * @return a number no other allocator on this sequence will return
+   * @throws java.sql.SQLException when a new block could not be reserved
+   */
+  public long nextValue() throws SQLException {
+    while (true) {
+      Block block = this._block;
+      long value = block.cursor.getAndIncrement();
+      if (value < block.end)
+        return value;
+      synchronized (this) {
+        // only the first thread to see the exhausted block replaces it.
+        if (this._block == block)
+          this._block = reserve();
+      } //end synchronized
+    } //end while
+  } //end nextValue
+
+  /**
+   * Returns the next unique ID, i.e. the prefix followed by nextValue.
+   */
+  public String nextId() throws SQLException {
+    return this._prefix + nextValue();
+  }
+
+  private Block reserve() throws SQLException {
+    PooledConnection conn = this._pool.borrow();
+    try {
+      ResultSet rs = conn.prepare(
+        "SELECT nextval(S.sequencename::regclass), S.increment_by FROM pg_sequences S " +
+        "WHERE S.schemaname = current_schema() AND S.sequencename = ?;", this._sequence).executeQuery();
+      if (!rs.next()) {
+        rs.close();
+        throw new SQLException("Sequence " + this._sequence + " does not exist");
+      } //end if
+      long start = rs.getLong(1);
+      long size = Math.max(1, rs.getLong(2));
+      rs.close();
+      return new Block(start, start + size);
+    } finally {
+      this._pool.release(conn);
+    } //end try
+  } //end reserve
+
+} //end IdAllocator
@@ -0,0 +1,672 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class keeps rental orders within the copies in stock without
+ * locking the Inventory row of a game for every order.  Like the ID
+ * blocks of IdAllocator, copies are taken from Inventory.inStock a block
+ * at a time with one UPDATE and then handed out in memory: every game has
+ * a counter of the copies this process holds, and an order reserves its
+ * lines by compare-and-set on those counters.  A line that finds too few
+ * copies takes another block; when the table has too few as well, the
+ * lines already reserved are put back and the order is refused.
+ *
+ * The copies a process holds are recorded in InventoryHold under an owner
+ * ID of the process, with a lease it renews in the background.  A written
+ * order counts its copies as rented in memory too, and each renewal takes
+ * the copies rented since the last one off the owner's rows with one
+ * UPDATE, so the order transaction writes no row shared with other
+ * orders.  The rows go back to Inventory when the application closes,
+ * from a shutdown hook on Ctrl-C or SIGTERM, or, after a crash, once the
+ * lease has expired and another process reclaims them; the copies rented
+ * since the last renewal go back on the shelf with them then.
+ *
+ * Copies are only handed out until two thirds of the lease have passed
+ * since it was last renewed, so an order has the last third to commit
+ * before its copies can be reclaimed.  An order finding the lease older
+ * renews it first, and a lease not renewed in time may have lapsed: the
+ * process then drops every copy it holds and puts what its rows still
+ * hold back on the shelf, so a reclaimed copy is not rented again.
+ *
+ */
+public class Inventory {
+
+  /**
+   * The copies reserved for one order, until it commits or is released.
+   */
+  public final class Reservation {
+    private final int[] _games;
+    private final int[] _units;
+    // the lease the copies were held under.
+    private final long _epoch;
+    private boolean _done = false;
+
+    Reservation(int[] games, int[] units, long epoch) {
+      this._games = games;
+      this._units = units;
+      this._epoch = epoch;
+    }
+
+    /**
+     * Counts the copies as rented, once the order is written.  The next
+     * renewal takes them off the owner's InventoryHold rows.
+     */
+    public synchronized void commit() {
+      if (this._done)
+        return;
+      this._done = true;
+      Inventory.this.count(true, this._games, this._units, this._games.length, this._epoch);
+    } //end commit
+
+    /**
+     * Puts the copies back, for an order that was not written.
+     */
+    public synchronized void release() {
+      if (this._done)
+        return;
+      this._done = true;
+      Inventory.this.count(false, this._games, this._units, this._games.length, this._epoch);
+    } //end release
+  } //end Reservation
+
+  // a restock refused because fewer copies are left than removed.
+  private static final class Refused extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    Refused() {
+      super("refused");
+    }
+  }
+
+  /**
+   * Stocks every catalog game without an Inventory row, with the number of
+   * copies filled in by String.format.
+   */
+  static final String STOCK_ALL =
+    "INSERT INTO Inventory (gameID, inStock) SELECT gameID, %d FROM Catalog ON CONFLICT DO NOTHING;";
+
+  private static final String LOAD = "SELECT gameID FROM Inventory;";
+  private static final String KNOWN = "SELECT 1 FROM Inventory WHERE gameID = ?;";
+
+  // the copies on the shelf and those held by running processes.
+  private static final String AVAILABLE =
+    "SELECT I.inStock + COALESCE((SELECT sum(H.copies) FROM InventoryHold H WHERE H.gameID = I.gameID), 0) " +
+    "FROM Inventory I WHERE I.gameID = ?;";
+
+  // takes up to ? copies, when at least the last ? are left, and returns how many it took.
+  private static final String TAKE =
+    "UPDATE Inventory I SET inStock = I.inStock - T.taken " +
+    "FROM (SELECT gameID, LEAST(inStock, ?) AS taken FROM Inventory " +
+    "WHERE gameID = ? AND inStock >= ? FOR UPDATE) T " +
+    "WHERE I.gameID = T.gameID RETURNING T.taken;";
+
+  // records ? copies of a game as held by an owner, renewing its lease.
+  private static final String HOLD =
+    "INSERT INTO InventoryHold (owner, gameID, copies, leaseUntil) " +
+    "VALUES (?, ?, ?, now() + ? * interval '1 millisecond') " +
+    "ON CONFLICT (owner, gameID) DO UPDATE SET copies = InventoryHold.copies + EXCLUDED.copies, " +
+    "leaseUntil = EXCLUDED.leaseUntil;";
+
+  // takes ? copies of a game off an owner's row, when it still has them.
+  private static final String UNHOLD =
+    "UPDATE InventoryHold SET copies = copies - ? WHERE owner = ? AND gameID = ? AND copies >= ?;";
+
+  // adds ? copies, when the result is not negative, and returns the new stock.
+  private static final String ADD =
+    "UPDATE Inventory SET inStock = inStock + ? WHERE gameID = ? AND inStock + ? >= 0 RETURNING inStock;";
+
+  private static final String RENEW =
+    "UPDATE InventoryHold SET leaseUntil = now() + ? * interval '1 millisecond' WHERE owner = ?;";
+
+  // puts the copies of the expired leases of other owners back on the shelf.
+  private static final String RECLAIM =
+    "WITH Expired AS (DELETE FROM InventoryHold WHERE leaseUntil < now() AND owner <> ? RETURNING gameID, copies) " +
+    "UPDATE Inventory I SET inStock = I.inStock + E.copies " +
+    "FROM (SELECT gameID, sum(copies) AS copies FROM Expired GROUP BY gameID) E WHERE I.gameID = E.gameID " +
+    "RETURNING E.copies;";
+  private static final String RETURN_ALL =
+    "WITH Held AS (DELETE FROM InventoryHold WHERE owner = ? RETURNING gameID, copies) " +
+    "UPDATE Inventory I SET inStock = I.inStock + H.copies FROM Held H WHERE I.gameID = H.gameID;";
+
+  // games whose blocks are taken one at a time share a lock.
+  private static final int STRIPES = 64;
+
+  // games written back by one UPDATE at most.
+  private static final int MAX_ROWS = 1024;
+
+  // the held counters are kept in segments that never move, so the games
+  // stocked after the load are added without copying counters in use.
+  private static final int SEGMENT_BITS = 10;
+  private static final int MASK = (1 << SEGMENT_BITS) - 1;
+
+  private final GameRental _esql;
+  private final int _blockSize;
+  private final long _leaseMillis;
+  private final long _leaseNanos;
+  private final String _owner;
+
+  // gameID -> game number, grown when a game is stocked after the load.
+  private final ConcurrentHashMap < String, Integer > _numbers = new ConcurrentHashMap < String, Integer > ();
+  private volatile String[] _gameIds = new String[0];
+
+  // copies taken from the table and not yet rented, by game number.
+  private volatile AtomicIntegerArray[] _held = new AtomicIntegerArray[0];
+  // copies rented since the last renewal, still counted in the owner's rows.
+  private volatile AtomicIntegerArray[] _rented = new AtomicIntegerArray[0];
+
+  private final ReentrantLock[] _stripes = new ReentrantLock[STRIPES];
+
+  // one renewal at a time, by the lease thread or an order finding the lease old.
+  private final ReentrantLock _leaseLock = new ReentrantLock();
+  // the System.nanoTime() until which no row of the owner can have been
+  // reclaimed, and the number of the lease, counted up when it lapses.
+  // Written under _leaseLock.
+  private volatile long _leaseUntil = 0;
+  private volatile long _epoch = 0;
+
+  private volatile boolean _loaded = false;
+  private final AtomicBoolean _closed = new AtomicBoolean();
+  private ScheduledExecutorService _lease = null;
+  private Thread _shutdownHook = null;
+
+  private final AtomicLong _reservations = new AtomicLong();
+  private final AtomicLong _refused = new AtomicLong();
+  private final AtomicLong _blocks = new AtomicLong();
+  private final AtomicLong _lapses = new AtomicLong();
+  private final AtomicLong _reclaimed = new AtomicLong();
+
+  /**
+   * Creates a new inventory, loaded on its first use
+   *
+   * @param esql the database holding the Inventory table
+   * @param blockSize the copies of a game taken from the table at a time
+   * @param leaseMillis how long held copies stay out of stock after this process stops renewing them
+   */
+  public Inventory(GameRental esql, int blockSize, long leaseMillis) {
+    this._esql = esql;
+    this._blockSize = Math.max(1, blockSize);
+    this._leaseMillis = Math.max(1000, leaseMillis);
+    this._leaseNanos = TimeUnit.MILLISECONDS.toNanos(this._leaseMillis);
+    this._owner = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+    for (int i = 0; i < STRIPES; ++i)
+      this._stripes[i] = new ReentrantLock();
+  } //end Inventory
+
+  /**
+   * Reserves the copies of every line of an order, or none of them.
+   *
+   * @param lines the copies ordered, by gameID
+   * @return the reservation, to be committed once the order is written or released
+   * @throws java.sql.SQLException when a game is unknown or has too few copies in stock
+   */
+  public Reservation reserve(Map < String, Integer > lines) throws SQLException {
+    ensureLoaded();
+    int[] games = new int[lines.size()];
+    int[] units = new int[lines.size()];
+    int n = 0;
+    for (Map.Entry < String, Integer > line: lines.entrySet()) {
+      Integer game = number(line.getKey());
+      if (game == null)
+        throw new SQLException("No game with gameID " + line.getKey());
+      games[n] = game;
+      units[n++] = line.getValue();
+    } //end for
+
+    if (System.nanoTime() - handOutUntil() >= 0)
+      renewNow();
+    long epoch = this._epoch;
+    int taken = 0;
+    try {
+      for (; taken < n; ++taken)
+        take(games[taken], units[taken]);
+    } catch (SQLException | RuntimeException e) {
+      count(false, games, units, taken, epoch);
+      this._refused.incrementAndGet();
+      throw e;
+    } //end try
+    this._reservations.incrementAndGet();
+    return new Reservation(games, units, epoch);
+  } //end reserve
+
+  /**
+   * Returns the copies of a game in stock: on the shelf, and held by
+   * running processes but not rented yet.
+   *
+   * @return the copies, or -1 for an unknown game
+   */
+  public int available(String gameId) throws SQLException {
+    Integer inStock = this._esql.executeQueryForObject(AVAILABLE, rs -> rs.getInt(1), gameId);
+    if (inStock == null)
+      return -1;
+    // the owner's rows still count the copies rented since the last renewal.
+    Integer game = this._numbers.get(gameId);
+    return game == null ? inStock : inStock - rented(game).get(game & MASK);
+  } //end available
+
+  /**
+   * Adds copies of a game to the stock, or removes them when negative.
+   * The copies held here for the game are put back on the shelf with them.
+   *
+   * @return the copies on the shelf afterwards
+   * @throws java.sql.SQLException when the game is unknown or fewer copies are left than removed
+   */
+  public int restock(String gameId, int copies) throws SQLException {
+    Integer game = number(gameId);
+    if (game == null)
+      throw new SQLException("No game with gameID " + gameId);
+    ReentrantLock stripe = stripe(game);
+    stripe.lock();
+    try {
+      int held = held(game).getAndSet(game & MASK, 0);
+      Integer inStock = null;
+      try {
+        inStock = this._esql.executeTransaction(conn -> {
+          // copies this process lost to a reclaim are already back on the shelf.
+          int returned = held > 0 && conn.prepare(UNHOLD, held, this._owner, gameId, held).executeUpdate() == 1 ? held : 0;
+          ResultSet rs = conn.prepare(ADD, returned + copies, gameId, returned + copies).executeQuery();
+          Integer stock = rs.next() ? rs.getInt(1) : null;
+          rs.close();
+          if (stock == null)
+            throw new Refused();
+          return stock;
+        });
+      } catch (Refused e) {
+        // rolled back, so the copies are still held.
+        held(game).addAndGet(game & MASK, held);
+        throw new SQLException("Only " + available(gameId) + " copies of " + gameId + " are in stock");
+      } catch (SQLException | RuntimeException e) {
+        held(game).addAndGet(game & MASK, held);
+        throw e;
+      } //end try
+      return inStock;
+    } finally {
+      stripe.unlock();
+    } //end try
+  } //end restock
+
+  /**
+   * Stops renewing the lease, takes the copies rented since the last
+   * renewal off the owner's rows and puts the rest back on the shelf.
+   * Runs once, from cleanup or from the shutdown hook.
+   */
+  public void close() {
+    if (!this._closed.compareAndSet(false, true))
+      return;
+    synchronized (this) {
+      if (this._lease != null)
+        this._lease.shutdownNow();
+      if (this._shutdownHook != null && Thread.currentThread() != this._shutdownHook) {
+        try {
+          Runtime.getRuntime().removeShutdownHook(this._shutdownHook);
+        } catch (IllegalStateException e) {
+          // the JVM is shutting down already.
+        } //end try
+      } //end if
+      if (!this._loaded)
+        return;
+    } //end synchronized
+    this._leaseLock.lock();
+    try {
+      int[] rows = drainRented();
+      this._esql.executeTransaction(conn -> {
+        writeBack(conn, rows);
+        return conn.prepare(RETURN_ALL, this._owner).executeUpdate();
+      });
+    } catch (SQLException e) {
+      GameRental.err().println("Inventory: held copies not returned, they are reclaimed when the lease expires: "
+        + e.getMessage());
+    } finally {
+      this._leaseLock.unlock();
+    } //end try
+  } //end close
+
+  /**
+   * Prints how many orders were reserved and refused, how many blocks of
+   * copies were taken from the table, and how many copies are held.
+   */
+  public void print(PrintStream out) {
+    long held = 0;
+    for (AtomicIntegerArray segment: this._held)
+      for (int i = 0; i < segment.length(); ++i)
+        held += segment.get(i);
+    out.printf("| inventory: %d orders reserved, %d refused, %d leases lapsed, %d blocks taken, %d copies held, "
+      + "%d copies reclaimed%n", this._reservations.get(), this._refused.get(), this._lapses.get(),
+      this._blocks.get(), held, this._reclaimed.get());
+  } //end print
+
+  // takes units copies of a game from those held, taking blocks from the table as needed.
+  private void take(int game, int units) throws SQLException {
+    AtomicIntegerArray segment = held(game);
+    int i = game & MASK;
+    while (true) {
+      int held = segment.get(i);
+      if (held >= units) {
+        if (segment.compareAndSet(i, held, held - units))
+          return;
+        continue;
+      } //end if
+      ReentrantLock stripe = stripe(game);
+      stripe.lock();
+      try {
+        // another order may have taken a block meanwhile.
+        held = segment.get(i);
+        if (held >= units)
+          continue;
+        int missing = units - held;
+        String gameId = gameId(game);
+        Integer taken = takeBlock(gameId, Math.max(missing, this._blockSize), missing);
+        if (taken == null)
+          throw new SQLException("Only " + available(gameId) + " copies of " + gameId + " are in stock");
+        segment.addAndGet(i, taken);
+        this._blocks.incrementAndGet();
+      } finally {
+        stripe.unlock();
+      } //end try
+    } //end while
+  } //end take
+
+  /**
+   * Takes up to block copies of a game off the shelf, when at least
+   * missing are left, and records them as held by this process.
+   *
+   * @return the copies taken, or null when too few are left
+   */
+  Integer takeBlock(String gameId, int block, int missing) throws SQLException {
+    return this._esql.executeTransaction(conn -> {
+      ResultSet rs = conn.prepare(TAKE, block, gameId, missing).executeQuery();
+      Integer taken = rs.next() ? rs.getInt(1) : null;
+      rs.close();
+      if (taken != null)
+        conn.prepare(HOLD, this._owner, gameId, taken, this._leaseMillis).executeUpdate();
+      return taken;
+    });
+  } //end takeBlock
+
+  // the copies of a game this process holds and has not reserved.
+  int heldCopies(String gameId) {
+    Integer game = this._numbers.get(gameId);
+    return game == null ? 0 : held(game).get(game & MASK);
+  }
+
+  // the copies of a game rented since the last renewal.
+  int rentedCopies(String gameId) {
+    Integer game = this._numbers.get(gameId);
+    return game == null ? 0 : rented(game).get(game & MASK);
+  }
+
+  // renews this process's lease and reclaims the copies of expired ones.
+  private void renew() {
+    this._leaseLock.lock();
+    try {
+      renewLease();
+      reclaim();
+    } catch (SQLException | RuntimeException e) {
+      GameRental.err().println("Inventory: lease not renewed: " + e.getMessage());
+    } finally {
+      this._leaseLock.unlock();
+    } //end try
+  } //end renew
+
+  // renews the lease for an order that found it too old to hand out copies.
+  private void renewNow() throws SQLException {
+    this._leaseLock.lock();
+    try {
+      // the lease thread may have renewed it meanwhile.
+      if (System.nanoTime() - handOutUntil() >= 0)
+        renewLease();
+    } finally {
+      this._leaseLock.unlock();
+    } //end try
+  } //end renewNow
+
+  // renews the lease, then writes back the copies rented since the last
+  // renewal.  Called under _leaseLock.
+  private void renewLease() throws SQLException {
+    long start = System.nanoTime();
+    this._esql.executeTransaction(conn -> conn.prepare(RENEW, this._leaseMillis, this._owner).executeUpdate());
+    boolean inTime = System.nanoTime() - this._leaseUntil < 0;
+    int[] rows = drainRented();
+    int written;
+    try {
+      // not in the RENEW transaction: updating a row twice in one
+      // transaction checks its foreign key, which waits on the Inventory
+      // row a takeBlock waiting on this row has locked.
+      written = this._esql.executeTransaction(conn -> writeBack(conn, rows));
+    } catch (SQLException | RuntimeException e) {
+      // rolled back, so they are written back with the next renewal.
+      for (int r = 0; r < rows.length; r += 2)
+        rented(rows[r]).addAndGet(rows[r] & MASK, rows[r + 1]);
+      throw e;
+    } //end try
+    // renewed before the old lease ran out, and no row was missing.
+    if (inTime && written == rows.length / 2) {
+      this._leaseUntil = start + this._leaseNanos;
+      return;
+    } //end if
+    lapse();
+  } //end renewLease
+
+  // drops every copy held here once the lease may have lapsed, and puts
+  // what the owner's rows still hold back on the shelf.  Orders reserved
+  // under the old lease put nothing back.  Called under _leaseLock.
+  private void lapse() throws SQLException {
+    for (ReentrantLock stripe: this._stripes)
+      stripe.lock();
+    try {
+      long start = System.nanoTime();
+      this._epoch = this._epoch + 1;
+      for (AtomicIntegerArray segment: this._held)
+        for (int i = 0; i < segment.length(); ++i)
+          segment.set(i, 0);
+      for (AtomicIntegerArray segment: this._rented)
+        for (int i = 0; i < segment.length(); ++i)
+          segment.set(i, 0);
+      this._lapses.incrementAndGet();
+      this._esql.executeTransaction(conn -> conn.prepare(RETURN_ALL, this._owner).executeUpdate());
+      // the rows taken from now on have fresh leases.
+      this._leaseUntil = start + this._leaseNanos;
+    } finally {
+      for (ReentrantLock stripe: this._stripes)
+        stripe.unlock();
+    } //end try
+  } //end lapse
+
+  // the games with copies rented since the last renewal, as pairs of game
+  // number and copies, resetting their counters.
+  private int[] drainRented() {
+    AtomicIntegerArray[] segments = this._rented;
+    int[] rows = new int[16];
+    int n = 0;
+    for (int s = 0; s < segments.length; ++s) {
+      for (int i = 0; i < segments[s].length(); ++i) {
+        if (segments[s].get(i) == 0)
+          continue;
+        if (n == rows.length)
+          rows = Arrays.copyOf(rows, 2 * n);
+        rows[n++] = (s << SEGMENT_BITS) | i;
+        rows[n++] = segments[s].getAndSet(i, 0);
+      } //end for
+    } //end for
+    return Arrays.copyOf(rows, n);
+  } //end drainRented
+
+  /**
+   * Takes rented copies off the owner's rows, MAX_ROWS games per UPDATE.
+   * The VALUES list is padded to a power of two with rows matching no
+   * game, like writeRows in TrackingWriter.
+   *
+   * @return the rows that still held the copies
+   */
+  private int writeBack(PooledConnection conn, int[] rows) throws SQLException {
+    int written = 0;
+    for (int from = 0; from < rows.length / 2; from += MAX_ROWS) {
+      int count = Math.min(MAX_ROWS, rows.length / 2 - from);
+      int width = 1;
+      while (width < count)
+        width <<= 1;
+      StringBuilder sql = new StringBuilder("UPDATE InventoryHold H SET copies = H.copies - V.copies FROM (VALUES ");
+      Object[] params = new Object[2 * width + 1];
+      for (int i = 0; i < width; ++i) {
+        sql.append(i == 0 ? "" : ", ").append("(?::varchar, ?::integer)");
+        params[2 * i] = i < count ? gameId(rows[2 * (from + i)]) : null;
+        params[2 * i + 1] = i < count ? rows[2 * (from + i) + 1] : 0;
+      } //end for
+      sql.append(") AS V(gameID, copies) WHERE H.owner = ? AND H.gameID = V.gameID AND H.copies >= V.copies;");
+      params[2 * width] = this._owner;
+      written += conn.prepare(sql.toString(), params).executeUpdate();
+    } //end for
+    return written;
+  } //end writeBack
+
+  // adds the copies of the first n lines to the rented or the held
+  // counters, unless the lease they were held under has lapsed.
+  private void count(boolean rent, int[] games, int[] units, int n, long epoch) {
+    if (epoch != this._epoch)
+      return;
+    for (int i = 0; i < n; ++i)
+      (rent ? rented(games[i]) : held(games[i])).addAndGet(games[i] & MASK, units[i]);
+  } //end count
+
+  // copies are handed out until two thirds of the lease have passed.
+  private long handOutUntil() {
+    return this._leaseUntil - this._leaseNanos / 3;
+  }
+
+  private void reclaim() throws SQLException {
+    long copies = this._esql.executeTransaction(conn -> {
+      // an expired lease of this process is returned by lapse, which
+      // keeps takeBlock from locking the same rows the other way round.
+      ResultSet rs = conn.prepare(RECLAIM, this._owner).executeQuery();
+      long sum = 0;
+      while (rs.next())
+        sum += rs.getLong(1);
+      rs.close();
+      return sum;
+    });
+    this._reclaimed.addAndGet(copies);
+  } //end reclaim
+
+  private AtomicIntegerArray held(int game) {
+    return this._held[game >>> SEGMENT_BITS];
+  }
+
+  private AtomicIntegerArray rented(int game) {
+    return this._rented[game >>> SEGMENT_BITS];
+  }
+
+  private String gameId(int game) {
+    return this._gameIds[game];
+  }
+
+  private ReentrantLock stripe(int game) {
+    return this._stripes[game & (STRIPES - 1)];
+  }
+
+  // the number of a game, null when it has no Inventory row.
+  private Integer number(String gameId) throws SQLException {
+    ensureLoaded();
+    Integer game = this._numbers.get(gameId);
+    if (game != null)
+      return game;
+    // a game stocked after the load, e.g. by migrate_inventory.sql.
+    if (this._esql.executeQueryForObject(KNOWN, rs -> rs.getInt(1), gameId) == null)
+      return null;
+    synchronized (this) {
+      game = this._numbers.get(gameId);
+      if (game == null)
+        game = add(Arrays.asList(gameId));
+      return game;
+    } //end synchronized
+  } //end number
+
+  // numbers new games, growing the arrays, and returns the first number.  Called under this.
+  private int add(List < String > gameIds) {
+    int first = this._gameIds.length;
+    String[] names = Arrays.copyOf(this._gameIds, first + gameIds.size());
+    int segments = (names.length + MASK) >>> SEGMENT_BITS;
+    AtomicIntegerArray[] held = Arrays.copyOf(this._held, segments);
+    AtomicIntegerArray[] rented = Arrays.copyOf(this._rented, segments);
+    for (int s = this._held.length; s < segments; ++s) {
+      held[s] = new AtomicIntegerArray(1 << SEGMENT_BITS);
+      rented[s] = new AtomicIntegerArray(1 << SEGMENT_BITS);
+    } //end for
+    for (int i = 0; i < gameIds.size(); ++i)
+      names[first + i] = gameIds.get(i);
+    // the arrays first, so a number is only handed out once its counter exists.
+    this._held = held;
+    this._rented = rented;
+    this._gameIds = names;
+    for (int i = 0; i < gameIds.size(); ++i)
+      this._numbers.put(gameIds.get(i), first + i);
+    return first;
+  } //end add
+
+  private void ensureLoaded() throws SQLException {
+    if (this._loaded)
+      return;
+    synchronized (this) {
+      // another thread may have loaded while this one waited.
+      if (this._loaded)
+        return;
+      if (this._closed.get())
+        throw new SQLException("The inventory is closed");
+      // no row is held yet, those taken from now on are leased from then.
+      this._leaseUntil = System.nanoTime() + this._leaseNanos;
+      add(loadGames());
+      startLease();
+      this._loaded = true;
+    } //end synchronized
+  } //end ensureLoaded
+
+  // the gameIDs of the Inventory table, once the copies left behind by
+  // processes that crashed are back on the shelf.
+  List < String > loadGames() throws SQLException {
+    reclaim();
+    List < String > gameIds = new ArrayList < String > ();
+    this._esql.executeQueryForEach(LOAD, rs -> gameIds.add(rs.getString(1)));
+    return gameIds;
+  } //end loadGames
+
+  // renews the lease in the background and returns the held copies on exit.  Called under this.
+  void startLease() {
+    this._lease = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(() -> {
+        QueryMetrics.setOperation("inventoryLease");
+        r.run();
+      }, "inventory-lease");
+      t.setDaemon(true);
+      return t;
+    });
+    long every = Math.max(1, this._leaseMillis / 3);
+    this._lease.scheduleWithFixedDelay(this::renew, every, every, TimeUnit.MILLISECONDS);
+    this._shutdownHook = new Thread(this::close, "inventory-return");
+    Runtime.getRuntime().addShutdownHook(this._shutdownHook);
+  } //end startLease
+
+} //end Inventory
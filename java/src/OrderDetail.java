@@ -0,0 +1,77 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rental order with its tracking row and its games, as read by
+ * OrderDetailCache in one query.
+ *
+ */
+public record OrderDetail(RentalOrder order, TrackingInfo tracking, List < OrderDetail.Line > games) {
+
+  /**
+   * One game of the order.
+   */
+  public record Line(String gameID, String gameName, int unitsOrdered) {}
+
+  // the order, its latest tracking row, and its games folded into arrays, keyed by login and order.
+  public static final String QUERY =
+    "SELECT R.rentalOrderID, R.login, R.noOfGames, R.totalPrice, R.orderTimestamp, R.dueDate, " +
+    "T.trackingID, T.rentalOrderID, T.status, T.currentLocation, T.courierName, T.lastUpdateDate, " +
+    "T.additionalComments, G.gameIDs, G.gameNames, G.units " +
+    "FROM RentalOrder R " +
+    "LEFT JOIN LATERAL (SELECT " + TrackingInfo.COLUMNS + " FROM TrackingInfo " +
+    "WHERE rentalOrderID = R.rentalOrderID ORDER BY lastUpdateDate DESC LIMIT 1) T ON true " +
+    "LEFT JOIN LATERAL (SELECT array_agg(I.gameID ORDER BY I.gameID) AS gameIDs, " +
+    "array_agg(C.gameName ORDER BY I.gameID) AS gameNames, " +
+    "array_agg(I.unitsOrdered ORDER BY I.gameID) AS units " +
+    "FROM GamesInOrder I JOIN Catalog C ON C.gameID = I.gameID " +
+    "WHERE I.rentalOrderID = R.rentalOrderID) G ON true " +
+    "WHERE R.login = ? AND R.rentalOrderID = ?;";
+
+  public static final RowMapper < OrderDetail > MAPPER = rs -> new OrderDetail(
+    new RentalOrder(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getBigDecimal(4),
+      rs.getTimestamp(5), rs.getTimestamp(6)),
+    rs.getString(7) == null ? null : new TrackingInfo(rs.getString(7), rs.getString(8), rs.getString(9),
+      rs.getString(10), rs.getString(11), rs.getTimestamp(12), rs.getString(13)),
+    lines(rs));
+
+  /**
+   * Returns the names of the ordered games.
+   */
+  public List < String > gameNames() {
+    List < String > names = new ArrayList < String > (this.games.size());
+    for (Line line: this.games)
+      names.add(line.gameName());
+    return names;
+  }
+
+  // unfolds the three game arrays, null when the order has no games.
+  private static List < Line > lines(ResultSet rs) throws SQLException {
+    Array ids = rs.getArray(14);
+    if (ids == null)
+      return Collections.< Line > emptyList();
+    Object[] gameIds = (Object[]) ids.getArray();
+    Object[] names = (Object[]) rs.getArray(15).getArray();
+    Object[] units = (Object[]) rs.getArray(16).getArray();
+    List < Line > lines = new ArrayList < Line > (gameIds.length);
+    for (int i = 0; i < gameIds.length; ++i)
+      lines.add(new Line((String) gameIds[i], (String) names[i], ((Number) units[i]).intValue()));
+    return Collections.unmodifiableList(lines);
+  } //end lines
+}
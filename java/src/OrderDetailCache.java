@@ -0,0 +1,126 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class looks up the full detail of an order, its header, latest
+ * tracking row and games, in one round trip, and keeps recently viewed
+ * orders for a short time so the same order opened again is served from
+ * memory.  Entries are keyed by order and only returned to the login that
+ * owns the order, which is the (login, rentalOrderID) lookup of
+ * viewOrderInfo.  A time to live of 0 turns the cache off.
+ *
+ */
+public class OrderDetailCache {
+
+  // a cached detail and when it was read.
+  private static final class Entry {
+    final OrderDetail detail;
+    final long loadedAtMillis;
+
+    Entry(OrderDetail detail) {
+      this.detail = detail;
+      this.loadedAtMillis = System.currentTimeMillis();
+    }
+  }
+
+  private final GameRental _esql;
+  private final int _maxSize;
+  private final long _ttlMillis;
+
+  // orders in access order, eldest first.
+  private final LinkedHashMap < String, Entry > _orders;
+
+  private long _hits = 0;
+  private long _misses = 0;
+
+  /**
+   * Creates a new, empty order detail cache
+   *
+   * @param esql the database orders are read from
+   * @param maxSize the maximum number of orders kept
+   * @param ttlMillis how long a cached detail is served, 0 to never cache
+   */
+  public OrderDetailCache(GameRental esql, int maxSize, long ttlMillis) {
+    this._esql = esql;
+    this._maxSize = Math.max(1, maxSize);
+    this._ttlMillis = ttlMillis;
+    this._orders = new LinkedHashMap < String, Entry > (16, 0.75f, true);
+  } //end OrderDetailCache
+
+  /**
+   * Returns the detail of an order of a customer, reading it on a miss.
+   *
+   * @param login the customer asking
+   * @param rentalOrderID the order
+   * @return the detail, or null if the customer has no such order
+   * @throws java.sql.SQLException when the order could not be read
+   */
+  public OrderDetail get(String login, String rentalOrderID) throws SQLException {
+    synchronized (this) {
+      Entry entry = this._orders.get(rentalOrderID);
+      if (entry != null && System.currentTimeMillis() - entry.loadedAtMillis < this._ttlMillis
+        && entry.detail.order().login().equals(login)) {
+        ++this._hits;
+        return entry.detail;
+      } //end if
+      ++this._misses;
+    } //end synchronized
+
+    OrderDetail detail = this._esql.executeQueryForObject(OrderDetail.QUERY, OrderDetail.MAPPER, login, rentalOrderID);
+    if (detail != null && this._ttlMillis > 0)
+      put(detail);
+    return detail;
+  } //end get
+
+  /**
+   * Drops the order a tracking row belongs to, after that row was updated.
+   */
+  public synchronized void invalidateTracking(String trackingID) {
+    this._orders.values().removeIf(entry ->
+      entry.detail.tracking() != null && entry.detail.tracking().trackingID().equals(trackingID));
+  }
+
+  /**
+   * Drops every order, e.g. after game names or logins changed.
+   */
+  public synchronized void clear() {
+    this._orders.clear();
+  }
+
+  public synchronized long getHits() {
+    return this._hits;
+  }
+
+  public synchronized long getMisses() {
+    return this._misses;
+  }
+
+  public synchronized int size() {
+    return this._orders.size();
+  }
+
+  private synchronized void put(OrderDetail detail) {
+    this._orders.put(detail.order().rentalOrderID(), new Entry(detail));
+    if (this._orders.size() > this._maxSize) {
+      // evicts the least recently viewed order.
+      Iterator < Map.Entry < String, Entry >> eldest = this._orders.entrySet().iterator();
+      eldest.next();
+      eldest.remove();
+    } //end if
+  } //end put
+
+} //end OrderDetailCache
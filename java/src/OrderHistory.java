@@ -0,0 +1,233 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps a summary of the order history of recently active
+ * customers: their latest orders in a ring buffer, their number of orders
+ * and the total they spent.  placeOrder adds every new order to the
+ * summary of its customer, so the most recent orders are read without a
+ * query.  A summary is built from the database the first time a customer
+ * is looked up, and again once it is older than the time to live, which
+ * picks up orders written by other processes.
+ *
+ * The full history is paged newest first by seeking past the
+ * (orderTimestamp, rentalOrderID) of the last order shown, along
+ * rentalorder_login_ts_idx, so a deep page reads no more rows than the
+ * first.
+ *
+ */
+public class OrderHistory {
+
+  /**
+   * The order history of one customer.
+   */
+  public static final class Summary {
+    private final RentalOrder[] _ring;
+    private int _head = 0;
+    private int _size = 0;
+    private long _orderCount = 0;
+    private BigDecimal _totalSpent = BigDecimal.ZERO;
+    private boolean _loaded = false;
+    private long _loadedAtMillis = 0;
+
+    Summary(int capacity) {
+      this._ring = new RentalOrder[capacity];
+    }
+
+    /**
+     * Returns up to limit orders, most recent first.
+     */
+    public synchronized List < RentalOrder > recent(int limit) {
+      int n = Math.min(limit, this._size);
+      List < RentalOrder > orders = new ArrayList < RentalOrder > (n);
+      for (int i = 1; i <= n; ++i)
+        orders.add(this._ring[(this._head - i + this._ring.length) % this._ring.length]);
+      return orders;
+    }
+
+    public synchronized long getOrderCount() {
+      return this._orderCount;
+    }
+
+    public synchronized BigDecimal getTotalSpent() {
+      return this._totalSpent;
+    }
+
+    // the first page when the ring holds it, otherwise null.
+    private synchronized Page < RentalOrder > firstPage(int size) {
+      if (size > this._size && this._orderCount > this._size)
+        return null;
+      return new Page < RentalOrder > (recent(size), this._orderCount > size);
+    }
+
+    // overwrites the oldest order once the ring is full.
+    private void push(RentalOrder order) {
+      this._ring[this._head] = order;
+      this._head = (this._head + 1) % this._ring.length;
+      this._size = Math.min(this._size + 1, this._ring.length);
+    }
+
+    private boolean contains(String rentalOrderID) {
+      for (int i = 1; i <= this._size; ++i)
+        if (this._ring[(this._head - i + this._ring.length) % this._ring.length].rentalOrderID().equals(rentalOrderID))
+          return true;
+      return false;
+    }
+  } //end Summary
+
+  private final GameRental _esql;
+  private final int _recentOrders;
+  private final int _maxUsers;
+  private final long _ttlMillis;
+
+  // summaries in access order, eldest first.
+  private final LinkedHashMap < String, Summary > _summaries;
+
+  /**
+   * Creates a new, empty order history
+   *
+   * @param esql the database orders are read from
+   * @param recentOrders the number of latest orders kept per customer, at least 5
+   * @param maxUsers the maximum number of customers kept
+   * @param ttlMillis how long a summary is served before it is rebuilt
+   */
+  public OrderHistory(GameRental esql, int recentOrders, int maxUsers, long ttlMillis) {
+    this._esql = esql;
+    this._recentOrders = Math.max(5, recentOrders);
+    this._maxUsers = Math.max(1, maxUsers);
+    this._ttlMillis = ttlMillis;
+    this._summaries = new LinkedHashMap < String, Summary > (16, 0.75f, true);
+  } //end OrderHistory
+
+  /**
+   * Returns the summary of a customer, building it on first use.
+   *
+   * @param login the customer
+   * @throws java.sql.SQLException when the orders could not be read
+   */
+  public Summary get(String login) throws SQLException {
+    Summary summary;
+    synchronized (this) {
+      summary = this._summaries.get(login);
+      if (summary == null) {
+        summary = new Summary(this._recentOrders);
+        this._summaries.put(login, summary);
+        if (this._summaries.size() > this._maxUsers) {
+          // evicts the least recently used customer.
+          Iterator < Map.Entry < String, Summary >> eldest = this._summaries.entrySet().iterator();
+          eldest.next();
+          eldest.remove();
+        } //end if
+      } //end if
+    } //end synchronized
+    synchronized (summary) {
+      if (!summary._loaded || System.currentTimeMillis() - summary._loadedAtMillis >= this._ttlMillis)
+        load(login, summary);
+    } //end synchronized
+    return summary;
+  } //end get
+
+  /**
+   * Adds a committed order to the summary of its customer, if that
+   * summary is in memory.  Otherwise the order is read with the rest when
+   * the summary is built.
+   */
+  public void recordOrder(RentalOrder order) {
+    Summary summary;
+    synchronized (this) {
+      summary = this._summaries.get(order.login());
+    } //end synchronized
+    if (summary == null)
+      return;
+    synchronized (summary) {
+      // a build that ran after the commit already has the order.
+      if (!summary._loaded || summary.contains(order.rentalOrderID()))
+        return;
+      summary.push(order);
+      ++summary._orderCount;
+      summary._totalSpent = summary._totalSpent.add(order.totalPrice());
+    } //end synchronized
+  } //end recordOrder
+
+  /**
+   * Returns one page of a customer's orders, newest first.  The first page
+   * comes from the summary when it holds enough orders.
+   *
+   * @param login the customer
+   * @param after the last order of the previous page, null for the first page
+   * @param size the number of orders per page
+   * @throws java.sql.SQLException when the orders could not be read
+   */
+  public Page < RentalOrder > page(String login, RentalOrder after, int size) throws SQLException {
+    if (after == null) {
+      Page < RentalOrder > first = get(login).firstPage(size);
+      if (first != null)
+        return first;
+    } //end if
+    String query = "SELECT " + RentalOrder.COLUMNS + " FROM RentalOrder WHERE login = ? " +
+      (after == null ? "" : "AND (orderTimestamp, rentalOrderID) < (?, ?) ") +
+      "ORDER BY orderTimestamp DESC, rentalOrderID DESC LIMIT ?;";
+    // one row more than the page tells whether another page follows.
+    List < RentalOrder > orders = after == null
+      ? this._esql.executeQueryAndMap(query, RentalOrder.MAPPER, login, size + 1)
+      : this._esql.executeQueryAndMap(query, RentalOrder.MAPPER, login, after.orderTimestamp(), after.rentalOrderID(), size + 1);
+    boolean hasMore = orders.size() > size;
+    return new Page < RentalOrder > (hasMore ? orders.subList(0, size) : orders, hasMore);
+  } //end page
+
+  /**
+   * Drops the summary of a customer, e.g. after the login changed.
+   */
+  public synchronized void invalidate(String login) {
+    this._summaries.remove(login);
+  }
+
+  // reads the latest orders, the count and the total in one statement, so
+  // they come from one snapshot.  The orders are a LIMIT scan that stops
+  // after the ring is full; the totals are an index-only aggregate.
+  private void load(String login, Summary summary) throws SQLException {
+    final List < RentalOrder > latest = new ArrayList < RentalOrder > ();
+    final long[] count = { 0 };
+    final BigDecimal[] total = { BigDecimal.ZERO };
+    String query = "WITH Totals AS (SELECT count(*) AS orders, COALESCE(sum(totalPrice), 0) AS spent " +
+      "FROM RentalOrder WHERE login = ?) " +
+      "SELECT " + RentalOrder.COLUMNS + ", T.orders, T.spent FROM Totals T LEFT JOIN (" +
+      "SELECT " + RentalOrder.COLUMNS + " FROM RentalOrder WHERE login = ? " +
+      "ORDER BY orderTimestamp DESC, rentalOrderID DESC LIMIT " + this._recentOrders + ") L ON true " +
+      "ORDER BY orderTimestamp DESC, rentalOrderID DESC;";
+    this._esql.executeQueryForEach(query, rs -> {
+      // a customer without orders gets one row of totals only.
+      if (rs.getString(1) != null)
+        latest.add(RentalOrder.MAPPER.map(rs));
+      count[0] = rs.getLong(7);
+      total[0] = rs.getBigDecimal(8);
+    }, login, login);
+
+    summary._head = 0;
+    summary._size = 0;
+    for (int i = latest.size() - 1; i >= 0; --i)
+      summary.push(latest.get(i));
+    summary._orderCount = count[0];
+    summary._totalSpent = total[0];
+    summary._loaded = true;
+    summary._loadedAtMillis = System.currentTimeMillis();
+  } //end load
+
+} //end OrderHistory
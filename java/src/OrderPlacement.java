@@ -0,0 +1,188 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class places rental orders.  All prices of an order are fetched
+ * with one query, the GamesInOrder rows are written as one JDBC batch, and
+ * the RentalOrder, TrackingInfo and GamesInOrder rows commit in a single
+ * transaction, so an order costs the same number of round trips no matter
+ * how many games it holds and a failure never leaves half an order behind.
+ *
+ */
+public class OrderPlacement {
+
+  // number of days a rental is due after the order.
+  static final int RENTAL_DAYS = 20;
+
+  private static final String INSERT_ORDER =
+    "INSERT INTO RentalOrder(rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate) VALUES (?, ?, ?, ?, ?, ?);";
+  private static final String INSERT_TRACKING =
+    "INSERT INTO TrackingInfo(trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate, additionalComments) " +
+    "VALUES (?, ?, 'Out for Delivery', 'DHL', 'Bob', ?, '');";
+  private static final String INSERT_GAME =
+    "INSERT INTO GamesInOrder(rentalOrderID, gameID, unitsOrdered) VALUES (?, ?, ?);";
+
+  /**
+   * The IDs and total of a committed order.
+   */
+  public static final class Receipt {
+    private final String _rentalOrderID;
+    private final String _trackingID;
+    private final BigDecimal _totalPrice;
+    private final Timestamp _orderTimestamp;
+    private final Timestamp _dueDate;
+
+    Receipt(String rentalOrderID, String trackingID, BigDecimal totalPrice,
+      Timestamp orderTimestamp, Timestamp dueDate) {
+      this._rentalOrderID = rentalOrderID;
+      this._trackingID = trackingID;
+      this._totalPrice = totalPrice;
+      this._orderTimestamp = orderTimestamp;
+      this._dueDate = dueDate;
+    }
+
+    public String getRentalOrderID() {
+      return this._rentalOrderID;
+    }
+
+    public String getTrackingID() {
+      return this._trackingID;
+    }
+
+    public BigDecimal getTotalPrice() {
+      return this._totalPrice;
+    }
+
+    public Timestamp getOrderTimestamp() {
+      return this._orderTimestamp;
+    }
+
+    public Timestamp getDueDate() {
+      return this._dueDate;
+    }
+  } //end Receipt
+
+  private final GameRental _esql;
+
+  public OrderPlacement(GameRental esql) {
+    this._esql = esql;
+  }
+
+  /**
+   * Places an order for a customer
+   *
+   * @param login the customer placing the order
+   * @param gameIds the ordered games, one entry per order line
+   * @param units the copies ordered on each line
+   * @return the receipt of the committed order
+   * @throws java.sql.SQLException when a game does not exist or the order could not be written
+   */
+  public Receipt place(String login, List < String > gameIds, List < Integer > units) throws SQLException {
+    if (gameIds.isEmpty())
+      throw new SQLException("An order needs at least one game");
+
+    // the same game entered twice becomes one GamesInOrder row.
+    final LinkedHashMap < String, Integer > lines = new LinkedHashMap < String, Integer > ();
+    for (int i = 0; i < gameIds.size(); ++i) {
+      if (units.get(i) <= 0)
+        throw new SQLException("Units ordered must be positive for " + gameIds.get(i));
+      lines.merge(gameIds.get(i).trim(), units.get(i), Integer::sum);
+    } //end for
+
+    final String orderId = this._esql.getOrderIds().nextId();
+    final String trackingId = this._esql.getTrackingIds().nextId();
+    final Timestamp orderTime = new Timestamp(System.currentTimeMillis());
+    Calendar due = Calendar.getInstance();
+    due.setTime(orderTime);
+    due.add(Calendar.DAY_OF_MONTH, RENTAL_DAYS);
+    final Timestamp dueDate = new Timestamp(due.getTimeInMillis());
+
+    // the copies are set aside first, so two orders never rent the same copy.
+    Inventory.Reservation reservation = this._esql.getInventory().reserve(lines);
+    Receipt receipt;
+    try {
+      receipt = this._esql.executeTransaction(conn -> {
+        Map < String, BigDecimal > prices = fetchPrices(conn, new ArrayList < String > (lines.keySet()));
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry < String, Integer > line: lines.entrySet()) {
+          BigDecimal price = prices.get(line.getKey());
+          if (price == null)
+            throw new SQLException("No game with gameID " + line.getKey());
+          total = total.add(price.multiply(BigDecimal.valueOf(line.getValue())));
+        } //end for
+
+        conn.prepare(INSERT_ORDER, orderId, login, gameIds.size(), total, orderTime, dueDate).executeUpdate();
+        conn.prepare(INSERT_TRACKING, trackingId, orderId, orderTime).executeUpdate();
+
+        PreparedStatement insertGame = conn.prepare(INSERT_GAME);
+        for (Map.Entry < String, Integer > line: lines.entrySet()) {
+          insertGame.setString(1, orderId);
+          insertGame.setString(2, line.getKey());
+          insertGame.setInt(3, line.getValue());
+          insertGame.addBatch();
+        } //end for
+        insertGame.executeBatch();
+
+        return new Receipt(orderId, trackingId, total, orderTime, dueDate);
+      });
+    } catch (SQLException | RuntimeException e) {
+      reservation.release();
+      throw e;
+    } //end try
+    // written, so its copies count as rented
+    reservation.commit();
+
+    // committed, so the customer's cached history can show it
+    this._esql.getOrderHistory().recordOrder(
+      new RentalOrder(orderId, login, gameIds.size(), receipt.getTotalPrice(), orderTime, dueDate));
+    this._esql.getCoRentals().recordOrder(orderId, lines.keySet());
+    return receipt;
+  } //end place
+
+  /**
+   * Looks up the prices of several games with one query.  The IN list is
+   * padded to a power of two so only a handful of statement shapes end up
+   * in the statement cache.
+   */
+  static Map < String, BigDecimal > fetchPrices(PooledConnection conn, List < String > gameIds) throws SQLException {
+    int width = 1;
+    while (width < gameIds.size())
+      width <<= 1;
+    StringBuilder sql = new StringBuilder("SELECT gameID, price FROM Catalog WHERE gameID IN (");
+    Object[] params = new Object[width];
+    for (int i = 0; i < width; ++i) {
+      sql.append(i == 0 ? "?" : ", ?");
+      params[i] = gameIds.get(Math.min(i, gameIds.size() - 1));
+    } //end for
+    sql.append(");");
+
+    Map < String, BigDecimal > prices = new HashMap < String, BigDecimal > ();
+    ResultSet rs = conn.prepare(sql.toString(), params).executeQuery();
+    while (rs.next())
+      prices.put(rs.getString(1), rs.getBigDecimal(2));
+    rs.close();
+    return prices;
+  } //end fetchPrices
+
+} //end OrderPlacement
@@ -0,0 +1,57 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.  The next page is requested
+ * with the last item of this one as the key to continue after, so every
+ * page costs the same however deep the listing goes.
+ *
+ */
+public final class Page < T > {
+
+  private final List < T > _items;
+  private final boolean _hasMore;
+
+  /**
+   * Creates a new page
+   *
+   * @param items the items of the page, in listing order
+   * @param hasMore true if items follow this page
+   */
+  public Page(List < T > items, boolean hasMore) {
+    this._items = Collections.unmodifiableList(items);
+    this._hasMore = hasMore;
+  } //end Page
+
+  public List < T > getItems() {
+    return this._items;
+  }
+
+  public boolean hasMore() {
+    return this._hasMore;
+  }
+
+  public boolean isEmpty() {
+    return this._items.isEmpty();
+  }
+
+  /**
+   * Returns the key to request the next page with, null on an empty page.
+   */
+  public T last() {
+    return this._items.isEmpty() ? null : this._items.get(this._items.size() - 1);
+  }
+
+} //end Page
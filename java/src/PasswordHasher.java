@@ -0,0 +1,125 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * This class hashes and verifies user passwords with salted
+ * PBKDF2-HMAC-SHA256.  A stored hash reads
+ * pbkdf2-sha256$<iterations>$<salt>$<hash>, salt and hash in base64, so
+ * the work factor can be raised without invalidating existing hashes.
+ * Values without that prefix are legacy plaintext passwords; they still
+ * verify, and needsRehash reports them for upgrading.
+ *
+ */
+public class PasswordHasher {
+
+  static final String PREFIX = "pbkdf2-sha256$";
+  private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+  private static final int SALT_BYTES = 16;
+  private static final int HASH_BITS = 256;
+
+  private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+  private final SecureRandom _random = new SecureRandom();
+  private final int _iterations;
+
+  // verified when the user does not exist, so a miss takes as long as a hit.
+  private final String _dummy;
+
+  /**
+   * Creates a new hasher
+   *
+   * @param iterations the PBKDF2 work factor for new hashes
+   */
+  public PasswordHasher(int iterations) {
+    this._iterations = Math.max(1, iterations);
+    this._dummy = hash("");
+  } //end PasswordHasher
+
+  /**
+   * Returns a new salted hash of a password.
+   */
+  public String hash(String password) {
+    byte[] salt = new byte[SALT_BYTES];
+    this._random.nextBytes(salt);
+    return PREFIX + this._iterations + "$" + ENCODER.encodeToString(salt) + "$"
+      + ENCODER.encodeToString(pbkdf2(password, salt, this._iterations));
+  }
+
+  /**
+   * Checks a password against a stored hash in constant time.
+   *
+   * @param password the password the user typed
+   * @param stored the stored hash or legacy plaintext, null for an unknown user
+   * @return true if the password matches
+   */
+  public boolean verify(String password, String stored) {
+    if (password == null)
+      password = "";
+    if (stored == null) {
+      verify(password, this._dummy);
+      return false;
+    } //end if
+    if (!stored.startsWith(PREFIX))
+      return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+    String[] parts = stored.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 3)
+      return false;
+    try {
+      byte[] expected = DECODER.decode(parts[2]);
+      byte[] actual = pbkdf2(password, DECODER.decode(parts[1]), Integer.parseInt(parts[0]));
+      return MessageDigest.isEqual(expected, actual);
+    } catch (IllegalArgumentException e) {
+      // a malformed hash never matches.
+      return false;
+    } //end try
+  } //end verify
+
+  /**
+   * Returns true if a stored value is plaintext or hashed with fewer
+   * iterations than this hasher uses.
+   */
+  public boolean needsRehash(String stored) {
+    if (stored == null || !stored.startsWith(PREFIX))
+      return true;
+    int end = stored.indexOf('$', PREFIX.length());
+    try {
+      return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < this._iterations;
+    } catch (NumberFormatException e) {
+      return true;
+    } //end try
+  } //end needsRehash
+
+  public int getIterations() {
+    return this._iterations;
+  }
+
+  private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+    try {
+      return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    } finally {
+      spec.clearPassword();
+    } //end try
+  } //end pbkdf2
+
+} //end PasswordHasher
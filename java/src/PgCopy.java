@@ -0,0 +1,85 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * This class streams client-side data into COPY ... FROM STDIN through
+ * the CopyManager of the PostgreSQL JDBC driver.  The driver is reached
+ * by reflection so the application still compiles against the bundled
+ * pg73 driver, which has no COPY support.
+ *
+ */
+public class PgCopy {
+
+  private PgCopy() {
+  }
+
+  /**
+   * Returns true if the driver behind the connection supports COPY.
+   */
+  public static boolean isSupported(Connection conn) {
+    try {
+      copyManager(conn);
+      return true;
+    } catch (SQLException e) {
+      return false;
+    } //end try
+  }
+
+  /**
+   * Runs a COPY ... FROM STDIN statement fed from a stream.
+   *
+   * @param conn the connection to copy on
+   * @param sql the COPY statement
+   * @param in the rows, in the format the statement names
+   * @return the number of rows copied
+   * @throws java.sql.SQLException when the driver cannot copy or the server rejects the data
+   * @throws java.io.IOException when the stream cannot be read
+   */
+  public static long copyIn(Connection conn, String sql, InputStream in) throws SQLException, IOException {
+    Object manager = copyManager(conn);
+    try {
+      Method copyIn = manager.getClass().getMethod("copyIn", String.class, InputStream.class);
+      return ((Number) copyIn.invoke(manager, sql, in)).longValue();
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException)
+        throw (SQLException) cause;
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new SQLException("COPY failed: " + cause);
+    } catch (ReflectiveOperationException e) {
+      throw new SQLException("COPY failed: " + e);
+    } //end try
+  } //end copyIn
+
+  // the driver's CopyManager for this connection.
+  private static Object copyManager(Connection conn) throws SQLException {
+    try {
+      Class < ? > pgConnection = Class.forName("org.postgresql.PGConnection", false, conn.getClass().getClassLoader());
+      if (!pgConnection.isInstance(conn))
+        throw new SQLException("Not a PostgreSQL connection: " + conn.getClass().getName());
+      return pgConnection.getMethod("getCopyAPI").invoke(conn);
+    } catch (InvocationTargetException e) {
+      throw new SQLException("COPY is not available: " + e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new SQLException("COPY needs PostgreSQL JDBC 8.4 or newer, this driver has none");
+    } //end try
+  } //end copyManager
+
+} //end PgCopy
@@ -0,0 +1,109 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * This class is one physical database connection owned by a
+ * ConnectionPool, together with the prepared statements cached on it.
+ * A pooled connection is used by one thread at a time, between a borrow
+ * and the matching release.
+ *
+ */
+public class PooledConnection {
+
+  // reference to physical database connection.
+  private final Connection _connection;
+
+  // prepared statements of the physical connection, keyed by SQL text.
+  private final StatementCache _statementCache;
+
+  // time the connection was last handed back to the pool.
+  private long _lastUsedMillis;
+
+  public PooledConnection(Connection connection, int statementCacheSize) {
+    this._connection = connection;
+    this._statementCache = new StatementCache(connection, statementCacheSize);
+    this._lastUsedMillis = System.currentTimeMillis();
+  } //end PooledConnection
+
+  public Connection getConnection() {
+    return this._connection;
+  }
+
+  public StatementCache getStatementCache() {
+    return this._statementCache;
+  }
+
+  /**
+   * Prepares a SQL statement through the statement cache and binds its
+   * parameters.  Every '?' in the SQL string is bound, in order, to one
+   * of the given parameters.
+   *
+   * @param sql the input SQL string
+   * @param params the values bound to the statement placeholders
+   * @return the prepared statement, owned by the statement cache
+   * @throws java.sql.SQLException when the statement could not be prepared
+   */
+  public PreparedStatement prepare(String sql, Object... params) throws SQLException {
+    PreparedStatement stmt = this._statementCache.prepare(sql);
+    stmt.clearParameters();
+    for (int i = 0; i < params.length; ++i) {
+      if (params[i] == null)
+        stmt.setNull(i + 1, Types.VARCHAR);
+      else
+        stmt.setObject(i + 1, params[i]);
+    } //end for
+    return stmt;
+  } //end prepare
+
+  /**
+   * Checks that the physical connection still answers a trivial query.
+   *
+   * @return true if the connection is usable
+   */
+  public boolean validate() {
+    try {
+      ResultSet rs = prepare("SELECT 1").executeQuery();
+      boolean ok = rs.next();
+      rs.close();
+      return ok;
+    } catch (SQLException e) {
+      return false;
+    } //end try
+  } //end validate
+
+  long getLastUsedMillis() {
+    return this._lastUsedMillis;
+  }
+
+  void touch() {
+    this._lastUsedMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Closes the cached statements and the physical connection.
+   */
+  public void close() {
+    this._statementCache.close();
+    try {
+      this._connection.close();
+    } catch (SQLException e) {
+      // ignored.
+    } //end try
+  } //end close
+
+} //end PooledConnection
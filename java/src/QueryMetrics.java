@@ -0,0 +1,348 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class records how long the database calls of every menu operation
+ * take.  Each menu action tags its thread with an operation name, and the
+ * JDBC helpers of GameRental report the latency, the rows and any failure
+ * of every call under that tag.  Latencies go into a log-linear histogram
+ * with 32 buckets per power of two, so percentiles are within about 3%
+ * with a fixed memory footprint and no locking on the recording path.
+ *
+ * The numbers are printed by the managers' metrics menu, published over
+ * JMX, and served in the Prometheus text format at /metrics when
+ * gamerental.metrics.port is set.
+ *
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+  // the operation tag of calls made outside any menu action.
+  static final String UNTAGGED = "other";
+
+  // the percentiles printed and exported.
+  private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+  private static final ThreadLocal < String > OPERATION = ThreadLocal.withInitial(() -> UNTAGGED);
+
+  /**
+   * A latency histogram in microseconds.  Values below 64 have a bucket
+   * each; above that every power of two is split into 32 buckets.  Values
+   * beyond about 2^40 us land in the last bucket.
+   */
+  static final class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_SHIFT = 36;
+    private static final int BUCKETS = 2 * SUB + MAX_SHIFT * SUB;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder _total = new LongAdder();
+    private final LongAdder _sumMicros = new LongAdder();
+    private final AtomicLong _maxMicros = new AtomicLong();
+
+    void record(long micros) {
+      long value = Math.max(0, micros);
+      this._counts.incrementAndGet(bucket(value));
+      this._total.increment();
+      this._sumMicros.add(value);
+      this._maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    long getCount() {
+      return this._total.sum();
+    }
+
+    long getSumMicros() {
+      return this._sumMicros.sum();
+    }
+
+    long getMaxMicros() {
+      return this._maxMicros.get();
+    }
+
+    /**
+     * Returns the highest value of the bucket holding a percentile, never
+     * more than the largest value recorded.
+     */
+    long percentileMicros(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+        counts[i] = this._counts.get(i);
+        total += counts[i];
+      } //end for
+      if (total == 0)
+        return 0;
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+        seen += counts[i];
+        if (seen >= rank)
+          return Math.min(highestInBucket(i), getMaxMicros());
+      } //end for
+      return getMaxMicros();
+    } //end percentileMicros
+
+    static int bucket(long value) {
+      if (value < 2 * SUB)
+        return (int) value;
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      if (shift > MAX_SHIFT)
+        return BUCKETS - 1;
+      return 2 * SUB + (shift - 1) * SUB + (int) (value >> shift) - SUB;
+    }
+
+    static long highestInBucket(int bucket) {
+      if (bucket < 2 * SUB)
+        return bucket;
+      int shift = (bucket - 2 * SUB) / SUB + 1;
+      long top = (bucket - 2 * SUB) % SUB + SUB;
+      return ((top + 1) << shift) - 1;
+    }
+  } //end Histogram
+
+  // what was recorded for one operation.
+  private static final class Operation {
+    final LongAdder errors = new LongAdder();
+    final LongAdder rows = new LongAdder();
+    final Histogram latency = new Histogram();
+  }
+
+  private final ConcurrentHashMap < String, Operation > _operations = new ConcurrentHashMap < String, Operation > ();
+
+  private HttpServer _http = null;
+  private ObjectName _jmxName = null;
+
+  /**
+   * Tags the calls this thread makes from now on with an operation name.
+   */
+  public static void setOperation(String operation) {
+    OPERATION.set(operation);
+  }
+
+  public static String getOperation() {
+    return OPERATION.get();
+  }
+
+  /**
+   * Records one database call of the current operation
+   *
+   * @param startNanos System.nanoTime() when the call began
+   * @param rows the rows returned or changed, negative when the call failed
+   */
+  public void record(long startNanos, long rows) {
+    long micros = (System.nanoTime() - startNanos) / 1000;
+    Operation op = this._operations.computeIfAbsent(OPERATION.get(), name -> new Operation());
+    op.latency.record(micros);
+    if (rows < 0)
+      op.errors.increment();
+    else
+      op.rows.add(rows);
+  } //end record
+
+  @Override
+  public String[] getOperations() {
+    return snapshot().keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getCalls(String operation) {
+    Operation op = this._operations.get(operation);
+    return op == null ? 0 : op.latency.getCount();
+  }
+
+  @Override
+  public long getErrors(String operation) {
+    Operation op = this._operations.get(operation);
+    return op == null ? 0 : op.errors.sum();
+  }
+
+  @Override
+  public long getRows(String operation) {
+    Operation op = this._operations.get(operation);
+    return op == null ? 0 : op.rows.sum();
+  }
+
+  @Override
+  public double getLatencyMillis(String operation, double percentile) {
+    Operation op = this._operations.get(operation);
+    return op == null ? 0 : op.latency.percentileMicros(percentile) / 1000.0;
+  }
+
+  @Override
+  public String getReport() {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(buf, true);
+    print(out);
+    return new String(buf.toByteArray());
+  }
+
+  @Override
+  public void reset() {
+    this._operations.clear();
+  }
+
+  /**
+   * Prints calls, errors, rows and latency percentiles per operation.
+   */
+  public void print(PrintStream out) {
+    out.printf("| %-20s %8s %6s %10s %9s %9s %9s %9s %9s%n",
+      "operation", "calls", "errors", "rows", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    for (Map.Entry < String, Operation > entry: snapshot().entrySet()) {
+      Operation op = entry.getValue();
+      out.printf("| %-20s %8d %6d %10d", entry.getKey(), op.latency.getCount(), op.errors.sum(), op.rows.sum());
+      for (double p: PERCENTILES)
+        out.printf(" %9.3f", op.latency.percentileMicros(p) / 1000.0);
+      out.printf(" %9.3f%n", op.latency.getMaxMicros() / 1000.0);
+    } //end for
+  } //end print
+
+  /**
+   * Writes the metrics in the Prometheus text exposition format.
+   */
+  public void writePrometheus(OutputStream stream) throws IOException {
+    StringBuilder out = new StringBuilder();
+    SortedMap < String, Operation > operations = snapshot();
+    out.append("# HELP gamerental_query_seconds Latency of database calls by menu operation.\n");
+    out.append("# TYPE gamerental_query_seconds summary\n");
+    for (Map.Entry < String, Operation > entry: operations.entrySet()) {
+      Histogram latency = entry.getValue().latency;
+      String label = "operation=\"" + escapeLabel(entry.getKey()) + "\"";
+      for (double p: PERCENTILES)
+        out.append("gamerental_query_seconds{").append(label).append(",quantile=\"")
+          .append(BigDecimal.valueOf(p).movePointLeft(2).stripTrailingZeros().toPlainString()).append("\"} ")
+          .append(seconds(latency.percentileMicros(p))).append('\n');
+      out.append("gamerental_query_seconds_sum{").append(label).append("} ")
+        .append(seconds(latency.getSumMicros())).append('\n');
+      out.append("gamerental_query_seconds_count{").append(label).append("} ")
+        .append(latency.getCount()).append('\n');
+    } //end for
+    counter(out, operations, "gamerental_query_rows_total", "Rows returned or changed by database calls.", false);
+    counter(out, operations, "gamerental_query_errors_total", "Database calls that failed.", true);
+    stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+  } //end writePrometheus
+
+  /**
+   * Registers the metrics as the MBean GameRental:type=QueryMetrics.  An
+   * earlier registration, e.g. of another GameRental in the same JVM, is
+   * replaced.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("GameRental:type=QueryMetrics");
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(this, name);
+      this._jmxName = name;
+    } catch (JMException e) {
+      GameRental.err().println("Query metrics not published over JMX: " + e.getMessage());
+    } //end try
+  } //end registerMBean
+
+  /**
+   * Serves /metrics in the Prometheus text format
+   *
+   * @param bind the address to listen on
+   * @param port the TCP port, 0 picks a free one
+   * @return the port listened on
+   * @throws java.io.IOException when the port cannot be bound
+   */
+  public int serve(String bind, int port) throws IOException {
+    HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getByName(bind), port), 16);
+    http.createContext("/metrics", exchange -> {
+      try {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writePrometheus(body);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+          body.writeTo(out);
+        } //end try
+      } finally {
+        exchange.close();
+      } //end try
+    });
+    http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "metrics-http");
+      t.setDaemon(true);
+      return t;
+    }));
+    http.start();
+    this._http = http;
+    return http.getAddress().getPort();
+  } //end serve
+
+  /**
+   * Stops the HTTP endpoint and removes the MBean.
+   */
+  public void close() {
+    if (this._http != null)
+      this._http.stop(0);
+    if (this._jmxName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(this._jmxName);
+      } catch (JMException e) {
+        // already gone.
+      } //end try
+    } //end if
+  } //end close
+
+  private static void counter(StringBuilder out, SortedMap < String, Operation > operations, String metric,
+    String help, boolean errors) {
+    out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(metric).append(" counter\n");
+    for (Map.Entry < String, Operation > entry: operations.entrySet()) {
+      Operation op = entry.getValue();
+      out.append(metric).append("{operation=\"").append(escapeLabel(entry.getKey())).append("\"} ")
+        .append(errors ? op.errors.sum() : op.rows.sum()).append('\n');
+    } //end for
+  }
+
+  // the operations by name, copied so a reset() meanwhile cannot take them away.
+  private SortedMap < String, Operation > snapshot() {
+    return new TreeMap < String, Operation > (this._operations);
+  }
+
+  private static String seconds(long micros) {
+    return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+  }
+
+  static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+} //end QueryMetrics
@@ -0,0 +1,48 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * The JMX view of QueryMetrics, registered as GameRental:type=QueryMetrics.
+ *
+ */
+public interface QueryMetricsMBean {
+
+  /**
+   * Returns the operations that ran at least one database call.
+   */
+  String[] getOperations();
+
+  long getCalls(String operation);
+
+  long getErrors(String operation);
+
+  long getRows(String operation);
+
+  /**
+   * Returns a latency percentile of an operation in milliseconds
+   *
+   * @param operation the operation tag
+   * @param percentile between 0 and 100
+   */
+  double getLatencyMillis(String operation, double percentile);
+
+  /**
+   * Returns the table printed by the metrics menu.
+   */
+  String getReport();
+
+  /**
+   * Forgets everything recorded so far.
+   */
+  void reset();
+
+} //end QueryMetricsMBean
@@ -0,0 +1,29 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * One row of the RentalOrder table.
+ *
+ */
+public record RentalOrder(String rentalOrderID, String login, int noOfGames, BigDecimal totalPrice,
+  Timestamp orderTimestamp, Timestamp dueDate) {
+
+  // SELECT list read by MAPPER.
+  public static final String COLUMNS = "rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate";
+
+  public static final RowMapper < RentalOrder > MAPPER = rs -> new RentalOrder(
+    rs.getString(1), rs.getString(2), rs.getInt(3), rs.getBigDecimal(4),
+    rs.getTimestamp(5), rs.getTimestamp(6));
+}
@@ -0,0 +1,259 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class decides which database a call goes to.  Calls made by the
+ * read-only menu operations are spread round robin over the healthy read
+ * replicas; everything else, and every write, stays on the primary.
+ *
+ * A background thread checks every replica periodically and records how
+ * far it has replayed the primary's write-ahead log.  After a session
+ * writes, its reads stay on the primary until a replica has replayed the
+ * write, or at most for the sticky time, so a customer always sees the
+ * order they just placed.
+ *
+ */
+public class ReplicaRouter {
+
+  // menu operations whose database calls only read.
+  static final Set < String > READ_ONLY = Collections.unmodifiableSet(new HashSet < String > (Arrays.asList(
+    "viewProfile", "searchByGenre", "searchByPrice", "searchByName", "viewRecentOrders", "viewAllOrders",
+    "viewOrderInfo", "viewTrackingInfo")));
+
+  private static final String CHECK = "SELECT pg_is_in_recovery(), pg_last_wal_replay_lsn()::text";
+  private static final String WAL_POSITION = "SELECT pg_current_wal_lsn()::text";
+
+  // one read replica and what the last check found.
+  private static final class Replica {
+    final String url;
+    final ConnectionPool pool;
+    final AtomicLong reads = new AtomicLong();
+    volatile boolean up = false;
+    // replayed WAL position, -1 when the server is not a standby.
+    volatile long replayLsn = -1;
+    volatile String error = null;
+
+    Replica(String url, ConnectionPool pool) {
+      this.url = url;
+      this.pool = pool;
+    }
+  }
+
+  // the WAL position a session wrote up to and how long it waits for it.
+  private static final class Pin {
+    final long lsn;
+    final long untilMillis;
+
+    Pin(long lsn, long untilMillis) {
+      this.lsn = lsn;
+      this.untilMillis = untilMillis;
+    }
+  }
+
+  private final ConnectionPool _primary;
+  private final Replica[] _replicas;
+  private final long _stickyMillis;
+  private final ThreadLocal < Pin > _pins = new ThreadLocal < Pin > ();
+  private final AtomicInteger _next = new AtomicInteger();
+  private final AtomicLong _primaryReads = new AtomicLong();
+  private final ScheduledExecutorService _checker;
+
+  /**
+   * Creates a new router and checks its replicas once
+   *
+   * @param primary the pool of the primary database
+   * @param urls the JDBC URLs of the read replicas, possibly none
+   * @param user the user name used to login to the replicas
+   * @param passwd the password of the user
+   * @param checkMillis the time between two health checks
+   * @param stickyMillis the longest time reads stay on the primary after a write
+   */
+  public ReplicaRouter(ConnectionPool primary, List < String > urls, String user, String passwd,
+    long checkMillis, long stickyMillis) throws SQLException {
+    this._primary = primary;
+    this._stickyMillis = stickyMillis;
+    this._replicas = new Replica[urls.size()];
+    for (int i = 0; i < this._replicas.length; ++i)
+      // replicas connect on first use, so one that is down does not stop the store.
+      this._replicas[i] = new Replica(urls.get(i), ConnectionPool.fromSystemProperties(urls.get(i), user, passwd, 0));
+    if (this._replicas.length == 0) {
+      this._checker = null;
+      return;
+    } //end if
+    check();
+    this._checker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "replica-health");
+      t.setDaemon(true);
+      return t;
+    });
+    long period = Math.max(100, checkMillis);
+    this._checker.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+  } //end ReplicaRouter
+
+  /**
+   * Creates the router configured by the gamerental.replicas* system
+   * properties.  gamerental.replicas lists the replicas, comma separated,
+   * each as host:port of a server holding the same database or as a full
+   * JDBC URL.
+   */
+  public static ReplicaRouter fromSystemProperties(ConnectionPool primary, String dbname, String user, String passwd)
+    throws SQLException {
+    List < String > urls = new ArrayList < String > ();
+    for (String entry: System.getProperty("gamerental.replicas", "").split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty())
+        continue;
+      urls.add(entry.startsWith("jdbc:") ? entry : "jdbc:postgresql://" + entry + "/" + dbname);
+    } //end for
+    return new ReplicaRouter(primary, urls, user, passwd,
+      Long.getLong("gamerental.replicas.checkMillis", 1000L),
+      Long.getLong("gamerental.replicas.stickyMillis", 10000L));
+  } //end fromSystemProperties
+
+  /**
+   * Returns the pool the next call of this thread should borrow from: a
+   * replica when the current menu operation only reads and a replica has
+   * caught up with the session's last write, the primary otherwise.
+   */
+  public ConnectionPool route() {
+    int n = this._replicas.length;
+    if (n == 0 || !READ_ONLY.contains(QueryMetrics.getOperation()))
+      return this._primary;
+    long needed = 0;
+    Pin pin = this._pins.get();
+    if (pin != null) {
+      if (System.currentTimeMillis() < pin.untilMillis)
+        needed = pin.lsn;
+      else
+        this._pins.remove();
+    } //end if
+    int start = this._next.getAndIncrement();
+    for (int i = 0; i < n; ++i) {
+      Replica replica = this._replicas[Math.floorMod(start + i, n)];
+      if (replica.up && (needed == 0 || replica.replayLsn >= needed)) {
+        replica.reads.incrementAndGet();
+        return replica.pool;
+      } //end if
+    } //end for
+    this._primaryReads.incrementAndGet();
+    return this._primary;
+  } //end route
+
+  /**
+   * Records that this thread just committed a write on a primary
+   * connection, so its reads wait for the replicas to replay it.
+   *
+   * @param conn the primary connection the write committed on
+   */
+  public void wrote(PooledConnection conn) {
+    if (this._replicas.length == 0)
+      return;
+    long lsn = Long.MAX_VALUE;
+    try {
+      ResultSet rs = conn.prepare(WAL_POSITION).executeQuery();
+      if (rs.next())
+        lsn = parseLsn(rs.getString(1));
+      rs.close();
+    } catch (SQLException e) {
+      // without the position, reads stay on the primary for the whole sticky time.
+    } //end try
+    this._pins.set(new Pin(lsn, System.currentTimeMillis() + this._stickyMillis));
+  } //end wrote
+
+  /**
+   * Keeps the reads of this thread on the primary for the sticky time, for
+   * writes that are made later on another thread.
+   */
+  public void pin() {
+    if (this._replicas.length > 0)
+      this._pins.set(new Pin(Long.MAX_VALUE, System.currentTimeMillis() + this._stickyMillis));
+  }
+
+  public int getReplicaCount() {
+    return this._replicas.length;
+  }
+
+  /**
+   * Prints every database with its health and the reads sent to it.
+   */
+  public void print(PrintStream out) {
+    out.printf("| %-40s %-5s %14s %10s%n", "database", "state", "replayed", "reads");
+    out.printf("| %-40s %-5s %14s %10d%n", "primary", "up", "", this._primaryReads.get());
+    for (Replica replica: this._replicas) {
+      out.printf("| %-40s %-5s %14s %10d%n", replica.url, replica.up ? "up" : "down",
+        replica.replayLsn < 0 ? "" : formatLsn(replica.replayLsn), replica.reads.get());
+      if (!replica.up && replica.error != null)
+        out.println("|   " + replica.error);
+    } //end for
+  } //end print
+
+  /**
+   * Stops the health checks and closes the replica pools.
+   */
+  public void close() {
+    if (this._checker != null)
+      this._checker.shutdownNow();
+    for (Replica replica: this._replicas)
+      replica.pool.close();
+  }
+
+  // asks every replica whether it answers and how much WAL it has replayed.
+  private void check() {
+    for (Replica replica: this._replicas) {
+      PooledConnection conn = null;
+      try {
+        conn = replica.pool.borrow();
+        ResultSet rs = conn.prepare(CHECK).executeQuery();
+        rs.next();
+        boolean standby = rs.getBoolean(1);
+        String replayed = rs.getString(2);
+        rs.close();
+        long replayLsn = standby && replayed != null ? parseLsn(replayed) : -1;
+        replica.pool.release(conn);
+        replica.replayLsn = replayLsn;
+        replica.error = null;
+        replica.up = true;
+      } catch (SQLException | RuntimeException e) {
+        // the connection may be broken, so it is not reused.
+        replica.pool.invalidate(conn);
+        replica.up = false;
+        replica.error = e.getMessage();
+      } //end try
+    } //end for
+  } //end check
+
+  // a pg_lsn such as 16/B374D848 as one number.
+  static long parseLsn(String lsn) {
+    int slash = lsn.indexOf('/');
+    return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+  }
+
+  static String formatLsn(long lsn) {
+    return Long.toHexString(lsn >>> 32).toUpperCase() + "/" + Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+  }
+
+} //end ReplicaRouter
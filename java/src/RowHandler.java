@@ -0,0 +1,31 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a query streamed by GameRental.executeQueryForEach,
+ * one at a time, while the result set is positioned on the row.
+ *
+ */
+public interface RowHandler {
+
+  /**
+   * Handles the current row.  The handler must not move the result set.
+   *
+   * @param rs the result set positioned on the current row
+   * @throws java.sql.SQLException to stop the query
+   */
+  void handle(ResultSet rs) throws SQLException;
+
+} //end RowHandler
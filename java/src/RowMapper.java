@@ -0,0 +1,33 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a result set into a typed object.  A mapper
+ * reads its columns by position, so it belongs with the SELECT list it
+ * was written for.
+ *
+ */
+public interface RowMapper < T > {
+
+  /**
+   * Maps the current row.  The mapper must not move the result set.
+   *
+   * @param rs the result set positioned on the current row
+   * @return the mapped object
+   * @throws java.sql.SQLException when a column could not be read
+   */
+  T map(ResultSet rs) throws SQLException;
+
+} //end RowMapper
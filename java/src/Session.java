@@ -0,0 +1,94 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+
+/**
+ * This class is one logged-in user.  It is created by LogIn and holds the
+ * login, the role and the profile of the user.  The menu refreshes them
+ * through the credential cache before every action, so a changed role
+ * takes effect within the cache's time to live, at once for sessions of
+ * the process that changed it, and a session whose login was renamed or
+ * removed is ended.  The profile is also replaced when the user edits it.
+ *
+ */
+public class Session {
+
+  private final String _login;
+  private volatile String _role;
+  private volatile User _profile;
+
+  /**
+   * Creates a new session for a user who just logged in
+   *
+   * @param profile the Users row of the user
+   */
+  public Session(User profile) {
+    this._login = profile.login();
+    this._role = profile.role();
+    this._profile = profile;
+  } //end Session
+
+  public String getLogin() {
+    return this._login;
+  }
+
+  public String getRole() {
+    return this._role;
+  }
+
+  public User getProfile() {
+    return this._profile;
+  }
+
+  /**
+   * Returns true for managers.
+   */
+  public boolean isManager() {
+    return "manager".equals(this._role);
+  }
+
+  /**
+   * Returns true for employees and managers.
+   */
+  public boolean isStaff() {
+    return "employee".equals(this._role) || isManager();
+  }
+
+  /**
+   * Reads the role and profile again through the credential cache.
+   *
+   * @param credentials the cache the profile is read through
+   * @return false when the login no longer exists
+   * @throws java.sql.SQLException when the profile could not be read
+   */
+  public boolean refresh(CredentialCache credentials) throws SQLException {
+    User profile = credentials.get(this._login);
+    if (profile == null)
+      return false;
+    this._role = profile.role();
+    this._profile = profile;
+    return true;
+  } //end refresh
+
+  /**
+   * Reads the profile again after the user changed it.
+   *
+   * @param credentials the cache the profile is read through
+   * @throws java.sql.SQLException when the profile could not be read
+   */
+  public void reload(CredentialCache credentials) throws SQLException {
+    credentials.invalidate(this._login);
+    refresh(credentials);
+  } //end reload
+
+} //end Session
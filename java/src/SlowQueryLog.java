@@ -0,0 +1,383 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class logs the database calls that take longer than a threshold:
+ * the parameterized SQL, its bind values with passwords redacted, the
+ * elapsed time, the row count and the menu operation that made the call.
+ * A sample of the slow statements is explained on a connection of its
+ * own, in a background thread and inside a transaction that is always
+ * rolled back, so the plan is captured while the regression is happening.
+ * Reads are run again under EXPLAIN (ANALYZE, BUFFERS).  Statements that
+ * write or lock rows only get a plain EXPLAIN: they are mostly slow
+ * because they wait on row locks, and running them again would queue on
+ * the same locks and take them once more until the rollback.  The same
+ * statement is explained at most once per explain interval.  INSERTs and
+ * statements whose side effects survive a rollback (nextval, setval) are
+ * never explained.
+ *
+ * Entries go to a local file that is rotated once it grows past its size
+ * limit, keeping a fixed number of older files as file.1, file.2, ...
+ *
+ */
+public class SlowQueryLog {
+
+  // bind values shown in place of a password.
+  static final String REDACTED = "<redacted>";
+
+  // a placeholder compared to a password column, e.g. "password = ?".
+  private static final Pattern PASSWORD_COMPARE =
+    Pattern.compile("\\bpassword\\s*(=|<>|!=|like)\\s*\\?", Pattern.CASE_INSENSITIVE);
+  // the column and value lists of an INSERT.
+  private static final Pattern INSERT =
+    Pattern.compile("insert\\s+into\\s+\\w+\\s*\\(([^)]*)\\)\\s*values\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+  // statements whose effects a rollback does not undo.
+  private static final Pattern UNSAFE_TO_EXPLAIN = Pattern.compile("\\b(nextval|setval)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern WRITE = Pattern.compile("^\\s*(insert|update)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern EXPLAINABLE = Pattern.compile("^\\s*(select|with|update|delete)\\b", Pattern.CASE_INSENSITIVE);
+  // statements that write or lock rows, also inside a WITH or as SELECT ... FOR UPDATE.
+  private static final Pattern LOCKS_ROWS =
+    Pattern.compile("\\b(insert|update|delete)\\b|\\bfor\\s+(key\\s+)?share\\b", Pattern.CASE_INSENSITIVE);
+
+  private final String _url;
+  private final String _user;
+  private final String _passwd;
+  private final long _thresholdNanos;
+  private final double _explainSampleRate;
+  private final long _explainIntervalMillis;
+  private final long _explainTimeoutMillis;
+  private final Path _file;
+  private final long _maxBytes;
+  private final int _keepFiles;
+
+  private final AtomicLong _nextId = new AtomicLong();
+  private final AtomicLong _logged = new AtomicLong();
+  private final AtomicLong _explained = new AtomicLong();
+  private final AtomicLong _dropped = new AtomicLong();
+  // when each statement was last explained.
+  private final ConcurrentHashMap < String, Long > _lastExplained = new ConcurrentHashMap < String, Long > ();
+  private final ThreadPoolExecutor _explainer;
+
+  // the side connection EXPLAIN runs on, opened on first use by the explain thread.
+  private Connection _side = null;
+
+  // the open log file and its size, guarded by this.
+  private BufferedWriter _out = null;
+  private long _size = 0;
+
+  /**
+   * Creates a new slow-query log
+   *
+   * @param url the JDBC URL EXPLAIN connects to
+   * @param user the database user
+   * @param passwd the password of the user
+   * @param thresholdMillis calls at least this slow are logged
+   * @param explainSampleRate the share of slow calls that are explained, 0 to 1
+   * @param explainIntervalMillis the least time between two plans of one statement
+   * @param file the log file
+   * @param maxBytes the size past which the file is rotated
+   * @param keepFiles the number of rotated files kept
+   */
+  public SlowQueryLog(String url, String user, String passwd, long thresholdMillis, double explainSampleRate,
+    long explainIntervalMillis, Path file, long maxBytes, int keepFiles) {
+    this._url = url;
+    this._user = user;
+    this._passwd = passwd;
+    this._thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this._explainSampleRate = explainSampleRate;
+    this._explainIntervalMillis = explainIntervalMillis;
+    this._explainTimeoutMillis = Math.max(1000, 20 * thresholdMillis);
+    this._file = file.toAbsolutePath();
+    this._maxBytes = Math.max(1024, maxBytes);
+    this._keepFiles = Math.max(0, keepFiles);
+    // one thread, a short queue, and plans beyond it are dropped rather than queued.
+    this._explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue < Runnable > (16), r -> {
+      Thread t = new Thread(r, "slow-query-explain");
+      t.setDaemon(true);
+      return t;
+    }, (r, pool) -> this._dropped.incrementAndGet());
+  } //end SlowQueryLog
+
+  /**
+   * Creates the log configured by the gamerental.slowQuery.* system
+   * properties, or returns null when it is turned off.
+   */
+  public static SlowQueryLog fromSystemProperties(String url, String user, String passwd) {
+    long threshold = Long.getLong("gamerental.slowQuery.thresholdMillis", 500L);
+    if (threshold < 0)
+      return null;
+    return new SlowQueryLog(url, user, passwd, threshold,
+      Double.parseDouble(System.getProperty("gamerental.slowQuery.explainSampleRate", "0.1")),
+      Long.getLong("gamerental.slowQuery.explainIntervalMillis", 60000L),
+      Paths.get(System.getProperty("gamerental.slowQuery.file", "slow-queries.log")),
+      Long.getLong("gamerental.slowQuery.maxBytes", 10L * 1024 * 1024),
+      Integer.getInteger("gamerental.slowQuery.keepFiles", 5));
+  } //end fromSystemProperties
+
+  /**
+   * Logs a call if it was slow
+   *
+   * @param startNanos System.nanoTime() when the call began
+   * @param rows the rows returned or changed, negative when the call failed
+   * @param sql the statement, or null for a transaction of several
+   * @param params its bind values
+   */
+  public void check(long startNanos, long rows, String sql, Object[] params) {
+    long elapsed = System.nanoTime() - startNanos;
+    if (elapsed < this._thresholdNanos)
+      return;
+    long id = this._nextId.incrementAndGet();
+    StringBuilder entry = new StringBuilder();
+    entry.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)).append(" #").append(id)
+      .append(String.format(Locale.ROOT, " slow %.1f ms", elapsed / 1e6))
+      .append(rows < 0 ? " failed" : " rows=" + rows)
+      .append(" op=").append(QueryMetrics.getOperation()).append('\n');
+    entry.append("  sql: ").append(sql == null ? "<transaction>" : sql.replaceAll("\\s+", " ").trim()).append('\n');
+    if (params != null && params.length > 0)
+      entry.append("  binds: ").append(redact(sql, params)).append('\n');
+    write(entry);
+    this._logged.incrementAndGet();
+
+    if (sql != null && rows >= 0 && shouldExplain(sql))
+      this._explainer.execute(() -> explain(id, sql, params));
+  } //end check
+
+  public long getLogged() {
+    return this._logged.get();
+  }
+
+  public long getExplained() {
+    return this._explained.get();
+  }
+
+  public long getDropped() {
+    return this._dropped.get();
+  }
+
+  /**
+   * Waits for pending plans, then closes the side connection and the file.
+   */
+  public void close() {
+    this._explainer.shutdown();
+    try {
+      this._explainer.awaitTermination(this._explainTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } //end try
+    try {
+      if (this._side != null)
+        this._side.close();
+    } catch (SQLException e) {
+      // the connection is gone either way.
+    } //end try
+    synchronized (this) {
+      try {
+        if (this._out != null)
+          this._out.close();
+      } catch (IOException e) {
+        GameRental.err().println("Slow-query log: " + e.getMessage());
+      } //end try
+      this._out = null;
+    } //end synchronized
+  } //end close
+
+  // samples, then skips statements explained recently or unsafe to run again.
+  private boolean shouldExplain(String sql) {
+    if (this._explainSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= this._explainSampleRate)
+      return false;
+    if (!EXPLAINABLE.matcher(sql).find() || UNSAFE_TO_EXPLAIN.matcher(sql).find())
+      return false;
+    long now = System.currentTimeMillis();
+    Long last = this._lastExplained.get(sql);
+    if (last != null && now - last < this._explainIntervalMillis)
+      return false;
+    // only one of several racing threads wins the slot.
+    return last == null ? this._lastExplained.putIfAbsent(sql, now) == null : this._lastExplained.replace(sql, last, now);
+  } //end shouldExplain
+
+  // runs on the explain thread.
+  private void explain(long id, String sql, Object[] params) {
+    // a write is only planned, not run again.
+    boolean analyze = !LOCKS_ROWS.matcher(sql).find();
+    StringBuilder entry = new StringBuilder();
+    entry.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)).append(" #").append(id)
+      .append(analyze ? " plan:\n" : " plan, not run:\n");
+    try {
+      Connection conn = side();
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SET LOCAL statement_timeout = " + this._explainTimeoutMillis);
+      } //end try
+      try (PreparedStatement stmt = conn.prepareStatement((analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql)) {
+        for (int i = 0; params != null && i < params.length; ++i) {
+          if (params[i] == null)
+            stmt.setNull(i + 1, Types.VARCHAR);
+          else
+            stmt.setObject(i + 1, params[i]);
+        } //end for
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next())
+            entry.append("  ").append(rs.getString(1)).append('\n');
+        } //end try
+      } finally {
+        // ANALYZE really ran the statement, nothing of it is kept.
+        conn.rollback();
+      } //end try
+      this._explained.incrementAndGet();
+    } catch (SQLException e) {
+      entry.append("  EXPLAIN failed: ").append(e.getMessage()).append('\n');
+      try {
+        if (this._side != null)
+          this._side.close();
+      } catch (SQLException ignored) {
+        // reopened on the next plan.
+      } //end try
+      this._side = null;
+    } //end try
+    write(entry);
+  } //end explain
+
+  private Connection side() throws SQLException {
+    if (this._side == null || this._side.isClosed())
+      this._side = DriverManager.getConnection(this._url, this._user, this._passwd);
+    return this._side;
+  }
+
+  // appends an entry, rotating the file first when it is full.
+  private synchronized void write(CharSequence entry) {
+    try {
+      byte[] bytes = entry.toString().getBytes(StandardCharsets.UTF_8);
+      if (this._out == null) {
+        this._out = Files.newBufferedWriter(this._file, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this._size = Files.size(this._file);
+      } //end if
+      if (this._size > 0 && this._size + bytes.length > this._maxBytes)
+        rotate();
+      this._out.append(entry);
+      this._out.flush();
+      this._size += bytes.length;
+    } catch (IOException e) {
+      GameRental.err().println("Slow-query log: " + e.getMessage());
+    } //end try
+  } //end write
+
+  // shifts file.N-1 to file.N, ..., file to file.1 and starts an empty file.
+  private void rotate() throws IOException {
+    this._out.close();
+    if (this._keepFiles == 0) {
+      Files.delete(this._file);
+    } else {
+      Files.deleteIfExists(rotated(this._keepFiles));
+      for (int i = this._keepFiles - 1; i >= 1; --i)
+        if (Files.exists(rotated(i)))
+          Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(this._file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    } //end if
+    this._out = Files.newBufferedWriter(this._file, StandardCharsets.UTF_8,
+      StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    this._size = 0;
+  } //end rotate
+
+  private Path rotated(int n) {
+    return this._file.resolveSibling(this._file.getFileName() + "." + n);
+  }
+
+  /**
+   * Returns the bind values as text, with the values bound to a password
+   * column and anything that looks like a stored password hash replaced
+   * by REDACTED.  When an INSERT or UPDATE names a password column but
+   * the placeholder cannot be pinned down, every value is redacted.
+   */
+  static String redact(String sql, Object[] params) {
+    boolean[] secret = new boolean[params.length];
+    if (sql != null && sql.toLowerCase(Locale.ROOT).contains("password")) {
+      boolean found = false;
+      Matcher compare = PASSWORD_COMPARE.matcher(sql);
+      while (compare.find())
+        found |= mark(secret, placeholderIndex(sql, compare.end() - 1));
+      Matcher insert = INSERT.matcher(sql);
+      if (insert.find()) {
+        String[] columns = insert.group(1).split(",");
+        String[] values = insert.group(2).split(",");
+        int valuesStart = insert.start(2);
+        int offset = 0;
+        for (int i = 0; i < values.length && i < columns.length; ++i) {
+          int at = valuesStart + offset + values[i].indexOf('?');
+          if (columns[i].trim().equalsIgnoreCase("password") && values[i].contains("?"))
+            found |= mark(secret, placeholderIndex(sql, at));
+          offset += values[i].length() + 1;
+        } //end for
+      } //end if
+      // a write naming a password that could not be pinned down hides everything.
+      if (!found && WRITE.matcher(sql).find())
+        Arrays.fill(secret, true);
+    } //end if
+
+    List < String > shown = new ArrayList < String > (params.length);
+    for (int i = 0; i < params.length; ++i) {
+      Object value = params[i];
+      if (secret[i] || (value instanceof String && ((String) value).startsWith(PasswordHasher.PREFIX)))
+        shown.add(REDACTED);
+      else
+        shown.add(value == null ? "null" : value instanceof String ? "'" + value + "'" : value.toString());
+    } //end for
+    return shown.toString();
+  } //end redact
+
+  private static boolean mark(boolean[] secret, int index) {
+    if (index < 0 || index >= secret.length)
+      return false;
+    secret[index] = true;
+    return true;
+  }
+
+  // the number of the placeholder at a position, counting the ones before it.
+  private static int placeholderIndex(String sql, int at) {
+    int index = 0;
+    for (int i = 0; i < at; ++i)
+      if (sql.charAt(i) == '?')
+        ++index;
+    return index;
+  }
+
+} //end SlowQueryLog
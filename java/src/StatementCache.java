@@ -0,0 +1,109 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the prepared statements of one physical connection so
+ * that a query text is only parsed and planned once.  Statements are keyed
+ * by their SQL text and the least recently used one is closed when the
+ * cache is full.
+ *
+ */
+public class StatementCache {
+
+  // the connection every cached statement belongs to.
+  private final Connection _connection;
+
+  // maximum number of statements kept open.
+  private final int _capacity;
+
+  // statements in access order, eldest first.
+  private final LinkedHashMap < String, PreparedStatement > _statements;
+
+  private long _hits = 0;
+  private long _misses = 0;
+
+  /**
+   * Creates a new statement cache for a connection
+   *
+   * @param connection the connection statements are prepared on
+   * @param capacity the maximum number of open statements
+   */
+  public StatementCache(Connection connection, int capacity) {
+    this._connection = connection;
+    this._capacity = Math.max(1, capacity);
+    this._statements = new LinkedHashMap < String, PreparedStatement > (16, 0.75f, true);
+  } //end StatementCache
+
+  /**
+   * Returns the prepared statement for a SQL string, preparing it on a miss.
+   * The caller must not close the returned statement.
+   *
+   * @param sql the input SQL string
+   * @return the prepared statement
+   * @throws java.sql.SQLException when the statement could not be prepared
+   */
+  public synchronized PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement stmt = this._statements.get(sql);
+    if (stmt != null) {
+      ++this._hits;
+      return stmt;
+    } //end if
+    ++this._misses;
+    stmt = this._connection.prepareStatement(sql);
+    this._statements.put(sql, stmt);
+    if (this._statements.size() > this._capacity) {
+      // evicts the least recently used statement.
+      Iterator < Map.Entry < String, PreparedStatement >> eldest = this._statements.entrySet().iterator();
+      PreparedStatement evicted = eldest.next().getValue();
+      eldest.remove();
+      closeQuietly(evicted);
+    } //end if
+    return stmt;
+  } //end prepare
+
+  public synchronized long getHits() {
+    return this._hits;
+  }
+
+  public synchronized long getMisses() {
+    return this._misses;
+  }
+
+  public synchronized int size() {
+    return this._statements.size();
+  }
+
+  /**
+   * Closes every cached statement.  The connection itself is left open.
+   */
+  public synchronized void close() {
+    for (PreparedStatement stmt: this._statements.values())
+      closeQuietly(stmt);
+    this._statements.clear();
+  } //end close
+
+  private static void closeQuietly(PreparedStatement stmt) {
+    try {
+      stmt.close();
+    } catch (SQLException e) {
+      // ignored.
+    } //end try
+  }
+
+} //end StatementCache
@@ -0,0 +1,111 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+
+/**
+ * This class is the keyboard and screen of one user session.  The menu
+ * handlers in GameRental read and print through the terminal bound to the
+ * current thread, which is the console unless a server session bound its
+ * own socket terminal.
+ *
+ */
+public class Terminal {
+
+  /**
+   * Thrown when the input of a terminal is closed or stops responding,
+   * so the session running on it can end.
+   */
+  public static class ClosedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ClosedException(String message) {
+      super(message);
+    }
+  }
+
+  // a reader that flushes pending prompts before it blocks for input.
+  private static final class PromptingReader extends BufferedReader {
+    private final PrintStream _out;
+
+    PromptingReader(Reader in, PrintStream out) {
+      super(in);
+      this._out = out;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      this._out.flush();
+      return super.readLine();
+    }
+  }
+
+  private static final Terminal CONSOLE = new Terminal(
+    new InputStreamReader(System.in), System.out, System.err);
+
+  private static final ThreadLocal < Terminal > CURRENT = ThreadLocal.withInitial(() -> CONSOLE);
+
+  private final BufferedReader _in;
+  private final PrintStream _out;
+  private final PrintStream _err;
+
+  /**
+   * Creates a new terminal
+   *
+   * @param in the keyboard input
+   * @param out where regular output is printed
+   * @param err where error messages are printed
+   */
+  public Terminal(Reader in, PrintStream out, PrintStream err) {
+    this._in = new PromptingReader(in, out);
+    this._out = out;
+    this._err = err;
+  } //end Terminal
+
+  public BufferedReader in() {
+    return this._in;
+  }
+
+  public PrintStream out() {
+    return this._out;
+  }
+
+  public PrintStream err() {
+    return this._err;
+  }
+
+  /**
+   * Returns the terminal of the session running on this thread.
+   */
+  public static Terminal current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes a terminal the current one for this thread.
+   */
+  public static void bind(Terminal terminal) {
+    CURRENT.set(terminal);
+  }
+
+  /**
+   * Puts the console back as the current terminal of this thread.
+   */
+  public static void unbind() {
+    CURRENT.remove();
+  }
+
+} //end Terminal
@@ -0,0 +1,383 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class applies a courier's CSV feed of tracking updates.  The file
+ * is streamed once: every row is checked on the client, statuses against
+ * TrackingInfo.STATUSES, and the valid rows are copied straight into a
+ * temporary table with COPY ... FROM STDIN.  One set-based UPDATE ... FROM
+ * then applies the staged rows.  A trackingID listed several times gets
+ * the last non-empty value of every field, and an empty field leaves the
+ * column unchanged.  Everything runs in one transaction, so a feed is
+ * applied completely or not at all.
+ *
+ * The feed needs a header row naming its columns, in any order:
+ * trackingID, and any of status, currentLocation, courierName and
+ * lastUpdateDate.  Rows without lastUpdateDate are stamped with the time
+ * of the import.
+ *
+ */
+public class TrackingImport {
+
+  // the feed columns, the staging columns they are copied to, and their widths in TrackingInfo.
+  private static final String[] COLUMNS = { "trackingID", "status", "currentLocation", "courierName", "lastUpdateDate" };
+  private static final int[] WIDTHS = { 50, 50, 60, 60, 0 };
+
+  private static final String STAGE =
+    "CREATE TEMPORARY TABLE tracking_feed (line bigint, trackingID varchar(50), status varchar(50), " +
+    "currentLocation varchar(60), courierName varchar(60), lastUpdateDate timestamp) ON COMMIT DROP;";
+
+  // folds the rows of every trackingID, the latest non-empty value of each field winning.
+  private static final String FOLDED =
+    "SELECT trackingID, " +
+    "(array_agg(status ORDER BY line DESC) FILTER (WHERE status IS NOT NULL))[1] AS status, " +
+    "(array_agg(currentLocation ORDER BY line DESC) FILTER (WHERE currentLocation IS NOT NULL))[1] AS currentLocation, " +
+    "(array_agg(courierName ORDER BY line DESC) FILTER (WHERE courierName IS NOT NULL))[1] AS courierName, " +
+    "(array_agg(lastUpdateDate ORDER BY line DESC))[1] AS lastUpdateDate " +
+    "FROM tracking_feed GROUP BY trackingID";
+
+  private static final String APPLY =
+    "UPDATE TrackingInfo T SET " +
+    "status = COALESCE(F.status, T.status), " +
+    "currentLocation = COALESCE(F.currentLocation, T.currentLocation), " +
+    "courierName = COALESCE(F.courierName, T.courierName), " +
+    "lastUpdateDate = COALESCE(F.lastUpdateDate, ?) " +
+    "FROM (" + FOLDED + ") F WHERE T.trackingID = F.trackingID;";
+
+  private static final String UNKNOWN =
+    "SELECT count(DISTINCT F.trackingID) FROM tracking_feed F " +
+    "WHERE NOT EXISTS (SELECT 1 FROM TrackingInfo T WHERE T.trackingID = F.trackingID);";
+
+  /**
+   * What an import did.
+   */
+  public static final class Report {
+    long read;
+    long staged;
+    long skipped;
+    long unknown;
+    long applied;
+    long nanos;
+    final List < String > problems = new ArrayList < String > ();
+
+    public long getRead() {
+      return this.read;
+    }
+
+    public long getSkipped() {
+      return this.skipped;
+    }
+
+    public long getUnknown() {
+      return this.unknown;
+    }
+
+    public long getApplied() {
+      return this.applied;
+    }
+
+    public void print(PrintStream out) {
+      for (String problem: this.problems)
+        out.println("| skipped " + problem);
+      if (this.skipped > this.problems.size())
+        out.println("| ... " + (this.skipped - this.problems.size()) + " more rows skipped");
+      out.printf("| read %d rows: %d staged, %d skipped%n", this.read, this.staged, this.skipped);
+      out.printf("| %d tracking rows updated, %d unknown tracking IDs%n", this.applied, this.unknown);
+      out.printf("| imported in %.2f s, %.0f rows/s%n",
+        BulkLoader.seconds(this.nanos), BulkLoader.perSecond(this.read, this.nanos));
+    }
+  }
+
+  /**
+   * Turns the rows of a feed into staging rows for COPY ... (FORMAT csv),
+   * dropping and counting the rows that fail validation as it goes.
+   */
+  static final class FeedStream extends InputStream {
+    private static final int MAX_PROBLEMS = 20;
+
+    private final BufferedReader _in;
+    private final Report _report;
+    // the feed column read into each staging column, -1 when the feed has none.
+    private final int[] _source = new int[COLUMNS.length];
+    private byte[] _buf = new byte[0];
+    private int _pos = 0;
+    private long _line = 1;
+
+    FeedStream(Reader feed, Report report) throws IOException {
+      this._in = new BufferedReader(feed, 1 << 16);
+      this._report = report;
+      String header = this._in.readLine();
+      if (header == null)
+        throw new IOException("The feed is empty");
+      Map < String, Integer > named = new HashMap < String, Integer > ();
+      // a byte order mark some spreadsheet exports start with.
+      List < String > fields = parse(header.startsWith("\uFEFF") ? header.substring(1) : header);
+      for (int i = 0; i < fields.size(); ++i)
+        named.put(fields.get(i).trim().toLowerCase(Locale.ROOT), i);
+      for (int c = 0; c < COLUMNS.length; ++c)
+        this._source[c] = named.getOrDefault(COLUMNS[c].toLowerCase(Locale.ROOT), -1);
+      if (this._source[0] < 0)
+        throw new IOException("The feed header has no trackingID column: " + header);
+    } //end FeedStream
+
+    @Override
+    public int read() throws IOException {
+      if (!fill())
+        return -1;
+      return this._buf[this._pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (!fill())
+        return -1;
+      int n = Math.min(len, this._buf.length - this._pos);
+      System.arraycopy(this._buf, this._pos, b, off, n);
+      this._pos += n;
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this._in.close();
+    }
+
+    // makes sure there are bytes left to read, false at the end of the feed.
+    private boolean fill() throws IOException {
+      while (this._pos == this._buf.length) {
+        String line = this._in.readLine();
+        if (line == null)
+          return false;
+        ++this._line;
+        if (line.isEmpty())
+          continue;
+        ++this._report.read;
+        String row = stage(line);
+        if (row != null) {
+          ++this._report.staged;
+          this._buf = row.getBytes(StandardCharsets.UTF_8);
+          this._pos = 0;
+        } //end if
+      } //end while
+      return true;
+    } //end fill
+
+    // the staging row of a feed line, or null when the line is skipped.
+    private String stage(String line) {
+      List < String > fields = parse(line);
+      if (fields == null)
+        return skip("unbalanced quotes");
+      String[] values = new String[COLUMNS.length];
+      for (int c = 0; c < COLUMNS.length; ++c) {
+        int i = this._source[c];
+        String value = i < 0 || i >= fields.size() ? "" : fields.get(i).trim();
+        if (value.isEmpty())
+          continue;
+        if (WIDTHS[c] > 0 && value.length() > WIDTHS[c])
+          return skip(COLUMNS[c] + " longer than " + WIDTHS[c] + " characters");
+        values[c] = value;
+      } //end for
+      if (values[0] == null)
+        return skip("no trackingID");
+      if (values[1] != null) {
+        String status = canonicalStatus(values[1]);
+        if (status == null)
+          return skip("unknown status '" + values[1] + "'");
+        values[1] = status;
+      } //end if
+      if (values[4] != null) {
+        try {
+          Timestamp.valueOf(values[4]);
+        } catch (IllegalArgumentException e) {
+          return skip("bad lastUpdateDate '" + values[4] + "'");
+        } //end try
+      } //end if
+      if (values[1] == null && values[2] == null && values[3] == null)
+        return skip("nothing to update");
+
+      StringBuilder row = new StringBuilder().append(this._line);
+      for (String value: values) {
+        row.append(',');
+        // an unquoted empty field is NULL, so the column is left alone.
+        if (value != null)
+          row.append('"').append(value.replace("\"", "\"\"")).append('"');
+      } //end for
+      return row.append('\n').toString();
+    } //end stage
+
+    private String skip(String why) {
+      ++this._report.skipped;
+      if (this._report.problems.size() < MAX_PROBLEMS)
+        this._report.problems.add("line " + this._line + ": " + why);
+      return null;
+    }
+  } //end FeedStream
+
+  private final String _url;
+  private final String _user;
+  private final String _passwd;
+
+  /**
+   * Creates a new importer
+   *
+   * @param url the JDBC URL of the database
+   * @param user the database user
+   * @param passwd the password of the user
+   */
+  public TrackingImport(String url, String user, String passwd) {
+    this._url = url;
+    this._user = user;
+    this._passwd = passwd;
+  } //end TrackingImport
+
+  /**
+   * Applies a courier feed.
+   *
+   * @param feed the CSV feed
+   * @return the counts of the import
+   * @throws java.sql.SQLException when the feed could not be applied, nothing is changed then
+   * @throws java.io.IOException when the feed cannot be read
+   */
+  public Report load(Path feed) throws SQLException, IOException {
+    try (Reader in = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+      return load(in);
+    } //end try
+  }
+
+  /**
+   * Applies a courier feed read from a stream.
+   */
+  public Report load(Reader feed) throws SQLException, IOException {
+    Report report = new Report();
+    long start = System.nanoTime();
+    try (Connection conn = DriverManager.getConnection(this._url, this._user, this._passwd)) {
+      if (!PgCopy.isSupported(conn))
+        throw new SQLException("The JDBC driver on the classpath cannot COPY, use java/target/lib from 'mvn -B package'");
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(STAGE);
+        PgCopy.copyIn(conn, "COPY tracking_feed FROM STDIN WITH (FORMAT csv)", new FeedStream(feed, report));
+        stmt.execute("ANALYZE tracking_feed;");
+        try (ResultSet rs = stmt.executeQuery(UNKNOWN)) {
+          rs.next();
+          report.unknown = rs.getLong(1);
+        } //end try
+        try (PreparedStatement apply = conn.prepareStatement(APPLY)) {
+          apply.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+          report.applied = apply.executeUpdate();
+        } //end try
+        conn.commit();
+      } catch (SQLException | IOException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } //end try
+    } //end try
+    report.nanos = System.nanoTime() - start;
+    return report;
+  } //end load
+
+  /**
+   * Returns the status as spelled in TrackingInfo.STATUSES, matched
+   * without regard to case, or null if it is not one of them.
+   */
+  static String canonicalStatus(String status) {
+    for (String known: TrackingInfo.STATUSES)
+      if (known.equalsIgnoreCase(status))
+        return known;
+    return null;
+  }
+
+  /**
+   * Splits one CSV line into fields.  Quoted fields may hold commas and
+   * doubled quotes but not line breaks.
+   *
+   * @return the fields, or null when a quote is not closed
+   */
+  static List < String > parse(String line) {
+    List < String > fields = new ArrayList < String > ();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); ++i) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"')
+          field.append(c);
+        else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+          field.append(line.charAt(++i));
+        else
+          quoted = false;
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c != '\r') {
+        field.append(c);
+      } //end if
+    } //end for
+    if (quoted)
+      return null;
+    fields.add(field.toString());
+    return fields;
+  } //end parse
+
+  /**
+   * Applies a courier feed to a database
+   *
+   * @param args <dbname> <port> <user> <feed.csv>
+   */
+  public static void main(String[] args) {
+    if (args.length != 4) {
+      System.err.println(
+        "Usage: " +
+        "java [-classpath <classpath>] " +
+        TrackingImport.class.getName() +
+        " <dbname> <port> <user> <feed.csv>");
+      return;
+    } //end if
+    try {
+      Class.forName("org.postgresql.Driver");
+      String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      Path feed = Paths.get(args[3]);
+      System.out.println("| Importing " + feed.toAbsolutePath() + " into " + args[0]);
+      new TrackingImport(url, args[2], "").load(feed).print(System.out);
+    } catch (Exception e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } //end try
+  } //end main
+
+} //end TrackingImport
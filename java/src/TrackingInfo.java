@@ -0,0 +1,37 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of the TrackingInfo table.
+ *
+ */
+public record TrackingInfo(String trackingID, String rentalOrderID, String status, String currentLocation,
+  String courierName, Timestamp lastUpdateDate, String additionalComments) {
+
+  // every status a tracking row can be set to, in the order updateTrackingStatus offers them.
+  public static final List < String > STATUSES = Collections.unmodifiableList(Arrays.asList(
+    "Out for Delivery", "Delivered", "In Transit", "Delayed",
+    "Ready for Pickup", "Attempted Delivery", "Arrived at Facility", "Returned to Sender"));
+
+  // SELECT list read by MAPPER.
+  public static final String COLUMNS =
+    "trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate, additionalComments";
+
+  public static final RowMapper < TrackingInfo > MAPPER = rs -> new TrackingInfo(
+    rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+    rs.getString(5), rs.getTimestamp(6), rs.getString(7));
+}
@@ -0,0 +1,547 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class takes tracking updates off the caller's path.  An update is
+ * appended to a local journal, forced to disk and acknowledged at once;
+ * pending updates are coalesced per trackingID, the last write winning per
+ * field, and a background thread writes them to TrackingInfo in batched
+ * multi-row UPDATEs that also set lastUpdateDate to the time the update
+ * was acknowledged.  After a batch commits the journal is rewritten to
+ * hold only the updates still pending, and on start-up any updates left in
+ * the journal by a crash are replayed.
+ *
+ * Values are checked before they are acknowledged, like the rows of a
+ * courier feed in TrackingImport: the value must fit its column and a
+ * status must be one of TrackingInfo.STATUSES.  The trackingID is not
+ * looked up on the caller's path; an update whose trackingID matches no
+ * row is moved to the rejected file next to the journal once its batch
+ * commits.  A row the database refuses, e.g. from a journal written
+ * before the checks, fails its whole batch; the batch is then written row
+ * by row and the refused rows are moved to the rejected file as well, so
+ * they do not hold back the updates behind them.
+ *
+ */
+public class TrackingWriter {
+
+  /**
+   * The TrackingInfo columns an update can change.
+   */
+  public enum Field {
+    STATUS("status", 50), CURRENT_LOCATION("currentLocation", 60), COURIER_NAME("courierName", 60);
+
+    final String column;
+    // the width of the column in TrackingInfo.
+    final int width;
+
+    Field(String column, int width) {
+      this.column = column;
+      this.width = width;
+    }
+  } //end Field
+
+  // the largest number of trackingIDs written by one statement.
+  static final int MAX_ROWS = 256;
+
+  // the pending fields of one trackingID, null where unchanged.
+  private static final class Update {
+    String status;
+    String currentLocation;
+    String courierName;
+    long updatedAtMillis;
+
+    void set(Field field, String value, long atMillis) {
+      switch (field) {
+      case STATUS:
+        this.status = value;
+        break;
+      case CURRENT_LOCATION:
+        this.currentLocation = value;
+        break;
+      case COURIER_NAME:
+        this.courierName = value;
+        break;
+      }
+      this.updatedAtMillis = Math.max(this.updatedAtMillis, atMillis);
+    } //end set
+
+    // applies the fields of a later update over this one.
+    void merge(Update later) {
+      if (later.status != null)
+        this.status = later.status;
+      if (later.currentLocation != null)
+        this.currentLocation = later.currentLocation;
+      if (later.courierName != null)
+        this.courierName = later.courierName;
+      this.updatedAtMillis = Math.max(this.updatedAtMillis, later.updatedAtMillis);
+    } //end merge
+  } //end Update
+
+  private final GameRental _esql;
+  private final Path _journalPath;
+  private final boolean _sync;
+  private final int _batchSize;
+
+  // updates acknowledged but not yet written, in arrival order.
+  private LinkedHashMap < String, Update > _pending = new LinkedHashMap < String, Update > ();
+
+  private FileChannel _journal;
+  private final FileLock _journalLock;
+
+  // held while a batch is written, so batches commit in order.
+  private final Object _flushLock = new Object();
+  private final ScheduledExecutorService _flusher;
+
+  private long _submitted = 0;
+  private long _flushedRows = 0;
+  private long _batches = 0;
+  private long _rejected = 0;
+
+  /**
+   * Opens the journal, replays what it holds and starts the flushing thread
+   *
+   * @param esql the database tracking rows are written to
+   * @param journalPath the journal file, created when missing
+   * @param flushIntervalMillis how often pending updates are written
+   * @param batchSize pending trackingIDs that trigger a write before the interval
+   * @param sync true to force every journal append to disk before acknowledging it
+   * @throws java.io.IOException when the journal cannot be opened or is used by another process
+   */
+  public TrackingWriter(GameRental esql, Path journalPath, long flushIntervalMillis, int batchSize, boolean sync)
+  throws IOException {
+    this._esql = esql;
+    this._journalPath = journalPath.toAbsolutePath();
+    this._sync = sync;
+    this._batchSize = Math.max(1, batchSize);
+
+    // a sibling lock file, because the journal itself is replaced on every flush.
+    FileChannel lockFile = FileChannel.open(lockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this._journalLock = lockFile.tryLock();
+    if (this._journalLock == null) {
+      lockFile.close();
+      throw new IOException("Tracking journal " + this._journalPath + " is in use by another process");
+    } //end if
+
+    replay();
+    this._journal = openJournal();
+    this._flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(() -> {
+        QueryMetrics.setOperation("trackingFlush");
+        r.run();
+      }, "tracking-writer");
+      t.setDaemon(true);
+      return t;
+    });
+    this._flusher.scheduleWithFixedDelay(this::flushQuietly, 0, Math.max(1, flushIntervalMillis), TimeUnit.MILLISECONDS);
+  } //end TrackingWriter
+
+  /**
+   * Records a change to one field of a tracking row.  The change is durable
+   * when this returns and reaches TrackingInfo with the next batch.
+   *
+   * @param trackingID the tracking row
+   * @param field the column to change
+   * @param value the new value, a status in any case
+   * @throws IllegalArgumentException when the value does not fit the column
+   * @throws java.io.IOException when the journal could not be written
+   */
+  public void submit(String trackingID, Field field, String value) throws IOException {
+    trackingID = trackingID == null ? "" : trackingID.trim();
+    value = check(field, value);
+    long now = System.currentTimeMillis();
+    boolean full;
+    synchronized (this) {
+      append(now, trackingID, field, value);
+      this._pending.computeIfAbsent(trackingID, id -> new Update()).set(field, value, now);
+      ++this._submitted;
+      full = this._pending.size() >= this._batchSize;
+    } //end synchronized
+    if (full)
+      this._flusher.execute(this::flushQuietly);
+  } //end submit
+
+  /**
+   * Returns a tracking row with the updates still pending for it applied,
+   * so a reader sees changes that were acknowledged but not yet written.
+   *
+   * @param row the row as read from the database, may be null
+   */
+  public TrackingInfo overlay(TrackingInfo row) {
+    if (row == null)
+      return null;
+    synchronized (this) {
+      Update update = this._pending.get(row.trackingID());
+      if (update == null)
+        return row;
+      return new TrackingInfo(row.trackingID(), row.rentalOrderID(),
+        update.status == null ? row.status() : update.status,
+        update.currentLocation == null ? row.currentLocation() : update.currentLocation,
+        update.courierName == null ? row.courierName() : update.courierName,
+        new Timestamp(update.updatedAtMillis), row.additionalComments());
+    } //end synchronized
+  } //end overlay
+
+  /**
+   * Writes every pending update now.
+   *
+   * @return the number of tracking rows updated
+   * @throws java.sql.SQLException when the batch failed, its updates stay pending
+   * @throws java.io.IOException when the journal could not be compacted
+   */
+  public int flush() throws SQLException, IOException {
+    synchronized (this._flushLock) {
+      final LinkedHashMap < String, Update > batch;
+      synchronized (this) {
+        if (this._pending.isEmpty())
+          return 0;
+        batch = this._pending;
+        this._pending = new LinkedHashMap < String, Update > ();
+      } //end synchronized
+
+      List < String > trackingIDs = new ArrayList < String > (batch.keySet());
+      int updated;
+      try {
+        Set < String > written = this._esql.executeTransaction(conn -> {
+          List < Map.Entry < String, Update >> rows = new ArrayList < Map.Entry < String, Update >> (batch.entrySet());
+          Set < String > ids = new HashSet < String > ();
+          for (int from = 0; from < rows.size(); from += MAX_ROWS)
+            writeRows(conn, rows.subList(from, Math.min(rows.size(), from + MAX_ROWS)), ids);
+          return ids;
+        });
+        updated = written.size();
+        for (Map.Entry < String, Update > row: batch.entrySet())
+          if (!written.contains(row.getKey()))
+            reject(row.getKey(), row.getValue(), unknown(row.getKey()));
+      } catch (SQLException e) {
+        if (!isRefused(e)) {
+          requeue(batch);
+          throw e;
+        } //end if
+        // one refused row fails the statement, the others are written on their own.
+        updated = writeEach(batch);
+      } catch (RuntimeException e) {
+        requeue(batch);
+        throw e;
+      } //end try
+
+      synchronized (this) {
+        this._flushedRows += updated;
+        ++this._batches;
+        compact();
+      } //end synchronized
+      for (String trackingID: trackingIDs)
+        this._esql.getOrderDetails().invalidateTracking(trackingID);
+      return updated;
+    } //end synchronized
+  } //end flush
+
+  /**
+   * Stops the flushing thread, writes what is pending and closes the
+   * journal.  Updates that could not be written stay in the journal for
+   * the next start.
+   */
+  public void close() {
+    this._flusher.shutdown();
+    try {
+      this._flusher.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } //end try
+    flushQuietly();
+    synchronized (this) {
+      try {
+        this._journal.close();
+        this._journalLock.release();
+        this._journalLock.channel().close();
+      } catch (IOException e) {
+        GameRental.err().println("Tracking journal: " + e.getMessage());
+      } //end try
+    } //end synchronized
+  } //end close
+
+  public synchronized int getPending() {
+    return this._pending.size();
+  }
+
+  public synchronized long getSubmitted() {
+    return this._submitted;
+  }
+
+  public synchronized long getFlushedRows() {
+    return this._flushedRows;
+  }
+
+  public synchronized long getBatches() {
+    return this._batches;
+  }
+
+  public synchronized long getRejected() {
+    return this._rejected;
+  }
+
+  /**
+   * Returns the value an update writes: trimmed, and a status spelled as
+   * in TrackingInfo.STATUSES.
+   *
+   * @throws IllegalArgumentException when the value is empty, too long or not a status
+   */
+  static String check(Field field, String value) {
+    String checked = value == null ? "" : value.trim();
+    if (checked.isEmpty())
+      throw new IllegalArgumentException("A tracking update needs a value");
+    if (checked.length() > field.width)
+      throw new IllegalArgumentException("The " + field.column + " is longer than " + field.width + " characters");
+    if (field == Field.STATUS) {
+      checked = TrackingImport.canonicalStatus(checked);
+      if (checked == null)
+        throw new IllegalArgumentException("Unknown status '" + value.trim() + "'");
+    } //end if
+    return checked;
+  } //end check
+
+  // flushes from the background thread, keeping the updates on failure.
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (SQLException | IOException | RuntimeException e) {
+      GameRental.err().println("Tracking updates not written yet: " + e.getMessage());
+    } //end try
+  } //end flushQuietly
+
+  /**
+   * Writes up to MAX_ROWS updates with one statement.  The VALUES list is
+   * padded to a power of two by repeating the last row, so only a handful
+   * of statement shapes end up in the statement cache.
+   *
+   * @param written gets the trackingIDs that matched a row
+   * @return the number of tracking rows updated
+   */
+  static int writeRows(PooledConnection conn, List < Map.Entry < String, Update >> rows, Set < String > written)
+    throws SQLException {
+    int width = 1;
+    while (width < rows.size())
+      width <<= 1;
+    StringBuilder sql = new StringBuilder("UPDATE TrackingInfo T SET " +
+      "status = COALESCE(V.status, T.status), " +
+      "currentLocation = COALESCE(V.currentLocation, T.currentLocation), " +
+      "courierName = COALESCE(V.courierName, T.courierName), " +
+      "lastUpdateDate = V.lastUpdateDate FROM (VALUES ");
+    Object[] params = new Object[5 * width];
+    for (int i = 0; i < width; ++i) {
+      sql.append(i == 0 ? "" : ", ").append("(?::varchar, ?::varchar, ?::varchar, ?::varchar, ?::timestamp)");
+      Map.Entry < String, Update > row = rows.get(Math.min(i, rows.size() - 1));
+      Update update = row.getValue();
+      params[5 * i] = row.getKey();
+      params[5 * i + 1] = update.status;
+      params[5 * i + 2] = update.currentLocation;
+      params[5 * i + 3] = update.courierName;
+      params[5 * i + 4] = new Timestamp(update.updatedAtMillis);
+    } //end for
+    sql.append(") AS V(trackingID, status, currentLocation, courierName, lastUpdateDate) " +
+      "WHERE T.trackingID = V.trackingID RETURNING T.trackingID;");
+    ResultSet rs = conn.prepare(sql.toString(), params).executeQuery();
+    int count = 0;
+    while (rs.next()) {
+      written.add(rs.getString(1));
+      ++count;
+    } //end while
+    rs.close();
+    return count;
+  } //end writeRows
+
+  // a data or constraint error, which the same row hits again however often it is retried.
+  static boolean isRefused(SQLException e) {
+    String state = e.getSQLState();
+    return state != null && (state.startsWith("22") || state.startsWith("23"));
+  }
+
+  // writes a batch one row per transaction, moving the refused and unknown rows to the rejected file.
+  // Stops at the first other failure and puts the rows not written back in the queue.
+  private int writeEach(LinkedHashMap < String, Update > batch) throws SQLException, IOException {
+    int updated = 0;
+    Iterator < Map.Entry < String, Update >> rows = batch.entrySet().iterator();
+    while (rows.hasNext()) {
+      Map.Entry < String, Update > row = rows.next();
+      try {
+        int count = this._esql.executeTransaction(conn ->
+          writeRows(conn, Collections.singletonList(row), new HashSet < String > ()));
+        if (count == 0)
+          reject(row.getKey(), row.getValue(), unknown(row.getKey()));
+        updated += count;
+      } catch (SQLException e) {
+        if (!isRefused(e)) {
+          requeue(batch);
+          synchronized (this) {
+            this._flushedRows += updated;
+            compact();
+          } //end synchronized
+          throw e;
+        } //end if
+        reject(row.getKey(), row.getValue(), e.getMessage());
+      } //end try
+      rows.remove();
+    } //end while
+    return updated;
+  } //end writeEach
+
+  // appends an update the database refused to the rejected file, for a person to look at.
+  private void reject(String trackingID, Update update, String reason) throws IOException {
+    StringBuilder lines = new StringBuilder();
+    appendLines(lines, trackingID, update);
+    Files.write(rejectedPath(), lines.toString().getBytes(StandardCharsets.UTF_8),
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    synchronized (this) {
+      ++this._rejected;
+    } //end synchronized
+    GameRental.err().println("Tracking update for " + trackingID + " rejected, moved to " + rejectedPath() + ": " + reason);
+  } //end reject
+
+  private static String unknown(String trackingID) {
+    return "No tracking row with trackingID " + trackingID;
+  }
+
+  // puts a failed batch back in front of the updates that arrived meanwhile.
+  private synchronized void requeue(LinkedHashMap < String, Update > batch) {
+    for (Map.Entry < String, Update > newer: this._pending.entrySet()) {
+      Update older = batch.get(newer.getKey());
+      if (older == null)
+        batch.put(newer.getKey(), newer.getValue());
+      else
+        older.merge(newer.getValue());
+    } //end for
+    this._pending = batch;
+  } //end requeue
+
+  // appends one update to the journal, forced to disk when sync is on.
+  private void append(long atMillis, String trackingID, Field field, String value) throws IOException {
+    ByteBuffer line = ByteBuffer.wrap(journalLine(atMillis, trackingID, field, value).getBytes(StandardCharsets.UTF_8));
+    while (line.hasRemaining())
+      this._journal.write(line);
+    if (this._sync)
+      this._journal.force(false);
+  } //end append
+
+  // replaces the journal with one holding only the pending updates.
+  private void compact() throws IOException {
+    Path tmp = this._journalPath.resolveSibling(this._journalPath.getFileName() + ".tmp");
+    StringBuilder lines = new StringBuilder();
+    for (Map.Entry < String, Update > pending: this._pending.entrySet())
+      appendLines(lines, pending.getKey(), pending.getValue());
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buf = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+      while (buf.hasRemaining())
+        out.write(buf);
+      out.force(false);
+    } //end try
+    this._journal.close();
+    Files.move(tmp, this._journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this._journal = openJournal();
+  } //end compact
+
+  // reads the updates a previous run left in the journal back into pending.
+  private void replay() throws IOException {
+    if (!Files.exists(this._journalPath))
+      return;
+    int lines = 0;
+    try (BufferedReader in = Files.newBufferedReader(this._journalPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] parts = line.split("\t", -1);
+        // a torn last line from a crash mid-append is skipped.
+        if (parts.length != 4)
+          continue;
+        try {
+          this._pending.computeIfAbsent(unescape(parts[1]), id -> new Update())
+            .set(Field.valueOf(parts[2]), unescape(parts[3]), Long.parseLong(parts[0]));
+          ++lines;
+        } catch (IllegalArgumentException e) {
+          continue;
+        } //end try
+      } //end while
+    } //end try
+    if (lines > 0)
+      GameRental.out().println("| Replaying " + lines + " journaled tracking updates");
+  } //end replay
+
+  // the journal lines of the fields an update sets.
+  private static void appendLines(StringBuilder lines, String trackingID, Update update) {
+    if (update.status != null)
+      lines.append(journalLine(update.updatedAtMillis, trackingID, Field.STATUS, update.status));
+    if (update.currentLocation != null)
+      lines.append(journalLine(update.updatedAtMillis, trackingID, Field.CURRENT_LOCATION, update.currentLocation));
+    if (update.courierName != null)
+      lines.append(journalLine(update.updatedAtMillis, trackingID, Field.COURIER_NAME, update.courierName));
+  } //end appendLines
+
+  private FileChannel openJournal() throws IOException {
+    return FileChannel.open(this._journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND);
+  }
+
+  private Path lockPath() {
+    return this._journalPath.resolveSibling(this._journalPath.getFileName() + ".lock");
+  }
+
+  private Path rejectedPath() {
+    return this._journalPath.resolveSibling(this._journalPath.getFileName() + ".rejected");
+  }
+
+  // one journal record: time, trackingID, field and value, tab separated.
+  static String journalLine(long atMillis, String trackingID, Field field, String value) {
+    return atMillis + "\t" + escape(trackingID) + "\t" + field.name() + "\t" + escape(value) + "\n";
+  }
+
+  static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  static String unescape(String s) {
+    StringBuilder out = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c != '\\' || i + 1 == s.length()) {
+        out.append(c);
+        continue;
+      } //end if
+      char next = s.charAt(++i);
+      out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+    } //end for
+    return out.toString();
+  } //end unescape
+
+} //end TrackingWriter
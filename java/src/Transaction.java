@@ -0,0 +1,31 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+
+/**
+ * A unit of work run by GameRental.executeTransaction.  Every statement
+ * issued on the given connection commits or rolls back together.
+ *
+ */
+public interface Transaction < T > {
+
+  /**
+   * Runs the work on a connection with auto-commit turned off
+   *
+   * @param conn the connection owning the transaction
+   * @return the result handed back to the caller after commit
+   * @throws java.sql.SQLException to roll the transaction back
+   */
+  T run(PooledConnection conn) throws SQLException;
+
+} //end Transaction
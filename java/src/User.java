@@ -0,0 +1,26 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * One row of the Users table.
+ *
+ */
+public record User(String login, String password, String role, String favGames,
+  String phoneNum, int numOverDueGames) {
+
+  // SELECT list read by MAPPER.
+  public static final String COLUMNS = "login, password, role, favGames, phoneNum, numOverDueGames";
+
+  public static final RowMapper < User > MAPPER = rs -> new User(
+    rs.getString(1), rs.getString(2), rs.getString(3).trim(), rs.getString(4),
+    rs.getString(5), rs.getInt(6));
+}
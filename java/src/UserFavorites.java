@@ -0,0 +1,247 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is the favorite games of every user, stored one row per
+ * (login, gameID) in the FavoriteGames table, so adding or removing a
+ * favorite is a single-row INSERT or DELETE.
+ *
+ * A copy is kept in memory for lookups.  Every gameID and login seen is
+ * interned to a small int, each user has a BitSet over the game numbers
+ * and each game a BitSet over the user numbers, so "is this a favorite"
+ * is one bit test and "who favors this game" one scan of a bitset.  The
+ * copy is updated with every change made here and read again once it is
+ * older than the time to live.
+ *
+ */
+public class UserFavorites {
+
+  private static final String LOAD = "SELECT login, gameID FROM FavoriteGames;";
+  private static final String ADD = "INSERT INTO FavoriteGames (login, gameID) VALUES (?, ?) ON CONFLICT DO NOTHING;";
+  private static final String REMOVE = "DELETE FROM FavoriteGames WHERE login = ? AND gameID = ?;";
+
+  /**
+   * Fills FavoriteGames from the comma-separated names of the old
+   * Users.favGames column.  Names are matched to Catalog.gameName; names
+   * no game has are left out.
+   */
+  static final String MIGRATE =
+    "INSERT INTO FavoriteGames (login, gameID) " +
+    "SELECT DISTINCT U.login, C.gameID " +
+    "FROM Users U " +
+    "CROSS JOIN LATERAL unnest(string_to_array(U.favGames, ',')) AS F(gameName) " +
+    "JOIN Catalog C ON C.gameName = trim(F.gameName) " +
+    "ON CONFLICT DO NOTHING;";
+
+  private final GameRental _esql;
+  private final long _ttlMillis;
+
+  private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+  // interned gameIDs and logins, and their numbers.
+  private final Map < String, Integer > _gameNumbers = new HashMap < String, Integer > ();
+  private final List < String > _games = new ArrayList < String > ();
+  private final Map < String, Integer > _userNumbers = new HashMap < String, Integer > ();
+  private final List < String > _users = new ArrayList < String > ();
+
+  // by user number, the game numbers of the user's favorites.
+  private final List < BitSet > _byUser = new ArrayList < BitSet > ();
+  // by game number, the user numbers of the users who favor it.
+  private final List < BitSet > _byGame = new ArrayList < BitSet > ();
+
+  // when the copy was last read, -1 before the first read.
+  private volatile long _loadedAtMillis = -1;
+
+  /**
+   * Creates a new, empty copy of the favorites
+   *
+   * @param esql the database the favorites are stored in
+   * @param ttlMillis how long the copy is served before it is read again
+   */
+  public UserFavorites(GameRental esql, long ttlMillis) {
+    this._esql = esql;
+    this._ttlMillis = ttlMillis;
+  } //end UserFavorites
+
+  /**
+   * Returns whether a game is one of a user's favorites.
+   */
+  public boolean isFavorite(String login, String gameId) throws SQLException {
+    ensureLoaded();
+    this._lock.readLock().lock();
+    try {
+      Integer user = this._userNumbers.get(login);
+      Integer game = this._gameNumbers.get(gameId);
+      return user != null && game != null && this._byUser.get(user).get(game);
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  } //end isFavorite
+
+  /**
+   * Returns the gameIDs of a user's favorites, in no particular order.
+   */
+  public List < String > favorites(String login) throws SQLException {
+    ensureLoaded();
+    this._lock.readLock().lock();
+    try {
+      Integer user = this._userNumbers.get(login);
+      List < String > gameIds = new ArrayList < String > ();
+      if (user != null) {
+        BitSet games = this._byUser.get(user);
+        for (int g = games.nextSetBit(0); g >= 0; g = games.nextSetBit(g + 1))
+          gameIds.add(this._games.get(g));
+      } //end if
+      return gameIds;
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  } //end favorites
+
+  /**
+   * Returns the logins of the users who have a game among their favorites.
+   */
+  public List < String > fans(String gameId) throws SQLException {
+    ensureLoaded();
+    this._lock.readLock().lock();
+    try {
+      Integer game = this._gameNumbers.get(gameId);
+      List < String > logins = new ArrayList < String > ();
+      if (game != null) {
+        BitSet users = this._byGame.get(game);
+        for (int u = users.nextSetBit(0); u >= 0; u = users.nextSetBit(u + 1))
+          logins.add(this._users.get(u));
+      } //end if
+      return logins;
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  } //end fans
+
+  /**
+   * Returns the number of users who have a game among their favorites.
+   */
+  public int fanCount(String gameId) throws SQLException {
+    ensureLoaded();
+    this._lock.readLock().lock();
+    try {
+      Integer game = this._gameNumbers.get(gameId);
+      return game == null ? 0 : this._byGame.get(game).cardinality();
+    } finally {
+      this._lock.readLock().unlock();
+    } //end try
+  } //end fanCount
+
+  /**
+   * Adds a game to a user's favorites.
+   *
+   * @return false when it was a favorite already
+   * @throws java.sql.SQLException when the row could not be written, e.g. for an unknown gameID
+   */
+  public boolean add(String login, String gameId) throws SQLException {
+    boolean added = this._esql.executeUpdate(ADD, login, gameId) > 0;
+    apply(login, gameId, true);
+    return added;
+  }
+
+  /**
+   * Removes a game from a user's favorites.
+   *
+   * @return false when it was not a favorite
+   */
+  public boolean remove(String login, String gameId) throws SQLException {
+    boolean removed = this._esql.executeUpdate(REMOVE, login, gameId) > 0;
+    apply(login, gameId, false);
+    return removed;
+  }
+
+  /**
+   * Drops the copy so the next lookup reads the favorites again.  Called
+   * after logins are renamed.
+   */
+  public synchronized void invalidate() {
+    this._loadedAtMillis = -1;
+  }
+
+  // records a committed change in the copy.
+  private void apply(String login, String gameId, boolean favorite) {
+    // a load in progress may have read the table before the change, so wait for it.
+    synchronized (this) {
+      if (this._loadedAtMillis < 0)
+        return;
+      this._lock.writeLock().lock();
+      try {
+        int user = intern(this._userNumbers, this._users, this._byUser, login);
+        int game = intern(this._gameNumbers, this._games, this._byGame, gameId);
+        this._byUser.get(user).set(game, favorite);
+        this._byGame.get(game).set(user, favorite);
+      } finally {
+        this._lock.writeLock().unlock();
+      } //end try
+    } //end synchronized
+  } //end apply
+
+  private boolean fresh() {
+    long loaded = this._loadedAtMillis;
+    return loaded >= 0 && System.currentTimeMillis() - loaded < this._ttlMillis;
+  }
+
+  private void ensureLoaded() throws SQLException {
+    if (fresh())
+      return;
+    synchronized (this) {
+      // another thread may have loaded while this one waited.
+      if (fresh())
+        return;
+      List < String[] > rows = new ArrayList < String[] > ();
+      this._esql.executeQueryForEach(LOAD, rs -> rows.add(new String[] { rs.getString(1), rs.getString(2) }));
+      this._lock.writeLock().lock();
+      try {
+        this._gameNumbers.clear();
+        this._games.clear();
+        this._userNumbers.clear();
+        this._users.clear();
+        this._byUser.clear();
+        this._byGame.clear();
+        for (String[] row: rows) {
+          int user = intern(this._userNumbers, this._users, this._byUser, row[0]);
+          int game = intern(this._gameNumbers, this._games, this._byGame, row[1]);
+          this._byUser.get(user).set(game);
+          this._byGame.get(game).set(user);
+        } //end for
+      } finally {
+        this._lock.writeLock().unlock();
+      } //end try
+      this._loadedAtMillis = System.currentTimeMillis();
+    } //end synchronized
+  } //end ensureLoaded
+
+  // the number of a key, given the next free one and an empty bitset when new.
+  private static int intern(Map < String, Integer > numbers, List < String > keys, List < BitSet > sets, String key) {
+    Integer number = numbers.get(key);
+    if (number != null)
+      return number;
+    numbers.put(key, keys.size());
+    keys.add(key);
+    sets.add(new BitSet());
+    return keys.size() - 1;
+  } //end intern
+
+} //end UserFavorites
@@ -0,0 +1,129 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the open-addressing rows of the co-rental matrix against a
+ * HashMap, and the matrix counted by fork-join over chunks against the
+ * same orders counted one by one.
+ *
+ */
+public class CoRentalsTest {
+
+  private final Random _random = new Random(166);
+
+  @Test
+  public void rowMatchesMapThroughRehash() {
+    CoRentals.Row row = new CoRentals.Row();
+    Map < Integer, Integer > expected = new HashMap < Integer, Integer > ();
+    for (int i = 0; i < 20000; ++i) {
+      // game 0 is stored as key 1, next to the free-slot marker.
+      int game = i % 7 == 0 ? this._random.nextInt(8) : this._random.nextInt(5000);
+      int n = 1 + this._random.nextInt(3);
+      row.add(game, n);
+      expected.merge(game, n, Integer::sum);
+      if (i % 1000 == 0)
+        assertEquals(expected, entries(row));
+    } //end for
+    assertEquals(expected, entries(row));
+    assertEquals(expected.size(), row.size);
+    // kept at most half full.
+    assertTrue(2 * row.size <= row.keys.length);
+  }
+
+  @Test
+  public void sizedRowDoesNotGrow() {
+    CoRentals.Row row = new CoRentals.Row(100);
+    int length = row.keys.length;
+    for (int game = 0; game < 100; ++game)
+      row.add(game * 1024, game);
+    assertEquals(length, row.keys.length);
+    CoRentals.Row sum = new CoRentals.Row(100);
+    sum.addAll(row);
+    sum.addAll(row);
+    for (Map.Entry < Integer, Integer > entry: entries(sum).entrySet())
+      assertEquals(2 * entry.getKey() / 1024, entry.getValue());
+  }
+
+  @Test
+  public void chunkedCountMatchesSingleThreaded() {
+    int games = 300;
+    List < int[] > orders = new ArrayList < int[] > ();
+    for (int o = 0; o < 5000; ++o) {
+      // a few popular games, so some rows grow far beyond the rest.
+      Set < Integer > order = new LinkedHashSet < Integer > ();
+      for (int n = 1 + this._random.nextInt(6); order.size() < n;)
+        order.add(this._random.nextInt(4) == 0 ? this._random.nextInt(10) : this._random.nextInt(games));
+      orders.add(order.stream().mapToInt(Integer::intValue).toArray());
+    } //end for
+
+    CoRentals.Matrix single = new CoRentals.Matrix(games);
+    for (int[] order: orders)
+      single.addOrder(order, 0, order.length);
+
+    for (int chunkOrders: new int[] { 1, 7, 256, 5000 }) {
+      List < CoRentals.Chunk > chunks = new ArrayList < CoRentals.Chunk > ();
+      CoRentals.Chunk chunk = new CoRentals.Chunk();
+      for (int[] order: orders) {
+        for (int game: order)
+          chunk.add(game);
+        chunk.endOrder();
+        if (chunk.orders == chunkOrders) {
+          chunks.add(chunk);
+          chunk = new CoRentals.Chunk();
+        } //end if
+      } //end for
+      if (chunk.orders > 0)
+        chunks.add(chunk);
+
+      ForkJoinPool pool = new ForkJoinPool(4);
+      CoRentals.Matrix forked;
+      try {
+        forked = pool.invoke(new CoRentals.Count(chunks.toArray(new CoRentals.Chunk[0]), 0, chunks.size(), games));
+      } finally {
+        pool.shutdown();
+      } //end try
+      assertCounts(single, forked, games);
+    } //end for
+  }
+
+  private static void assertCounts(CoRentals.Matrix expected, CoRentals.Matrix actual, int games) {
+    for (int game = 0; game < games; ++game) {
+      assertEquals(expected.rentals[game], actual.rentals[game], "rentals of " + game);
+      if (expected.rows[game] == null)
+        assertNull(actual.rows[game], "row of " + game);
+      else
+        assertEquals(entries(expected.rows[game]), entries(actual.rows[game]), "row of " + game);
+    } //end for
+  }
+
+  private static Map < Integer, Integer > entries(CoRentals.Row row) {
+    Map < Integer, Integer > entries = new HashMap < Integer, Integer > ();
+    for (int i = 0; i < row.keys.length; ++i)
+      if (row.keys[i] != 0)
+        assertNull(entries.put(row.keys[i] - 1, row.counts[i]), "stored twice: " + (row.keys[i] - 1));
+    return entries;
+  }
+} //end CoRentalsTest
@@ -0,0 +1,182 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the trigram index against a scan of every game: the posting
+ * lists found by probing the key table, after it has rehashed and after
+ * the tombstones of changed games were compacted away.
+ *
+ */
+public class GameSearchIndexTest {
+
+  private static final double MIN_MATCH = 0.5;
+
+  private final Random _random = new Random(166);
+
+  @Test
+  public void gramsArePaddedPerWord() {
+    long[] grams = GameSearchIndex.grams("Mario!", 0);
+    long[] expected = { pack(' ', ' ', 'm'), pack(' ', 'm', 'a'), pack('m', 'a', 'r'), pack('a', 'r', 'i'),
+      pack('r', 'i', 'o'), pack('i', 'o', ' ') };
+    Arrays.sort(expected);
+    assertArrayEquals(expected, grams);
+    assertEquals(0, GameSearchIndex.grams(" -- ", 0).length);
+  }
+
+  @Test
+  public void searchMatchesScanAfterRehash() throws Exception {
+    // thousands of games hold far more trigrams than the first key table.
+    Map < String, CatalogGame > games = new LinkedHashMap < String, CatalogGame > ();
+    for (int i = 0; i < 3000; ++i) {
+      CatalogGame game = game(i);
+      games.put(game.gameID(), game);
+    } //end for
+    GameSearchIndex index = index();
+    index.load(new ArrayList < CatalogGame > (games.values()));
+    assertEquals(3000, index.size());
+    checkQueries(index, games);
+  }
+
+  @Test
+  public void searchMatchesScanAfterCompaction() throws Exception {
+    Map < String, CatalogGame > games = new LinkedHashMap < String, CatalogGame > ();
+    for (int i = 0; i < 50; ++i) {
+      CatalogGame game = game(i);
+      games.put(game.gameID(), game);
+    } //end for
+    GameSearchIndex index = index();
+    index.load(new ArrayList < CatalogGame > (games.values()));
+
+    // every change leaves a tombstone; more than 1024 of them compact the lists.
+    boolean compacted = false;
+    int documents = index.documents();
+    for (int i = 0; i < 3000; ++i) {
+      String gameId = String.format("game%04d", this._random.nextInt(50));
+      if (i % 100 == 0) {
+        games.remove(gameId);
+        index.replace(gameId, null);
+      } else {
+        CatalogGame game = game(Integer.parseInt(gameId.substring(4)));
+        games.put(gameId, game);
+        index.replace(gameId, game);
+      } //end if
+      if (index.documents() < documents) {
+        // checked right away, a later change may add back a game it lost.
+        compacted = true;
+        assertEquals(games.size(), index.size());
+        checkQueries(index, games);
+      } //end if
+      documents = index.documents();
+    } //end for
+    assertTrue(compacted, "no compaction ran");
+    assertEquals(games.size(), index.size());
+    checkQueries(index, games);
+  }
+
+  @Test
+  public void missingTrigramsMatchNothing() throws Exception {
+    GameSearchIndex index = index();
+    List < CatalogGame > games = new ArrayList < CatalogGame > ();
+    for (int i = 0; i < 100; ++i)
+      games.add(game(i));
+    index.load(games);
+    // the games are named with letters only.
+    assertTrue(index.search("4242 9191", 0, 10).isEmpty());
+    assertTrue(index.search("  ", 0, 10).isEmpty());
+  }
+
+  // searches names, misspelt names and description words of some games.
+  private void checkQueries(GameSearchIndex index, Map < String, CatalogGame > games) throws Exception {
+    List < CatalogGame > live = new ArrayList < CatalogGame > (games.values());
+    for (int q = 0; q < 60; ++q) {
+      CatalogGame game = live.get(this._random.nextInt(live.size()));
+      String query;
+      if (q % 3 == 0) {
+        query = game.gameName();
+      } else if (q % 3 == 1) {
+        char[] name = game.gameName().toCharArray();
+        name[1 + this._random.nextInt(name.length - 2)] = 'q';
+        query = new String(name);
+      } else {
+        query = game.description().split(" ")[this._random.nextInt(6)];
+      } //end if
+
+      List < GameSearchIndex.Hit > hits = index.search(query, 0, 100000).getItems();
+      Set < String > found = new HashSet < String > ();
+      for (GameSearchIndex.Hit hit: hits)
+        assertTrue(found.add(hit.game().gameID()), "returned twice: " + hit.game().gameID());
+      assertEquals(scan(live, query), found, query);
+      if (q % 3 == 0)
+        assertEquals(game.gameName(), hits.get(0).game().gameName(), query);
+      for (int i = 1; i < hits.size(); ++i)
+        assertTrue(GameSearchIndex.RANKING.compare(hits.get(i - 1), hits.get(i)) <= 0, query);
+    } //end for
+  }
+
+  // the games holding enough of the query's trigrams in their name or description.
+  private static Set < String > scan(List < CatalogGame > games, String query) {
+    long[] grams = GameSearchIndex.grams(query, 0);
+    int needed = Math.max(1, (int) Math.ceil(MIN_MATCH * grams.length - 1e-9));
+    Set < String > matches = new HashSet < String > ();
+    for (CatalogGame game: games)
+      if (shared(grams, game.gameName()) >= needed || shared(grams, game.description()) >= needed)
+        matches.add(game.gameID());
+    return matches;
+  }
+
+  private static int shared(long[] grams, String text) {
+    long[] other = GameSearchIndex.grams(text, 0);
+    int shared = 0;
+    for (long gram: grams)
+      if (Arrays.binarySearch(other, gram) >= 0)
+        ++shared;
+    return shared;
+  }
+
+  private static GameSearchIndex index() {
+    return new GameSearchIndex(null, MIN_MATCH, Integer.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  private CatalogGame game(int i) {
+    StringBuilder description = new StringBuilder();
+    for (int w = 0; w < 6; ++w)
+      description.append(w == 0 ? "" : " ").append(word());
+    return new CatalogGame(String.format("game%04d", i), word() + " " + word(), "Puzzle",
+      new BigDecimal("4.99"), description.toString(), null);
+  }
+
+  private String word() {
+    char[] word = new char[5 + this._random.nextInt(4)];
+    for (int i = 0; i < word.length; ++i)
+      word[i] = (char) ('a' + this._random.nextInt(26));
+    return new String(word);
+  }
+
+  private static long pack(char a, char b, char c) {
+    return ((long) a << 32) | ((long) b << 16) | c;
+  }
+} //end GameSearchIndexTest
@@ -0,0 +1,169 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reserves, commits and releases copies from many threads against an
+ * in-memory shelf, and checks that no counter goes below zero and that
+ * every copy ends up on the shelf, held, or rented.
+ *
+ */
+public class InventoryTest {
+
+  private static final int GAMES = 20;
+  private static final int STOCK = 200;
+
+  // an inventory whose Inventory table is an array of shelves.
+  private static final class Shelf extends Inventory {
+    final AtomicIntegerArray inStock = new AtomicIntegerArray(GAMES);
+    final AtomicBoolean negative = new AtomicBoolean();
+
+    Shelf(int blockSize) {
+      super(null, blockSize, 60000);
+      for (int game = 0; game < GAMES; ++game)
+        this.inStock.set(game, STOCK);
+    }
+
+    @Override
+    List < String > loadGames() {
+      List < String > gameIds = new ArrayList < String > ();
+      for (int game = 0; game < GAMES; ++game)
+        gameIds.add(gameId(game));
+      return gameIds;
+    }
+
+    @Override
+    void startLease() {}
+
+    @Override
+    Integer takeBlock(String gameId, int block, int missing) {
+      int game = Integer.parseInt(gameId.substring(4));
+      while (true) {
+        int left = this.inStock.get(game);
+        if (left < missing)
+          return null;
+        int taken = Math.min(left, block);
+        if (this.inStock.compareAndSet(game, left, left - taken))
+          return taken;
+      } //end while
+    }
+
+    @Override
+    public int available(String gameId) {
+      return this.inStock.get(Integer.parseInt(gameId.substring(4))) + heldCopies(gameId);
+    }
+  } //end Shelf
+
+  @Test
+  public void concurrentReservationsKeepEveryCopy() throws Exception {
+    Shelf inventory = new Shelf(5);
+    AtomicIntegerArray rented = new AtomicIntegerArray(GAMES);
+    AtomicLong refused = new AtomicLong();
+
+    // watches the held counters while the orders run.
+    AtomicBoolean done = new AtomicBoolean();
+    Thread watcher = new Thread(() -> {
+      while (!done.get())
+        for (int game = 0; game < GAMES; ++game)
+          if (inventory.heldCopies(gameId(game)) < 0 || inventory.inStock.get(game) < 0)
+            inventory.negative.set(true);
+    });
+    watcher.start();
+
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    List < Future < ? >> clients = new ArrayList < Future < ? >> ();
+    for (int t = 0; t < 16; ++t) {
+      long seed = t;
+      clients.add(pool.submit(() -> {
+        Random random = new Random(seed);
+        for (int o = 0; o < 3000; ++o) {
+          Map < String, Integer > lines = new LinkedHashMap < String, Integer > ();
+          for (int n = 1 + random.nextInt(4); lines.size() < n;)
+            lines.put(gameId(random.nextInt(GAMES)), 1 + random.nextInt(3));
+          Inventory.Reservation reservation;
+          try {
+            reservation = inventory.reserve(lines);
+          } catch (SQLException e) {
+            refused.incrementAndGet();
+            continue;
+          } //end try
+          if (random.nextInt(8) == 0) {
+            // a written order keeps its copies.
+            for (Map.Entry < String, Integer > line: lines.entrySet())
+              rented.addAndGet(Integer.parseInt(line.getKey().substring(4)), line.getValue());
+            reservation.commit();
+            // a release after the commit puts nothing back.
+            if (random.nextBoolean())
+              reservation.release();
+          } else {
+            reservation.release();
+            // a second release puts nothing back.
+            if (random.nextBoolean())
+              reservation.release();
+          } //end if
+        } //end for
+        return null;
+      }));
+    } //end for
+    for (Future < ? > client: clients)
+      client.get();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    done.set(true);
+    watcher.join();
+
+    assertTrue(!inventory.negative.get(), "a counter went below zero");
+    for (int game = 0; game < GAMES; ++game) {
+      int held = inventory.heldCopies(gameId(game));
+      assertTrue(held >= 0, gameId(game));
+      assertEquals(STOCK, inventory.inStock.get(game) + held + rented.get(game), gameId(game));
+      // counted for the next renewal to write back.
+      assertEquals(rented.get(game), inventory.rentedCopies(gameId(game)), gameId(game));
+    } //end for
+    assertTrue(refused.get() > 0, "the stock never ran out");
+  }
+
+  @Test
+  public void refusedOrderPutsBackItsLines() throws Exception {
+    Shelf inventory = new Shelf(10);
+    Map < String, Integer > lines = new LinkedHashMap < String, Integer > ();
+    lines.put(gameId(0), 3);
+    lines.put(gameId(1), STOCK + 1);
+    SQLException e = assertThrows(SQLException.class, () -> inventory.reserve(lines));
+    assertEquals("Only " + STOCK + " copies of " + gameId(1) + " are in stock", e.getMessage());
+    // the block taken for the first line stays held for the next order.
+    assertEquals(10, inventory.heldCopies(gameId(0)));
+    assertEquals(STOCK - 10, inventory.inStock.get(0));
+  }
+
+  private static String gameId(int game) {
+    return String.format("game%04d", game);
+  }
+} //end InventoryTest
@@ -0,0 +1,53 @@
+#!/bin/bash
+# Measures the effect of create_indexes.sql on the application's queries.
+#
+# Rebuilds the schema, loads data/*.csv, scales it up with
+# benchmark_scale.sql, then runs benchmark_queries.sql once without and
+# once with the indexes.  Plans and latencies of both runs are written to
+# sql/benchmark/<timestamp>/ and the latencies are compared at the end.
+#
+# Usage: source sql/scripts/benchmark_indexes.sh [scale] [iterations]
+# Set PSQL to point it at another server, e.g. PSQL="psql -h localhost -p 5432 mydb".
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+SCALE=${1:-100}
+ITERATIONS=${2:-2000}
+PSQL=${PSQL:-"cs166_psql -p $PGPORT $USER"_project_phase_3_DB""}
+DATA=$DIR/../../data
+OUT=$DIR/../benchmark/$(date +%Y%m%d-%H%M%S)
+mkdir -p $OUT
+
+echo "Loading data/*.csv at scale $SCALE"
+$PSQL -q -v ON_ERROR_STOP=1 < $DIR/../src/create_tables.sql
+for table in Users Catalog RentalOrder TrackingInfo GamesInOrder; do
+  file=$(echo $table | tr '[:upper:]' '[:lower:]').csv
+  $PSQL -q -v ON_ERROR_STOP=1 -c "\copy $table FROM '$DATA/$file' WITH DELIMITER ',' CSV HEADER"
+done
+$PSQL -q -v ON_ERROR_STOP=1 -v scale=$SCALE < $DIR/../src/benchmark_scale.sql
+
+echo "Running queries without indexes"
+$PSQL -A -F'|' -v ON_ERROR_STOP=1 -v iterations=$ITERATIONS < $DIR/../src/benchmark_queries.sql > $OUT/before.txt
+
+echo "Creating indexes"
+$PSQL -q -v ON_ERROR_STOP=1 < $DIR/../src/create_indexes.sql
+
+echo "Running queries with indexes"
+$PSQL -A -F'|' -v ON_ERROR_STOP=1 -v iterations=$ITERATIONS < $DIR/../src/benchmark_queries.sql > $OUT/after.txt
+
+# latency rows look like: query|runs|avg_ms|p50_ms|p99_ms
+awk -F'|' '
+  FNR == 1 { phase++ }
+  /=== latencies ===/ { inlat = 1; next }
+  inlat && NF == 5 && $2 ~ /^[0-9]+$/ {
+    if (phase == 1) { avg[$1] = $3; p99[$1] = $5; order[++n] = $1 }
+    else { avg2[$1] = $3; p992[$1] = $5 }
+  }
+  FNR == 1 { inlat = 0 }
+  END {
+    printf "%-18s %12s %12s %12s %12s %9s\n", "query", "avg before", "avg after", "p99 before", "p99 after", "speedup"
+    for (i = 1; i <= n; i++) {
+      q = order[i]
+      printf "%-18s %12s %12s %12s %12s %8.1fx\n", q, avg[q], avg2[q], p99[q], p992[q], (avg2[q] > 0 ? avg[q] / avg2[q] : 0)
+    }
+  }' $OUT/before.txt $OUT/after.txt | tee $OUT/summary.txt
+
+echo "Plans and latencies written to $OUT"
@@ -3,5 +3,5 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 #cs166_createdb $USER"_project_phase_3_DB"
 cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/create_tables.sql
 cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/create_indexes.sql
-cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/load_data.sql
-
+# server-side alternative: cs166_psql ... < $DIR/../src/load_data.sql
+source $DIR/../../java/scripts/bulk_load.sh
@@ -0,0 +1,102 @@
+/*
+ * Query shapes of GameRental.java, run by benchmark_indexes.sh once
+ * without and once with create_indexes.sql.
+ * Usage: psql -v iterations=2000 -f benchmark_queries.sql
+ *
+ * Every query is prepared like the application's PreparedStatements.
+ * For each one the script prints the EXPLAIN (ANALYZE, BUFFERS) plan for
+ * the heaviest key, then the latency of running it over a fixed sample
+ * of keys.
+ */
+
+\pset pager off
+
+/*
+ * Runs a prepared statement once per iteration, cycling through keys,
+ * and reports its latency distribution in milliseconds.
+ */
+CREATE OR REPLACE FUNCTION pg_temp.bench_latency(label text, stmt text, keys text[], iterations int)
+RETURNS TABLE(query text, runs int, avg_ms numeric, p50_ms numeric, p99_ms numeric) AS $$
+DECLARE
+  started timestamptz;
+  samples double precision[] := '{}';
+BEGIN
+  FOR i IN 0 .. iterations - 1 LOOP
+    started := clock_timestamp();
+    EXECUTE format('EXECUTE %I(%L)', stmt, keys[1 + i % array_length(keys, 1)]);
+    samples := samples || extract(epoch FROM clock_timestamp() - started) * 1000;
+  END LOOP;
+  RETURN QUERY
+  SELECT label, iterations,
+         round(avg(s)::numeric, 4),
+         round(percentile_cont(0.5) WITHIN GROUP (ORDER BY s)::numeric, 4),
+         round(percentile_cont(0.99) WITHIN GROUP (ORDER BY s)::numeric, 4)
+  FROM unnest(samples) s;
+END;
+$$ LANGUAGE plpgsql;
+
+/* Fixed key samples so both phases run the same workload */
+CREATE TEMP TABLE bench_keys AS
+SELECT ARRAY(SELECT login FROM Users ORDER BY md5(login) LIMIT 200) AS logins,
+       ARRAY(SELECT rentalOrderID FROM RentalOrder ORDER BY md5(rentalOrderID) LIMIT 200) AS orders,
+       ARRAY(SELECT trackingID FROM TrackingInfo ORDER BY md5(trackingID) LIMIT 200) AS trackings,
+       ARRAY(SELECT gameID FROM Catalog ORDER BY md5(gameID) LIMIT 200) AS games,
+       ARRAY(SELECT DISTINCT genre FROM Catalog) AS genres,
+       ARRAY(SELECT DISTINCT price::text FROM Catalog ORDER BY 1 LIMIT 200) AS prices;
+
+/* Heaviest keys for the plans */
+SELECT login AS heavy_login FROM RentalOrder GROUP BY login ORDER BY count(*) DESC LIMIT 1 \gset
+SELECT rentalOrderID AS heavy_order FROM RentalOrder WHERE login = :'heavy_login' LIMIT 1 \gset
+SELECT trackingID AS heavy_tracking FROM TrackingInfo WHERE rentalOrderID = :'heavy_order' \gset
+SELECT gameID AS heavy_game FROM GamesInOrder GROUP BY gameID ORDER BY count(*) DESC LIMIT 1 \gset
+SELECT genre AS heavy_genre FROM Catalog GROUP BY genre ORDER BY count(*) DESC LIMIT 1 \gset
+
+PREPARE login_lookup(text) AS
+  SELECT * FROM Users WHERE login = $1;
+PREPARE all_orders(text) AS
+  SELECT rentalOrderID, noOfGames, totalPrice, orderTimestamp, dueDate FROM RentalOrder WHERE login = $1;
+PREPARE recent_orders(text) AS
+  SELECT rentalOrderID, noOfGames, totalPrice, orderTimestamp, dueDate FROM RentalOrder
+  WHERE login = $1 ORDER BY orderTimestamp DESC LIMIT 5;
+PREPARE order_tracking(text) AS
+  SELECT T.trackingID FROM TrackingInfo T WHERE T.rentalOrderID = $1;
+PREPARE order_games(text) AS
+  SELECT C.gameName FROM RentalOrder R, TrackingInfo T, GamesInOrder G, Catalog C
+  WHERE R.rentalOrderID = $1 AND R.rentalOrderID = T.rentalOrderID
+    AND R.rentalOrderID = G.rentalOrderID AND G.gameID = C.gameID;
+PREPARE tracking_info(text) AS
+  SELECT T.courierName, T.rentalOrderID, T.currentLocation, T.status, T.lastUpdateDate, T.additionalComments
+  FROM TrackingInfo T, RentalOrder R WHERE T.trackingID = $1 AND T.rentalOrderID = R.rentalOrderID;
+PREPARE orders_with_game(text) AS
+  SELECT rentalOrderID, unitsOrdered FROM GamesInOrder WHERE gameID = $1;
+PREPARE games_in_genre(text) AS
+  SELECT gameName FROM Catalog WHERE genre = $1;
+PREPARE games_in_price(text) AS
+  SELECT gameName, price FROM Catalog WHERE price BETWEEN $1::numeric AND $1::numeric + 5 ORDER BY price;
+
+\echo '=== plans ==='
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE login_lookup(:'heavy_login');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE all_orders(:'heavy_login');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE recent_orders(:'heavy_login');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE order_tracking(:'heavy_order');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE order_games(:'heavy_order');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE tracking_info(:'heavy_tracking');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE orders_with_game(:'heavy_game');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE games_in_genre(:'heavy_genre');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE games_in_price('20.00');
+
+\echo '=== latencies ==='
+SELECT B.* FROM bench_keys K,
+  LATERAL (
+    SELECT * FROM pg_temp.bench_latency('login_lookup', 'login_lookup', K.logins, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('all_orders', 'all_orders', K.logins, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('recent_orders', 'recent_orders', K.logins, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('order_tracking', 'order_tracking', K.orders, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('order_games', 'order_games', K.orders, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('tracking_info', 'tracking_info', K.trackings, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('orders_with_game', 'orders_with_game', K.games, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('games_in_genre', 'games_in_genre', K.genres, :iterations)
+    UNION ALL SELECT * FROM pg_temp.bench_latency('games_in_price', 'games_in_price', K.prices, :iterations)
+  ) B;
+
+DEALLOCATE ALL;
@@ -0,0 +1,56 @@
+/*
+ * Scales the loaded data up for benchmark_indexes.sh.
+ * Usage: psql -v scale=100 -f benchmark_scale.sql
+ *
+ * Catalog, RentalOrder, TrackingInfo, GamesInOrder and Inventory get
+ * scale - 1 extra copies of every row with shifted IDs and older
+ * timestamps.
+ * Users is left alone, so every customer ends up with scale times as
+ * many orders.  Run it once, right after load_data.sql.
+ */
+
+INSERT INTO Catalog
+SELECT 'game' || (substring(C.gameID from 5)::int + k * 10000),
+       C.gameName || ' #' || k,
+       C.genre,
+       C.price + (k % 7) * 0.50,
+       C.description,
+       C.imageURL
+FROM Catalog C, generate_series(1, :scale - 1) k;
+
+INSERT INTO RentalOrder
+SELECT 'gamerentalorder' || (substring(R.rentalOrderID from 16)::int + k * 10000),
+       R.login,
+       R.noOfGames,
+       R.totalPrice,
+       R.orderTimestamp - k * interval '1 day',
+       R.dueDate - k * interval '1 day'
+FROM RentalOrder R, generate_series(1, :scale - 1) k;
+
+INSERT INTO TrackingInfo
+SELECT 'trackingid' || (substring(T.trackingID from 11)::int + k * 10000),
+       'gamerentalorder' || (substring(T.rentalOrderID from 16)::int + k * 10000),
+       T.status,
+       T.currentLocation,
+       T.courierName,
+       T.lastUpdateDate - k * interval '1 day',
+       T.additionalComments
+FROM TrackingInfo T, generate_series(1, :scale - 1) k;
+
+INSERT INTO GamesInOrder
+SELECT 'gamerentalorder' || (substring(G.rentalOrderID from 16)::int + k * 10000),
+       'game' || (substring(G.gameID from 5)::int + k * 10000),
+       G.unitsOrdered
+FROM GamesInOrder G, generate_series(1, :scale - 1) k;
+
+INSERT INTO Inventory
+SELECT 'game' || (substring(I.gameID from 5)::int + k * 10000),
+       I.inStock
+FROM Inventory I, generate_series(1, :scale - 1) k;
+
+SELECT setval('rentalorder_id_seq',
+              (SELECT max(substring(rentalOrderID from 16)::int) FROM RentalOrder) + 1, false);
+SELECT setval('trackinginfo_id_seq',
+              (SELECT max(substring(trackingID from 11)::int) FROM TrackingInfo) + 1, false);
+
+VACUUM ANALYZE;
@@ -3,9 +3,14 @@ DROP TABLE IF EXISTS Catalog CASCADE;
 DROP TABLE IF EXISTS RentalOrder CASCADE;
 DROP TABLE IF EXISTS TrackingInfo CASCADE;
 DROP TABLE IF EXISTS GamesInOrder CASCADE;
+DROP TABLE IF EXISTS FavoriteGames CASCADE;
+DROP TABLE IF EXISTS InventoryHold CASCADE;
+DROP TABLE IF EXISTS Inventory CASCADE;
+DROP SEQUENCE IF EXISTS rentalorder_id_seq;
+DROP SEQUENCE IF EXISTS trackinginfo_id_seq;
 
 CREATE TABLE Users ( login varchar(50) NOT NULL,
-                     password varchar(30) NOT NULL,
+                     password varchar(128) NOT NULL,
                      role char(20) NOT NULL,
                      favGames text,
                      phoneNum varchar(20) NOT NULL,
@@ -54,3 +59,51 @@ CREATE TABLE GamesInOrder ( rentalOrderID varchar(50) NOT NULL,
                            FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
                            ON DELETE CASCADE
 );
+
+/*
+ * One row per favorite game of a user.  Users.favGames is the old
+ * comma-separated list, kept as loaded from users.csv; the application
+ * reads and writes this table instead.
+ */
+CREATE TABLE FavoriteGames ( login varchar(50) NOT NULL,
+                             gameID varchar(50) NOT NULL,
+                             PRIMARY KEY(login, gameID),
+                             FOREIGN KEY(login) REFERENCES Users(login)
+                             ON DELETE CASCADE
+                             ON UPDATE CASCADE,
+                             FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
+                             ON DELETE CASCADE
+);
+
+/*
+ * Copies of every game on the shelf.  A running application takes copies
+ * from inStock a few at a time and rents them out from memory, so inStock
+ * does not count the copies it still holds.
+ */
+CREATE TABLE Inventory ( gameID varchar(50) NOT NULL,
+                         inStock integer NOT NULL CHECK (inStock >= 0),
+                         PRIMARY KEY(gameID),
+                         FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
+                         ON DELETE CASCADE
+);
+
+/*
+ * Copies a running application took from inStock and has not rented yet,
+ * per process.  A process renews leaseUntil while it runs; the copies of
+ * an expired lease are put back on the shelf by the next process to start.
+ */
+CREATE TABLE InventoryHold ( owner varchar(64) NOT NULL,
+                             gameID varchar(50) NOT NULL,
+                             copies integer NOT NULL CHECK (copies >= 0),
+                             leaseUntil timestamp NOT NULL,
+                             PRIMARY KEY(owner, gameID),
+                             FOREIGN KEY(gameID) REFERENCES Inventory(gameID)
+                             ON DELETE CASCADE
+);
+
+/*
+ * ID sequences used by placeOrder.  Every nextval reserves a block of
+ * INCREMENT BY numbers that the application hands out in memory.
+ */
+CREATE SEQUENCE rentalorder_id_seq INCREMENT BY 100 START WITH 1000;
+CREATE SEQUENCE trackinginfo_id_seq INCREMENT BY 100 START WITH 1000;
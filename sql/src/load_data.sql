@@ -18,3 +18,22 @@ WITH DELIMITER ',' CSV HEADER;
 COPY GamesInOrder
 FROM '/data/class/classes/azhan061/cs166_Proj/data/gamesinorder.csv'
 WITH DELIMITER ',' CSV HEADER;
+
+/* One FavoriteGames row per favorite named in Users.favGames */
+INSERT INTO FavoriteGames (login, gameID)
+SELECT DISTINCT U.login, C.gameID
+FROM Users U
+CROSS JOIN LATERAL unnest(string_to_array(U.favGames, ',')) AS F(gameName)
+JOIN Catalog C ON C.gameName = trim(F.gameName)
+ON CONFLICT DO NOTHING;
+
+/* Every game starts with 10 copies in stock */
+INSERT INTO Inventory (gameID, inStock)
+SELECT gameID, 10 FROM Catalog;
+
+/* Move the ID sequences past the loaded IDs */
+SELECT setval('rentalorder_id_seq',
+              COALESCE((SELECT max(substring(rentalOrderID from 16)::int) FROM RentalOrder), 999) + 1, false);
+
+SELECT setval('trackinginfo_id_seq',
+              COALESCE((SELECT max(substring(trackingID from 11)::int) FROM TrackingInfo), 999) + 1, false);
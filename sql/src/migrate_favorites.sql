@@ -0,0 +1,39 @@
+/*
+ * Moves the favorite games of an existing database from the
+ * comma-separated Users.favGames column to the FavoriteGames table.
+ * Names are matched to Catalog.gameName; the names no game has are
+ * listed at the end and stay in Users.favGames.  Running it again only
+ * adds what is missing.
+ */
+
+CREATE TABLE IF NOT EXISTS FavoriteGames ( login varchar(50) NOT NULL,
+                                           gameID varchar(50) NOT NULL,
+                                           PRIMARY KEY(login, gameID),
+                                           FOREIGN KEY(login) REFERENCES Users(login)
+                                           ON DELETE CASCADE
+                                           ON UPDATE CASCADE,
+                                           FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
+                                           ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS favoritegames_game_idx
+ON FavoriteGames (gameID)
+INCLUDE (login);
+
+INSERT INTO FavoriteGames (login, gameID)
+SELECT DISTINCT U.login, C.gameID
+FROM Users U
+CROSS JOIN LATERAL unnest(string_to_array(U.favGames, ',')) AS F(gameName)
+JOIN Catalog C ON C.gameName = trim(F.gameName)
+ON CONFLICT DO NOTHING;
+
+ANALYZE FavoriteGames;
+
+/* Favorites that name no game in the catalog */
+SELECT trim(F.gameName) AS unmatched, count(*) AS users
+FROM Users U
+CROSS JOIN LATERAL unnest(string_to_array(U.favGames, ',')) AS F(gameName)
+WHERE trim(F.gameName) <> ''
+AND NOT EXISTS (SELECT 1 FROM Catalog C WHERE C.gameName = trim(F.gameName))
+GROUP BY 1
+ORDER BY 2 DESC;
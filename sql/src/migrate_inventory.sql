@@ -0,0 +1,27 @@
+/*
+ * Adds the Inventory and InventoryHold tables to an existing database
+ * and stocks every game with 10 copies.  Running it again leaves the
+ * stock alone and only stocks games that have no row yet.
+ */
+
+CREATE TABLE IF NOT EXISTS Inventory ( gameID varchar(50) NOT NULL,
+                                       inStock integer NOT NULL CHECK (inStock >= 0),
+                                       PRIMARY KEY(gameID),
+                                       FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
+                                       ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS InventoryHold ( owner varchar(64) NOT NULL,
+                                           gameID varchar(50) NOT NULL,
+                                           copies integer NOT NULL CHECK (copies >= 0),
+                                           leaseUntil timestamp NOT NULL,
+                                           PRIMARY KEY(owner, gameID),
+                                           FOREIGN KEY(gameID) REFERENCES Inventory(gameID)
+                                           ON DELETE CASCADE
+);
+
+INSERT INTO Inventory (gameID, inStock)
+SELECT gameID, 10 FROM Catalog
+ON CONFLICT DO NOTHING;
+
+ANALYZE Inventory;